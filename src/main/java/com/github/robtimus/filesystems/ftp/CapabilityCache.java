@@ -0,0 +1,190 @@
+/*
+ * CapabilityCache.java
+ * Copyright 2020 Rob Spoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.robtimus.filesystems.ftp;
+
+import static com.github.robtimus.filesystems.ftp.FTPLogger.createLogger;
+import static com.github.robtimus.filesystems.ftp.FTPLogger.failedToAccessCapabilityCache;
+import static com.github.robtimus.filesystems.ftp.FTPLogger.storedCapabilityProfile;
+import static com.github.robtimus.filesystems.ftp.FTPLogger.usedCapabilityProfile;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import org.slf4j.Logger;
+
+/**
+ * A cache of the capabilities of FTP servers, stored in a local file so it survives restarts of the JVM.
+ * For each FTP file system, it stores the detected FTP file strategy, the system type of the FTP server and the default directory.
+ * This allows later FTP file systems for the same FTP server, user and default directory to skip detecting these.
+ *
+ * @author Rob Spoor
+ */
+final class CapabilityCache {
+
+    private static final Logger LOGGER = createLogger(CapabilityCache.class);
+
+    // one instance per file, so FTP file systems in the same JVM don't overwrite each other's profiles
+    private static final Map<Path, CapabilityCache> CACHES = new HashMap<>();
+
+    private static final String STRATEGY = ".strategy"; //$NON-NLS-1$
+    private static final String SYSTEM_TYPE = ".systemType"; //$NON-NLS-1$
+    private static final String DEFAULT_DIRECTORY = ".defaultDirectory"; //$NON-NLS-1$
+    private static final String STORED = ".stored"; //$NON-NLS-1$
+
+    private final Path file;
+
+    private CapabilityCache(Path file) {
+        this.file = file;
+    }
+
+    static CapabilityCache forFile(Path file) {
+        Path absoluteFile = file.toAbsolutePath().normalize();
+        synchronized (CACHES) {
+            return CACHES.computeIfAbsent(absoluteFile, CapabilityCache::new);
+        }
+    }
+
+    /**
+     * Returns a stored capability profile.
+     *
+     * @param key The key of the capability profile.
+     * @param maxAge The maximum age of the capability profile in milliseconds, or {@code 0} if capability profiles never expire.
+     * @return The stored capability profile, or {@code null} if there is no stored capability profile or if it has expired.
+     */
+    synchronized Profile get(String key, long maxAge) {
+        // the file is read each time, so profiles stored by other processes are picked up
+        Properties properties = load();
+        String defaultDirectory = properties.getProperty(key + DEFAULT_DIRECTORY);
+        String stored = properties.getProperty(key + STORED);
+        if (defaultDirectory == null || stored == null) {
+            return null;
+        }
+        try {
+            long storedTime = Long.parseLong(stored);
+            if (maxAge > 0 && System.currentTimeMillis() - storedTime >= maxAge) {
+                return null;
+            }
+        } catch (@SuppressWarnings("unused") NumberFormatException e) {
+            return null;
+        }
+        usedCapabilityProfile(LOGGER, key);
+        return new Profile(properties.getProperty(key + STRATEGY), properties.getProperty(key + SYSTEM_TYPE), defaultDirectory);
+    }
+
+    /**
+     * Stores a capability profile. Failing to store the capability profile is not considered an error.
+     *
+     * @param key The key of the capability profile.
+     * @param profile The capability profile to store.
+     */
+    synchronized void put(String key, Profile profile) {
+        Properties properties = load();
+        setProperty(properties, key + STRATEGY, profile.strategy);
+        setProperty(properties, key + SYSTEM_TYPE, profile.systemType);
+        setProperty(properties, key + DEFAULT_DIRECTORY, profile.defaultDirectory);
+        properties.setProperty(key + STORED, Long.toString(System.currentTimeMillis()));
+        if (store(properties)) {
+            storedCapabilityProfile(LOGGER, key);
+        }
+    }
+
+    private void setProperty(Properties properties, String key, String value) {
+        if (value == null) {
+            properties.remove(key);
+        } else {
+            properties.setProperty(key, value);
+        }
+    }
+
+    private Properties load() {
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(file)) {
+            properties.load(input);
+        } catch (@SuppressWarnings("unused") NoSuchFileException e) {
+            // nothing has been stored yet
+        } catch (IOException | IllegalArgumentException e) {
+            // a file that cannot be read is treated as empty; it will be replaced when the next profile is stored
+            failedToAccessCapabilityCache(LOGGER, file.toString(), e);
+            properties.clear();
+        }
+        return properties;
+    }
+
+    private boolean store(Properties properties) {
+        Path directory = file.getParent();
+        Path tempFile = null;
+        try {
+            Files.createDirectories(directory);
+            // write to a temporary file first, so other processes never read a partially written file
+            tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp"); //$NON-NLS-1$
+            try (OutputStream output = Files.newOutputStream(tempFile)) {
+                properties.store(output, null);
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (@SuppressWarnings("unused") AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch (IOException e) {
+            failedToAccessCapabilityCache(LOGGER, file.toString(), e);
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException e2) {
+                    e.addSuppressed(e2);
+                }
+            }
+            return false;
+        }
+    }
+
+    static final class Profile {
+
+        private final String strategy;
+        private final String systemType;
+        private final String defaultDirectory;
+
+        Profile(String strategy, String systemType, String defaultDirectory) {
+            this.strategy = strategy;
+            this.systemType = systemType;
+            this.defaultDirectory = defaultDirectory;
+        }
+
+        // the FTP file strategy that was detected, or null if the FTP file strategy does not detect anything
+        String strategy() {
+            return strategy;
+        }
+
+        // the system type of the FTP server, or null if it's not known
+        String systemType() {
+            return systemType;
+        }
+
+        String defaultDirectory() {
+            return defaultDirectory;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * ClientValidationPolicy.java
+ * Copyright 2020 Rob Spoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.robtimus.filesystems.ftp;
+
+/**
+ * The possible policies for validating pooled client connections.
+ * Validating a client connection sends a keep-alive signal (NOOP) to the FTP server, which costs a round trip.
+ * <p>
+ * Regardless of the policy, client connections that fail because their connection was lost are detected when they are returned to the
+ * connection pool, and will not be reused.
+ *
+ * @author Rob Spoor
+ * @since 2.2
+ */
+public enum ClientValidationPolicy {
+    /** Indicates that client connections are validated every time they are taken from the connection pool. */
+    ALWAYS,
+    /** Indicates that client connections are never validated. */
+    NEVER,
+    /**
+     * Indicates that client connections are validated when they are taken from the connection pool, but only if they have not been used for
+     * at least the {@link FTPEnvironment#withClientValidationIdleTime(long) validation idle time}.
+     */
+    WHEN_IDLE,
+    /**
+     * Indicates that client connections are validated in the background while they are idle, if they have not been used for at least the
+     * {@link FTPEnvironment#withClientValidationIdleTime(long) validation idle time}.
+     * Client connections are not validated when they are taken from the connection pool.
+     */
+    WHILE_IDLE,
+    ;
+}
@@ -0,0 +1,110 @@
+/*
+ * ConnectCircuitBreaker.java
+ * Copyright 2020 Rob Spoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.robtimus.filesystems.ftp;
+
+import java.net.ConnectException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A circuit breaker for connecting to an FTP server.
+ * After a number of consecutive connect failures the circuit opens, and attempts to connect fail fast until a backoff time has passed.
+ * After that, a single attempt is let through. If it succeeds the circuit closes again, otherwise the backoff time is doubled.
+ *
+ * @author Rob Spoor
+ */
+final class ConnectCircuitBreaker {
+
+    private final int threshold;
+    private final long initialBackoff;
+    private final long maxBackoff;
+
+    // all fields below are guarded by this
+    private int failureCount = 0;
+    private long backoff;
+    private long openUntil;
+    private boolean open = false;
+    private boolean probing = false;
+
+    ConnectCircuitBreaker(FTPEnvironment env) {
+        this.threshold = env.getConnectFailureThreshold();
+        this.initialBackoff = TimeUnit.MILLISECONDS.toNanos(env.getConnectFailureBackoff());
+        this.maxBackoff = TimeUnit.MILLISECONDS.toNanos(env.getMaxConnectFailureBackoff());
+        this.backoff = initialBackoff;
+    }
+
+    /**
+     * Checks whether or not an attempt to connect is allowed.
+     * If the attempt is allowed, either {@link #succeeded()} or {@link #failed()} must be called afterwards.
+     *
+     * @throws ConnectException If the circuit is open.
+     */
+    synchronized void acquire() throws ConnectException {
+        if (!open) {
+            return;
+        }
+        long remaining = openUntil - System.nanoTime();
+        if (remaining > 0 || probing) {
+            throw new ConnectException(FTPMessages.connectCircuitOpen(failureCount, TimeUnit.NANOSECONDS.toMillis(Math.max(0, remaining))));
+        }
+        // let a single attempt through; all others keep failing fast until this probe has finished
+        probing = true;
+    }
+
+    /**
+     * Records a successful attempt to connect. This closes the circuit.
+     *
+     * @return {@code true} if the circuit was open, or {@code false} otherwise.
+     */
+    synchronized boolean succeeded() {
+        boolean wasOpen = open;
+        failureCount = 0;
+        backoff = initialBackoff;
+        open = false;
+        probing = false;
+        return wasOpen;
+    }
+
+    /**
+     * Records a failed attempt to connect.
+     *
+     * @return The time in milliseconds that the circuit is opened for, or {@code -1} if the circuit was not (re)opened.
+     */
+    synchronized long failed() {
+        failureCount++;
+        if (threshold == 0 || failureCount < threshold) {
+            return -1;
+        }
+        long currentBackoff = backoff;
+        if (probing) {
+            // the probe failed; back off longer before the next probe
+            currentBackoff = Math.min(backoff * 2, maxBackoff);
+            backoff = currentBackoff;
+            probing = false;
+        } else if (open) {
+            // an attempt that started before the circuit opened failed; don't extend the backoff for it
+            return -1;
+        }
+        open = true;
+        openUntil = System.nanoTime() + currentBackoff;
+        return TimeUnit.NANOSECONDS.toMillis(currentBackoff);
+    }
+
+    synchronized boolean isOpen() {
+        return open;
+    }
+}
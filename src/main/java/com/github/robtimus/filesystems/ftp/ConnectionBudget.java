@@ -0,0 +1,265 @@
+/*
+ * ConnectionBudget.java
+ * Copyright 2020 Rob Spoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.robtimus.filesystems.ftp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A maximum number of client connections to one host, shared by the connection pools of several FTP file systems.
+ * If the budget is exhausted, waiting connection pools are served in order of their weighted usage: the pool with the fewest client
+ * connections relative to its weight goes first. A pool that is below its fair share can make a pool that is above its fair share close an
+ * idle client connection.
+ *
+ * @author Rob Spoor
+ */
+final class ConnectionBudget {
+
+    private final int limit;
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition permitAvailable = lock.newCondition();
+    // all fields below are guarded by the lock
+    private final List<Member> members = new ArrayList<>();
+    private int totalWeight = 0;
+    private int used = 0;
+
+    ConnectionBudget(int limit) {
+        this.limit = limit;
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    /**
+     * Registers a connection pool with this budget.
+     *
+     * @param weight The weight of the connection pool.
+     * @param idleClientEvictor A function that closes an idle client connection of the connection pool, if any.
+     *                              It returns {@code true} if a client connection was closed, or {@code false} otherwise.
+     * @return The registration of the connection pool.
+     */
+    Member register(int weight, BooleanSupplier idleClientEvictor) {
+        lock.lock();
+        try {
+            Member member = new Member(weight, idleClientEvictor);
+            members.add(member);
+            totalWeight += weight;
+            return member;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int used() {
+        lock.lock();
+        try {
+            return used;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int available() {
+        lock.lock();
+        try {
+            return Math.max(0, limit - used);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    final class Member {
+
+        private final int weight;
+        private final BooleanSupplier idleClientEvictor;
+
+        // all fields below are guarded by the lock
+        private int used = 0;
+        private int waiting = 0;
+
+        private Member(int weight, BooleanSupplier idleClientEvictor) {
+            this.weight = weight;
+            this.idleClientEvictor = idleClientEvictor;
+        }
+
+        ConnectionBudget budget() {
+            return ConnectionBudget.this;
+        }
+
+        /**
+         * Acquires a permit for a new client connection.
+         *
+         * @param timeout The maximum time to wait in milliseconds, or {@code 0} to wait indefinitely.
+         * @throws IOException If no permit could be acquired within the timeout.
+         */
+        void acquire(long timeout) throws IOException {
+            final long deadline = timeout == 0 ? 0 : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            lock.lock();
+            try {
+                waiting++;
+                try {
+                    while (true) {
+                        if (ConnectionBudget.this.used < limit && isNextInLine()) {
+                            ConnectionBudget.this.used++;
+                            used++;
+                            return;
+                        }
+                        if (ConnectionBudget.this.used >= limit && evictIdleClientOfOtherMember()) {
+                            continue;
+                        }
+                        await(deadline);
+                    }
+                } finally {
+                    waiting--;
+                    // another member may be next in line now
+                    permitAvailable.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Tries to acquire a permit for a new client connection, without waiting for other connection pools to release one.
+         * Like {@link #acquire(long)}, this may close an idle client connection of a connection pool that is above its fair share.
+         *
+         * @return {@code true} if a permit was acquired, or {@code false} otherwise.
+         */
+        boolean tryAcquire() {
+            lock.lock();
+            try {
+                while (true) {
+                    if (ConnectionBudget.this.used < limit && isNextInLine()) {
+                        ConnectionBudget.this.used++;
+                        used++;
+                        return true;
+                    }
+                    if (ConnectionBudget.this.used < limit || !evictIdleClientOfOtherMember()) {
+                        return false;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // must be called while holding the lock
+        private boolean isNextInLine() {
+            for (Member member : members) {
+                if (member != this && member.waiting > 0 && member.compareUsage(this) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // must be called while holding the lock
+        private int compareUsage(Member other) {
+            // compare used / weight without rounding
+            return Long.compare((long) used * other.weight, (long) other.used * weight);
+        }
+
+        // must be called while holding the lock
+        private boolean isAboveFairShare() {
+            return (long) used * totalWeight > (long) limit * weight;
+        }
+
+        // must be called while holding the lock
+        private boolean evictIdleClientOfOtherMember() {
+            if (isAboveFairShare()) {
+                return false;
+            }
+            Member victim = null;
+            for (Member member : members) {
+                if (member != this && member.isAboveFairShare() && (victim == null || member.compareUsage(victim) > 0)) {
+                    victim = member;
+                }
+            }
+            if (victim == null) {
+                return false;
+            }
+            // the evictor takes the lock of its connection pool, and releases a permit; don't hold the lock of the budget while doing that
+            lock.unlock();
+            try {
+                return victim.idleClientEvictor.getAsBoolean();
+            } finally {
+                lock.lock();
+            }
+        }
+
+        // must be called while holding the lock
+        private void await(long deadline) throws IOException {
+            try {
+                if (deadline == 0) {
+                    permitAvailable.await();
+                    return;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new IOException(FTPMessages.clientConnectionWaitTimeoutExpired());
+                }
+                permitAvailable.awaitNanos(remaining);
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                InterruptedIOException iioe = new InterruptedIOException(e.getMessage());
+                iioe.initCause(e);
+                throw iioe;
+            }
+        }
+
+        /**
+         * Releases a permit that was acquired using {@link #acquire(long)}.
+         */
+        void release() {
+            lock.lock();
+            try {
+                ConnectionBudget.this.used--;
+                used--;
+                permitAvailable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Unregisters the connection pool. Permits that are still in use can still be released afterwards.
+         */
+        void unregister() {
+            lock.lock();
+            try {
+                if (members.remove(this)) {
+                    totalWeight -= weight;
+                    permitAvailable.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Endpoints.java
+ * Copyright 2020 Rob Spoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.robtimus.filesystems.ftp;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The equivalent endpoints that the clients of a connection pool can connect to.
+ * Endpoints are ranked by their measured latency and the number of clients that are connected to them.
+ * Endpoints that failed repeatedly are drained: they are only used as a last resort until their retry interval has passed.
+ *
+ * @author Rob Spoor
+ */
+final class Endpoints {
+
+    // the weight of a new latency measurement in the moving average
+    private static final double SMOOTHING_FACTOR = 0.2;
+
+    // the number of consecutive failures after which an endpoint is drained if no connect failure threshold is set
+    private static final int DEFAULT_FAILURE_THRESHOLD = 2;
+
+    private final List<Endpoint> endpoints;
+    private final long retryInterval;
+    private final int failureThreshold;
+
+    Endpoints(String hostname, int port, FTPEnvironment env) {
+        List<Endpoint> list = new ArrayList<>();
+        list.add(new Endpoint(hostname, port));
+        for (InetSocketAddress address : env.getAdditionalEndpoints()) {
+            list.add(new Endpoint(address.getHostString(), address.getPort() == 0 ? -1 : address.getPort()));
+        }
+        this.endpoints = Collections.unmodifiableList(list);
+        this.retryInterval = TimeUnit.MILLISECONDS.toNanos(env.getEndpointRetryInterval());
+        int connectFailureThreshold = env.getConnectFailureThreshold();
+        this.failureThreshold = connectFailureThreshold > 0 ? connectFailureThreshold : DEFAULT_FAILURE_THRESHOLD;
+    }
+
+    /**
+     * Returns the endpoints in the order they should be tried.
+     * The first endpoint is already counted as having a connection; {@link #connecting(Endpoint)} must be called for any other endpoint that is
+     * tried, and {@link #disconnected(Endpoint)} for each endpoint that could not be connected to.
+     */
+    synchronized List<Endpoint> candidates() {
+        if (endpoints.size() == 1) {
+            endpoints.get(0).connections++;
+            return endpoints;
+        }
+        long now = System.nanoTime();
+        List<Endpoint> available = new ArrayList<>(endpoints.size());
+        List<Endpoint> drained = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.drained && endpoint.retryAt - now > 0) {
+                drained.add(endpoint);
+            } else {
+                available.add(endpoint);
+            }
+        }
+        // the sort is stable, so endpoints without measurements are tried in the order they are specified
+        available.sort(Comparator.comparingDouble(Endpoint::score));
+        drained.sort((e1, e2) -> Long.compare(e1.retryAt - now, e2.retryAt - now));
+
+        List<Endpoint> candidates = available;
+        candidates.addAll(drained);
+        // count the connection before it's made, so concurrent connects are spread across endpoints
+        candidates.get(0).connections++;
+        return candidates;
+    }
+
+    synchronized void connecting(Endpoint endpoint) {
+        endpoint.connections++;
+    }
+
+    synchronized void connected(Endpoint endpoint, long connectTime) {
+        endpoint.connectLatency = average(endpoint.connectLatency, connectTime);
+        endpoint.drained = false;
+        endpoint.failureCount = 0;
+    }
+
+    synchronized void commandCompleted(Endpoint endpoint, long commandTime) {
+        endpoint.commandLatency = average(endpoint.commandLatency, commandTime);
+        endpoint.failureCount = 0;
+    }
+
+    private static double average(double current, long measurement) {
+        return current == 0 ? measurement : current + SMOOTHING_FACTOR * (measurement - current);
+    }
+
+    synchronized void disconnected(Endpoint endpoint) {
+        endpoint.connections--;
+    }
+
+    /**
+     * Records a failure of an endpoint. The endpoint is drained once the number of consecutive failures reaches the failure threshold;
+     * a single failure, like a read timeout, is not enough.
+     *
+     * @return {@code true} if the endpoint is drained, or {@code false} if it is not (yet) drained or there are no other endpoints to use
+     *         instead.
+     */
+    synchronized boolean failed(Endpoint endpoint) {
+        if (endpoints.size() == 1) {
+            return false;
+        }
+        endpoint.failureCount++;
+        if (endpoint.failureCount < failureThreshold) {
+            return false;
+        }
+        endpoint.drained = true;
+        endpoint.retryAt = System.nanoTime() + retryInterval;
+        return true;
+    }
+
+    synchronized boolean isDrained(Endpoint endpoint) {
+        return endpoint.drained;
+    }
+
+    static final class Endpoint {
+
+        final String hostname;
+        final int port;
+
+        // all fields below are guarded by the Endpoints instance
+        private int connections = 0;
+        // moving averages in nanoseconds, or 0 if not yet measured
+        private double connectLatency = 0;
+        private double commandLatency = 0;
+        private int failureCount = 0;
+        private boolean drained = false;
+        private long retryAt;
+
+        private Endpoint(String hostname, int port) {
+            this.hostname = hostname;
+            this.port = port;
+        }
+
+        private double score() {
+            // endpoints without measurements count as fast, so they will be measured
+            double latency = Math.max(1, connectLatency + commandLatency);
+            return latency * (connections + 1);
+        }
+
+        @Override
+        public String toString() {
+            return port == -1 ? hostname : hostname + ":" + port; //$NON-NLS-1$
+        }
+    }
+}
@@ -18,9 +18,12 @@
 package com.github.robtimus.filesystems.ftp;
 
 import static com.github.robtimus.filesystems.ftp.FTPLogger.addCommandListener;
+import static com.github.robtimus.filesystems.ftp.FTPLogger.brokenClient;
 import static com.github.robtimus.filesystems.ftp.FTPLogger.clientNotConnected;
+import static com.github.robtimus.filesystems.ftp.FTPLogger.closedConnectCircuit;
 import static com.github.robtimus.filesystems.ftp.FTPLogger.closedInputStream;
 import static com.github.robtimus.filesystems.ftp.FTPLogger.closedOutputStream;
+import static com.github.robtimus.filesystems.ftp.FTPLogger.closedUnusedPool;
 import static com.github.robtimus.filesystems.ftp.FTPLogger.createLogger;
 import static com.github.robtimus.filesystems.ftp.FTPLogger.createdClient;
 import static com.github.robtimus.filesystems.ftp.FTPLogger.createdInputStream;
@@ -28,160 +31,1434 @@ import static com.github.robtimus.filesystems.ftp.FTPLogger.createdOutputStream;
 import static com.github.robtimus.filesystems.ftp.FTPLogger.createdPool;
 import static com.github.robtimus.filesystems.ftp.FTPLogger.creatingPool;
 import static com.github.robtimus.filesystems.ftp.FTPLogger.decreasedRefCount;
+import static com.github.robtimus.filesystems.ftp.FTPLogger.discardedBrokenClient;
 import static com.github.robtimus.filesystems.ftp.FTPLogger.disconnectedClient;
 import static com.github.robtimus.filesystems.ftp.FTPLogger.drainedPoolForClose;
-import static com.github.robtimus.filesystems.ftp.FTPLogger.drainedPoolForKeepAlive;
+import static com.github.robtimus.filesystems.ftp.FTPLogger.evictedIdleClient;
+import static com.github.robtimus.filesystems.ftp.FTPLogger.evictedOverflowClient;
+import static com.github.robtimus.filesystems.ftp.FTPLogger.failedEndpoint;
 import static com.github.robtimus.filesystems.ftp.FTPLogger.failedToCreatePool;
+import static com.github.robtimus.filesystems.ftp.FTPLogger.failedToMaintainPool;
+import static com.github.robtimus.filesystems.ftp.FTPLogger.grewPoolSizeLimit;
 import static com.github.robtimus.filesystems.ftp.FTPLogger.increasedRefCount;
-import static com.github.robtimus.filesystems.ftp.FTPLogger.returnedBrokenClient;
+import static com.github.robtimus.filesystems.ftp.FTPLogger.leakedClient;
+import static com.github.robtimus.filesystems.ftp.FTPLogger.loweredConnectionLimit;
+import static com.github.robtimus.filesystems.ftp.FTPLogger.openedConnectCircuit;
+import static com.github.robtimus.filesystems.ftp.FTPLogger.raisedConnectionLimit;
+import static com.github.robtimus.filesystems.ftp.FTPLogger.reclaimedClient;
+import static com.github.robtimus.filesystems.ftp.FTPLogger.reconfiguredPool;
+import static com.github.robtimus.filesystems.ftp.FTPLogger.releasedClientSpot;
 import static com.github.robtimus.filesystems.ftp.FTPLogger.returnedClient;
+import static com.github.robtimus.filesystems.ftp.FTPLogger.sentKeepAlive;
+import static com.github.robtimus.filesystems.ftp.FTPLogger.shrankPoolSizeLimit;
 import static com.github.robtimus.filesystems.ftp.FTPLogger.tookClient;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.file.ClosedFileSystemException;
 import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
 import java.nio.file.OpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.management.JMException;
+import javax.management.ObjectName;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPReply;
 import org.slf4j.Logger;
+import com.github.robtimus.filesystems.ftp.Endpoints.Endpoint;
 
 /**
  * A pool of FTP clients, allowing multiple commands to be executed concurrently.
  *
  * @author Rob Spoor
  */
-final class FTPClientPool {
+final class FTPClientPool implements FTPClientPoolMXBean {
 
     private static final Logger LOGGER = createLogger(FTPClientPool.class);
 
     private static final AtomicLong CLIENT_COUNTER = new AtomicLong();
+    private static final AtomicLong POOL_COUNTER = new AtomicLong();
+
+    private static final long DEFAULT_RECLAIM_INTERVAL = 1_000;
+    // the maximum time to wait for the reply to a keep alive sent by the background maintenance
+    private static final int MAINTENANCE_REPLY_TIMEOUT = 10_000;
+
+    // shared pools are registered for the entire JVM, because each provider can have only one file system per host, port and username
+    // pools are registered before they are created, so creating a pool doesn't block opening file systems for other hosts
+    private static final Map<SharedPoolKey, CompletableFuture<FTPClientPool>> SHARED_POOLS = new HashMap<>();
 
     private final String hostname;
     private final int port;
 
-    private final FTPEnvironment env;
+    // only changed while holding the lock
+    private volatile FTPEnvironment env;
     private final FileSystemExceptionFactory exceptionFactory;
-
-    private final BlockingQueue<Client> pool;
-    private final long poolWaitTimeout;
+    private final Endpoints endpoints;
+    private final ConnectCircuitBreaker circuitBreaker;
+
+    // the settings below can be changed using reconfigure; they are only changed while holding the lock
+    private volatile int minPoolSize;
+    private volatile int maxPoolSize;
+    private volatile long poolWaitTimeout;
+    private volatile long idleTimeout;
+    private volatile long keepAliveInterval;
+    // the number of pooled clients that are reserved for each lane
+    private volatile int reservedMetadata;
+    private volatile int reservedTransfer;
+    private volatile int minSizeLimit;
+
+    private final long unusedTimeout;
+    private final ClientValidationPolicy validationPolicy;
+    private final long validationIdleTime;
+    private final TransferOptions defaultTransferOptions;
+    private final int maxOverflowSize;
+    private final long overflowLingerTime;
+    private final long leakDetectionThreshold;
+    // 0 if the pool size limit is not adaptive
+    private final long targetWaitTime;
+    private final boolean connectionLimitLearning;
+    private final long connectionLimitRecoveryInterval;
+
+    // the registration with the connection budget of the host, or null if there is no connection budget
+    private final ConnectionBudget.Member budgetMember;
+
+    // the key in the shared pools, or null if the pool is not shared; the handle count is guarded by SHARED_POOLS
+    private final SharedPoolKey sharedKey;
+    private int handleCount = 1;
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition metadataClientAvailable = lock.newCondition();
+    private final Condition transferClientAvailable = lock.newCondition();
+    // the most recently returned client is the last one
+    private final Deque<Client> idleClients = new ArrayDeque<>();
+    // the number of pooled clients, both idle and in use, including clients that are being created
+    private int poolSize = 0;
+    // the maximum number of pooled clients; only differs from maxPoolSize if the pool size limit is adaptive
+    private int sizeLimit;
+    // the maximum number of pooled clients the FTP server accepts; only differs from maxPoolSize if it's learned from the FTP server's replies
+    private int connectionLimit;
+    private long connectionLimitChanged;
+    private long connectionLimitLowered;
+    // the number of pooled clients in use for each lane, including clients that are being created
+    private int metadataInUse = 0;
+    private int transferInUse = 0;
+    // the most recently returned overflow client is the last one
+    private final Deque<Client> idleOverflowClients = new ArrayDeque<>();
+    // the number of overflow clients that are kept, both idle and in use, including clients that are being created
+    private int overflowSize = 0;
+    private boolean closed = false;
+
+    // guarded by the lock
+    private ScheduledFuture<?> maintenanceTask;
+    private long maintenanceInterval;
+
+    // only used if leak detection is enabled
+    private final Set<Client> leasedClients = ConcurrentHashMap.newKeySet();
+    // only used if reclaiming abandoned streams is enabled; the references must remain reachable until they are enqueued
+    private final ReferenceQueue<Object> abandonedStreams;
+    private final Set<StreamReference> streamReferences = ConcurrentHashMap.newKeySet();
+
+    private final WaitTimeHistogram borrowWaitTimes = new WaitTimeHistogram();
+    private final LongAdder waitTimeoutCount = new LongAdder();
+    private final LongAdder brokenClientCount = new LongAdder();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder closedCount = new LongAdder();
+    private final LongAdder leaseCount = new LongAdder();
+    private final LongAdder totalHoldTime = new LongAdder();
+    private final LongAdder reclaimedClientCount = new LongAdder();
+    private final ObjectName objectName;
 
     FTPClientPool(String hostname, int port, FTPEnvironment env) throws IOException {
+        this(hostname, port, env, null, null);
+    }
+
+    FTPClientPool(String hostname, int port, FTPEnvironment env, ConnectionBudget budget) throws IOException {
+        this(hostname, port, env, budget, null);
+    }
+
+    private FTPClientPool(String hostname, int port, FTPEnvironment env, ConnectionBudget budget, SharedPoolKey sharedKey) throws IOException {
         this.hostname = hostname;
         this.port = port;
         this.env = env.clone();
         this.exceptionFactory = env.getExceptionFactory();
-        final int poolSize = env.getClientConnectionCount();
-        this.pool = new ArrayBlockingQueue<>(poolSize);
+        this.endpoints = new Endpoints(hostname, port, env);
+        this.circuitBreaker = new ConnectCircuitBreaker(env);
+        this.unusedTimeout = TimeUnit.MILLISECONDS.toNanos(env.getFileSystemIdleTimeout());
+        this.validationPolicy = env.getClientValidationPolicy();
+        this.validationIdleTime = TimeUnit.MILLISECONDS.toNanos(env.getClientValidationIdleTime());
+        applyPoolSettings(env);
+        this.defaultTransferOptions = new TransferOptions(env.getDefaultFileType(), env.getDefaultFileStructure(),
+                env.getDefaultFileTransferMode()) {
+            // no additional options
+        };
+        this.maxOverflowSize = env.getMaxOverflowClientConnections();
+        this.overflowLingerTime = TimeUnit.MILLISECONDS.toNanos(env.getOverflowClientConnectionLingerTime());
+        this.leakDetectionThreshold = TimeUnit.MILLISECONDS.toNanos(env.getClientLeakDetectionThreshold());
+        this.abandonedStreams = env.isAbandonedStreamReclaimEnabled() ? new ReferenceQueue<>() : null;
+        this.targetWaitTime = TimeUnit.MILLISECONDS.toNanos(env.getTargetBorrowWaitTime());
+        this.sizeLimit = targetWaitTime > 0 ? minSizeLimit : maxPoolSize;
+        this.connectionLimitLearning = env.isConnectionLimitLearningEnabled();
+        this.connectionLimitRecoveryInterval = TimeUnit.MILLISECONDS.toNanos(env.getConnectionLimitRecoveryInterval());
+        this.connectionLimit = maxPoolSize;
+        this.connectionLimitChanged = System.nanoTime();
+        this.connectionLimitLowered = connectionLimitChanged;
+        this.sharedKey = sharedKey;
+        this.budgetMember = budget != null ? budget.register(env.getConnectionBudgetWeight(), this::evictIdleClientForBudget) : null;
+
+        creatingPool(LOGGER, hostname, port, minPoolSize, maxPoolSize, poolWaitTimeout);
+        this.objectName = env.isClientPoolMXBeanEnabled() ? registerMXBean() : null;
+        try {
+            fillPool(hostname, port, getInitialPoolSize());
+        } catch (IOException e) {
+            unregisterMXBean(e);
+            if (budgetMember != null) {
+                budgetMember.unregister();
+            }
+            throw e;
+        }
+
+        scheduleMaintenance(getMaintenanceInterval(env));
+    }
+
+    // must be called while holding the lock, or during construction
+    private void applyPoolSettings(FTPEnvironment env) {
+        this.minPoolSize = env.getMinClientConnections();
+        this.maxPoolSize = env.getMaxClientConnections();
         this.poolWaitTimeout = env.getClientConnectionWaitTimeout();
+        this.idleTimeout = TimeUnit.MILLISECONDS.toNanos(env.getClientConnectionIdleTimeout());
+        this.keepAliveInterval = TimeUnit.MILLISECONDS.toNanos(getKeepAliveInterval(env));
+        this.reservedMetadata = env.getReservedMetadataClientConnections();
+        this.reservedTransfer = env.getReservedTransferClientConnections();
+        this.minSizeLimit = Math.max(1, minPoolSize);
+    }
+
+    // must be called while holding the lock, or during construction
+    private void scheduleMaintenance(long interval) {
+        if (maintenanceTask != null) {
+            if (interval == maintenanceInterval) {
+                return;
+            }
+            maintenanceTask.cancel(false);
+        }
+        maintenanceInterval = interval;
+        maintenanceTask = interval > 0
+                ? MaintenanceExecutor.INSTANCE.scheduleWithFixedDelay(this::maintain, interval, interval, TimeUnit.MILLISECONDS)
+                : null;
+    }
+
+    static Handle open(String hostname, int port, FTPEnvironment env, ConnectionBudget budget) throws IOException {
+        if (!env.isSharedClientPoolEnabled()) {
+            return new FTPClientPool(hostname, port, env, budget).new Handle(null);
+        }
+        // the default directory is applied per file system, so it does not prevent sharing
+        FTPEnvironment poolEnv = env.withoutDefaultDirectory();
+        SharedPoolKey key = new SharedPoolKey(hostname, port, env);
+        while (true) {
+            CompletableFuture<FTPClientPool> future;
+            boolean create;
+            synchronized (SHARED_POOLS) {
+                future = SHARED_POOLS.get(key);
+                create = future == null;
+                if (create) {
+                    future = new CompletableFuture<>();
+                    SHARED_POOLS.put(key, future);
+                }
+            }
+            if (create) {
+                return createSharedPool(hostname, port, poolEnv, budget, key, future).new Handle(env.getDefaultDirectory());
+            }
+            FTPClientPool pool = awaitSharedPool(future);
+            synchronized (SHARED_POOLS) {
+                // the pool may have failed to be created, or it may have been released in the meantime; if so, try again
+                if (pool != null && SHARED_POOLS.get(key) == future) {
+                    pool.handleCount++;
+                    return pool.new Handle(env.getDefaultDirectory());
+                }
+            }
+        }
+    }
+
+    private static FTPClientPool createSharedPool(String hostname, int port, FTPEnvironment env, ConnectionBudget budget, SharedPoolKey key,
+            CompletableFuture<FTPClientPool> future) throws IOException {
+
+        FTPClientPool pool;
+        try {
+            pool = new FTPClientPool(hostname, port, env, budget, key);
+        } catch (IOException | RuntimeException | Error e) {
+            synchronized (SHARED_POOLS) {
+                SHARED_POOLS.remove(key);
+            }
+            // let any waiting threads try to create the pool themselves
+            future.complete(null);
+            throw e;
+        }
+        future.complete(pool);
+        return pool;
+    }
+
+    private static FTPClientPool awaitSharedPool(CompletableFuture<FTPClientPool> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            InterruptedIOException iioe = new InterruptedIOException(e.getMessage());
+            iioe.initCause(e);
+            throw iioe;
+        } catch (ExecutionException e) {
+            // never completed exceptionally
+            throw asIOException(e.getCause());
+        }
+    }
+
+    private void release() throws IOException {
+        if (sharedKey != null) {
+            synchronized (SHARED_POOLS) {
+                if (--handleCount > 0) {
+                    return;
+                }
+                SHARED_POOLS.remove(sharedKey);
+            }
+        }
+        close();
+    }
+
+    private ObjectName registerMXBean() throws IOException {
+        String host = port == -1 ? hostname : hostname + ":" + port; //$NON-NLS-1$
+        try {
+            ObjectName name = new ObjectName(String.format("com.github.robtimus.filesystems.ftp:type=FTPClientPool,host=%s,id=%d", //$NON-NLS-1$
+                    ObjectName.quote(host), POOL_COUNTER.incrementAndGet()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            return name;
+        } catch (JMException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private IOException unregisterMXBean(IOException exception) {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                return add(exception, new IOException(e));
+            }
+        }
+        return exception;
+    }
+
+    private long getKeepAliveInterval(FTPEnvironment env) {
+        long interval = env.getClientConnectionKeepAliveInterval();
+        if (validationPolicy == ClientValidationPolicy.WHILE_IDLE) {
+            // validating idle clients in the background is the same as sending them keep alives
+            long validationInterval = Math.max(1, env.getClientValidationIdleTime());
+            return interval > 0 ? Math.min(interval, validationInterval) : validationInterval;
+        }
+        return interval;
+    }
+
+    private long getMaintenanceInterval(FTPEnvironment env) {
+        long interval = env.getClientConnectionMaintenanceInterval();
+        if (interval == 0 && validationPolicy == ClientValidationPolicy.WHILE_IDLE) {
+            interval = Math.max(1, env.getClientValidationIdleTime());
+        }
+        if (leakDetectionThreshold > 0) {
+            // check for leaks at least as often as the threshold
+            long threshold = Math.max(1, env.getClientLeakDetectionThreshold());
+            interval = interval > 0 ? Math.min(interval, threshold) : threshold;
+        }
+        if (minPoolSize < maxPoolSize && idleTimeout > 0) {
+            // close idle clients above the minimum at most one timeout late, even if no other client is returned
+            long timeout = Math.max(1, env.getClientConnectionIdleTimeout());
+            interval = interval > 0 ? Math.min(interval, timeout) : timeout;
+        }
+        if (maxOverflowSize > 0 && overflowLingerTime > 0) {
+            // close idle overflow clients at most one linger time late, even if the pool is no longer used
+            long lingerTime = Math.max(1, env.getOverflowClientConnectionLingerTime());
+            interval = interval > 0 ? Math.min(interval, lingerTime) : lingerTime;
+        }
+        if (unusedTimeout > 0) {
+            // close the clients of an unused pool at most one timeout late
+            long timeout = Math.max(1, env.getFileSystemIdleTimeout());
+            interval = interval > 0 ? Math.min(interval, timeout) : timeout;
+        }
+        if (interval == 0 && abandonedStreams != null) {
+            interval = DEFAULT_RECLAIM_INTERVAL;
+        }
+        return interval;
+    }
+
+    private int getInitialPoolSize() {
+        if (env.isLazyInitializationEnabled()) {
+            // don't connect until the pool is first used; it will grow when needed
+            return 0;
+        }
+        if (budgetMember == null || minPoolSize == 0) {
+            return minPoolSize;
+        }
+        // don't wait for other connection pools to release permits for clients that aren't needed yet; the pool will grow when needed
+        return Math.min(minPoolSize, Math.max(1, budgetMember.budget().available()));
+    }
+
+    @SuppressWarnings("resource")
+    private void fillPool(String hostname, int port, final int initialPoolSize) throws IOException {
+        List<Client> clients = new ArrayList<>(initialPoolSize);
+        try {
+            createClients(initialPoolSize, clients);
+        } catch (IOException e) {
+            if (!clients.isEmpty() && isConnectionLimitReply(e)) {
+                // the FTP server does not accept more client connections; continue with the ones that were created
+                lowerConnectionLimit(clients.size(), e);
+            } else {
+                // creating the pool failed, disconnect all clients
+                failedToCreatePool(LOGGER, e);
+                for (Client client : clients) {
+                    try {
+                        client.disconnect();
+                    } catch (IOException e2) {
+                        e.addSuppressed(e2);
+                    }
+                }
+                throw e;
+            }
+        }
+        long now = System.nanoTime();
+        for (Client client : clients) {
+            client.idleSince = now;
+            client.lastActivity = now;
+            idleClients.addLast(client);
+        }
+        poolSize = clients.size();
+        createdPool(LOGGER, hostname, port, poolSize);
+    }
+
+    private void createClients(int count, List<Client> clients) throws IOException {
+        int concurrency = Math.min(count, env.getMaxConcurrentClientConnects());
+        if (concurrency <= 1) {
+            for (int i = 0; i < count; i++) {
+                clients.add(new Client(true));
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency, r -> createDaemonThread(r, "ftp-fs-pool-connect")); //$NON-NLS-1$
+        try {
+            // once one client could not be created there is no need to create any others
+            AtomicBoolean failed = new AtomicBoolean(false);
+            List<Future<Client>> futures = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                futures.add(executor.submit(() -> createClient(failed)));
+            }
+            collectClients(futures, clients);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private Client createClient(AtomicBoolean failed) throws IOException {
+        if (failed.get()) {
+            return null;
+        }
+        try {
+            return new Client(true);
+        } catch (final Exception e) {
+            failed.set(true);
+            throw e;
+        }
+    }
+
+    private void collectClients(List<Future<Client>> futures, List<Client> clients) throws IOException {
+        // wait for all clients, even after a failure, so all clients that were created can be disconnected
+        IOException exception = null;
+        boolean interrupted = false;
+        for (Future<Client> future : futures) {
+            while (true) {
+                try {
+                    Client client = future.get();
+                    if (client != null) {
+                        clients.add(client);
+                    }
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    if (exception == null) {
+                        exception = new InterruptedIOException(e.getMessage());
+                        exception.initCause(e);
+                    }
+                } catch (ExecutionException e) {
+                    exception = add(exception, asIOException(e.getCause()));
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private static IOException asIOException(Throwable cause) {
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+
+    private static Thread createDaemonThread(Runnable r, String name) {
+        Thread thread = new Thread(r, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    Client get() throws IOException {
+        return get(Lane.METADATA, null);
+    }
+
+    Client getForTransfer(TransferOptions options) throws IOException {
+        return get(Lane.TRANSFER, options);
+    }
+
+    private Client get(Lane lane, TransferOptions options) throws IOException {
+        reclaimAbandonedClients();
+        long startTime = System.nanoTime();
+        Client client;
+        do {
+            // if the FTP server rejected a new client connection, wait for a client connection that's in use instead
+            client = prepare(takeOrReserve(lane, options, startTime), lane, true);
+        } while (client == null);
+        borrowWaitTimes.record(System.nanoTime() - startTime);
+        return client;
+    }
+
+    private Client takeOrReserve(Lane lane, TransferOptions options, long startTime) throws IOException {
+        final long deadline = poolWaitTimeout == 0 ? 0 : startTime + TimeUnit.MILLISECONDS.toNanos(poolWaitTimeout);
+        lock.lock();
+        try {
+            while (true) {
+                checkOpen();
+                int limit = currentLimit();
+                if (hasCapacity(lane, limit)) {
+                    Client client = pollIdleClient(idleClients, options);
+                    if (client != null) {
+                        acquire(lane);
+                        tookClient(LOGGER, client.clientId, idleClients.size());
+                        return client;
+                    }
+                    if (poolSize < limit) {
+                        // reserve a spot in the pool; the caller will create a new client for it
+                        poolSize++;
+                        acquire(lane);
+                        return null;
+                    }
+                }
+                if (sizeLimit < connectionLimit) {
+                    // the pool size limit is adaptive; grow it if this borrow has waited too long, which also gives each lane more clients
+                    long growTime = startTime + targetWaitTime;
+                    if (System.nanoTime() - growTime >= 0) {
+                        growSizeLimit(startTime);
+                        continue;
+                    }
+                    awaitClient(deadline, lane, growTime);
+                    continue;
+                }
+                awaitClient(deadline, lane, 0);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // must be called while holding the lock
+    private Client pollIdleClient(Deque<Client> clients, TransferOptions options) {
+        if (options != null) {
+            // prefer the most recently used client that doesn't need to send any commands to apply the transfer options
+            for (Iterator<Client> i = clients.descendingIterator(); i.hasNext(); ) {
+                Client client = i.next();
+                if (client.hasTransferOptions(options)) {
+                    i.remove();
+                    return client;
+                }
+            }
+        }
+        // the most recently used client is the last one
+        return clients.pollLast();
+    }
+
+    // must be called while holding the lock
+    private boolean hasCapacity(Lane lane, int limit) {
+        return lane == Lane.TRANSFER ? transferInUse < maxInUse(Lane.TRANSFER, limit) : metadataInUse < maxInUse(Lane.METADATA, limit);
+    }
+
+    /**
+     * Returns the maximum number of pooled clients that can be in use for a lane.
+     * The reservations are applied to the effective pool size limit, not the maximum pool size, so they still hold if the pool size limit is
+     * adaptive or the FTP server's connection limit is lower. Must be called while holding the lock.
+     */
+    private int maxInUse(Lane lane, int limit) {
+        // each lane can use all clients except the ones that are reserved for the other lane, but at least one
+        int metadata = Math.min(reservedMetadata, limit - 1);
+        if (lane == Lane.TRANSFER) {
+            return limit - metadata;
+        }
+        int transfer = Math.min(reservedTransfer, limit - metadata);
+        return Math.max(1, limit - transfer);
+    }
+
+    // must be called while holding the lock
+    private void acquire(Lane lane) {
+        if (lane == Lane.TRANSFER) {
+            transferInUse++;
+        } else {
+            metadataInUse++;
+        }
+    }
+
+    // must be called while holding the lock
+    private void release(Lane lane) {
+        if (lane == Lane.TRANSFER) {
+            transferInUse--;
+        } else if (lane == Lane.METADATA) {
+            metadataInUse--;
+        }
+    }
+
+    // must be called while holding the lock
+    private void signalClientAvailable() {
+        // a released client or spot can be used by either lane
+        metadataClientAvailable.signal();
+        transferClientAvailable.signal();
+    }
+
+    // must be called while holding the lock
+    private void growSizeLimit(long startTime) {
+        sizeLimit++;
+        grewPoolSizeLimit(LOGGER, sizeLimit, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+    }
+
+    // must be called while holding the lock
+    private void shrinkSizeLimit() {
+        // the pool only shrinks if clients have been idle for too long, so the current size is enough
+        int newLimit = Math.max(minSizeLimit, poolSize);
+        if (targetWaitTime > 0 && newLimit < sizeLimit) {
+            sizeLimit = newLimit;
+            shrankPoolSizeLimit(LOGGER, sizeLimit);
+        }
+    }
+
+    private void awaitClient(long deadline, Lane lane, long wakeUpTime) throws IOException {
+        Condition clientAvailable = lane == Lane.TRANSFER ? transferClientAvailable : metadataClientAvailable;
+        try {
+            if (wakeUpTime != 0 && (deadline == 0 || wakeUpTime - deadline < 0)) {
+                // wake up before the deadline, so the caller can re-evaluate
+                clientAvailable.awaitNanos(wakeUpTime - System.nanoTime());
+                return;
+            }
+            if (deadline == 0) {
+                clientAvailable.await();
+                return;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                waitTimeoutCount.increment();
+                throw new IOException(FTPMessages.clientConnectionWaitTimeoutExpired());
+            }
+            clientAvailable.awaitNanos(remaining);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            InterruptedIOException iioe = new InterruptedIOException(e.getMessage());
+            iioe.initCause(e);
+            throw iioe;
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new ClosedFileSystemException();
+        }
+    }
+
+    Client getOrCreate(TransferOptions options) throws IOException {
+        reclaimAbandonedClients();
+        long startTime = System.nanoTime();
+        Client client;
+        boolean overflow = false;
+        boolean reservedOverflow = false;
+        List<Client> expiredClients;
+        lock.lock();
+        try {
+            checkOpen();
+            int limit = currentLimit();
+            client = hasCapacity(Lane.TRANSFER, limit) ? pollIdleClient(idleClients, options) : null;
+            expiredClients = collectIdleOverflowClients(startTime);
+            if (client != null) {
+                acquire(Lane.TRANSFER);
+                tookClient(LOGGER, client.clientId, idleClients.size());
+            } else if (hasCapacity(Lane.TRANSFER, limit) && poolSize < limit) {
+                // reserve a spot in the pool; a new pooled client will be created for it
+                poolSize++;
+                acquire(Lane.TRANSFER);
+            } else {
+                // nothing was taken from the pool, so no risk of pool starvation if creating the client fails
+                overflow = true;
+                client = pollIdleClient(idleOverflowClients, options);
+                if (client == null && overflowSize < maxOverflowSize) {
+                    // reserve a spot for an overflow client that will be kept after it's used
+                    overflowSize++;
+                    reservedOverflow = true;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Client expiredClient : expiredClients) {
+            expiredClient.disconnectQuietly();
+        }
+        client = overflow ? prepareOverflow(client, reservedOverflow) : prepare(client, Lane.TRANSFER, false);
+        borrowWaitTimes.record(System.nanoTime() - startTime);
+        return client;
+    }
+
+    @SuppressWarnings("resource")
+    private Client prepareOverflow(Client client, boolean reserved) throws IOException {
+        if (client == null) {
+            client = reserved ? createOverflowClient() : new Client(false, false);
+        } else if (!isValid(client)) {
+            clientNotConnected(LOGGER, client.clientId);
+            brokenClientCount.increment();
+            client.disconnectQuietly();
+            // the new client takes over the spot of the invalid client
+            client = createOverflowClient();
+        }
+        client.increaseRefCount();
+        return client;
+    }
+
+    private Client createOverflowClient() throws IOException {
+        try {
+            Client client = new Client(false, false);
+            if (budgetMember != null && !client.budgeted) {
+                // only keep overflow clients that count towards the connection budget; this one is closed after it's used
+                releaseOverflowSpot();
+                return client;
+            }
+            client.overflow = true;
+            return client;
+        } catch (final Exception e) {
+            releaseOverflowSpot();
+            throw e;
+        }
+    }
+
+    private void releaseOverflowSpot() {
+        lock.lock();
+        try {
+            overflowSize--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @SuppressWarnings("resource")
+    private Client prepare(Client client, Lane lane, boolean waitIfRejected) throws IOException {
+        if (client == null) {
+            client = createPooledClient(lane, waitIfRejected);
+        } else if (!isValid(client)) {
+            clientNotConnected(LOGGER, client.clientId);
+            brokenClientCount.increment();
+            client.disconnectQuietly();
+            client = createPooledClient(lane, waitIfRejected);
+        }
+        if (client == null) {
+            return null;
+        }
+        client.lane = lane;
+        client.increaseRefCount();
+        return client;
+    }
+
+    private boolean isValid(Client client) {
+        switch (validationPolicy) {
+            case ALWAYS:
+                return client.isConnected(true);
+            case WHEN_IDLE:
+                return client.isConnected(System.nanoTime() - client.lastActivity >= validationIdleTime);
+            case NEVER:
+            case WHILE_IDLE:
+            default:
+                return client.isConnected(false);
+        }
+    }
+
+    private Client createPooledClient(Lane lane, boolean waitIfRejected) throws IOException {
+        long startTime = System.nanoTime();
+        try {
+            return new Client(true);
+        } catch (final IOException e) {
+            // could not create a new client; release its spot in the pool to prevent pool starvation
+            boolean rejected = releaseSpot(lane, startTime, e);
+            if (rejected && waitIfRejected) {
+                return null;
+            }
+            throw e;
+        } catch (final RuntimeException e) {
+            releaseSpot(lane, startTime, null);
+            throw e;
+        }
+    }
+
+    /**
+     * Releases the spot of a pooled client that could not be created.
+     *
+     * @return {@code true} if the FTP server rejected the client because it has reached its connection limit, and other pooled clients
+     *         can be waited for instead.
+     */
+    private boolean releaseSpot(Lane lane, long startTime, IOException exception) {
+        lock.lock();
+        try {
+            poolSize--;
+            release(lane);
+            releasedClientSpot(LOGGER, poolSize);
+            // without other clients, the reply can also be a failed login; it says nothing about the connection limit
+            boolean rejected = poolSize > 0 && exception != null && isConnectionLimitReply(exception);
+            // clients that were being created when the limit was lowered don't lower it again
+            if (rejected && startTime - connectionLimitLowered >= 0) {
+                // the FTP server accepted the other pooled clients, but not this one
+                lowerConnectionLimit(Math.max(1, Math.min(poolSize, connectionLimit - 1)), exception);
+            }
+            signalClientAvailable();
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isConnectionLimitReply(IOException exception) {
+        if (connectionLimitLearning && exception instanceof FTPResponse) {
+            int replyCode = ((FTPResponse) exception).getReplyCode();
+            return replyCode == FTPReply.SERVICE_NOT_AVAILABLE || replyCode == FTPReply.NOT_LOGGED_IN;
+        }
+        return false;
+    }
+
+    // must be called while holding the lock, or during construction
+    private void lowerConnectionLimit(int limit, IOException exception) {
+        connectionLimit = limit;
+        connectionLimitChanged = System.nanoTime();
+        connectionLimitLowered = connectionLimitChanged;
+        loweredConnectionLimit(LOGGER, limit, ((FTPResponse) exception).getReplyCode());
+    }
+
+    // must be called while holding the lock; raises the connection limit if it has recovered
+    private int currentLimit() {
+        if (connectionLimit < maxPoolSize) {
+            long now = System.nanoTime();
+            if (now - connectionLimitChanged >= connectionLimitRecoveryInterval) {
+                // the FTP server has not rejected any client for a while; try one more
+                connectionLimit++;
+                connectionLimitChanged = now;
+                raisedConnectionLimit(LOGGER, connectionLimit);
+            }
+        }
+        return Math.min(sizeLimit, connectionLimit);
+    }
+
+    void reconfigure(Map<String, ?> settings) throws IOException {
+        List<Client> evictedClients;
+        lock.lock();
+        try {
+            checkOpen();
+            int oldMaxPoolSize = maxPoolSize;
+            env = env.withPoolSettings(settings);
+            applyPoolSettings(env);
+            sizeLimit = targetWaitTime > 0 ? Math.max(minSizeLimit, Math.min(sizeLimit, maxPoolSize)) : maxPoolSize;
+            // keep a learned connection limit, unless it's above the new maximum
+            connectionLimit = connectionLimit == oldMaxPoolSize ? maxPoolSize : Math.min(connectionLimit, maxPoolSize);
+            // clients that are in use are evicted when they are returned
+            evictedClients = collectExcessIdleClients();
+            scheduleMaintenance(getMaintenanceInterval(env));
+            reconfiguredPool(LOGGER, minPoolSize, maxPoolSize, poolWaitTimeout);
+            // the limits may have been raised; let all waiting threads re-evaluate
+            metadataClientAvailable.signalAll();
+            transferClientAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        IOException exception = null;
+        for (Client evictedClient : evictedClients) {
+            try {
+                evictedClient.disconnect();
+            } catch (IOException e) {
+                exception = add(exception, e);
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    // must be called while holding the lock
+    private List<Client> collectExcessIdleClients() {
+        List<Client> evictedClients = new ArrayList<>();
+        // the first idle client has been idle the longest
+        while (poolSize > maxPoolSize && !idleClients.isEmpty()) {
+            Client client = idleClients.removeFirst();
+            poolSize--;
+            evictedIdleClient(LOGGER, client.clientId, poolSize);
+            evictedClients.add(client);
+        }
+        return evictedClients;
+    }
+
+    void keepAlive() throws IOException {
+        // send a keep alive to all clients that have been idle since now
+        IOException exception = keepAliveIdleClients(System.nanoTime(), 0);
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private void maintain() {
+        try {
+            reclaimAbandonedClients();
+            detectLeaks();
+            IOException exception = evictIdleClients();
+            if (keepAliveInterval > 0) {
+                IOException keepAliveException = keepAliveIdleClients(System.nanoTime() - keepAliveInterval, MAINTENANCE_REPLY_TIMEOUT);
+                if (keepAliveException != null) {
+                    exception = add(exception, keepAliveException);
+                }
+            }
+            if (exception != null) {
+                failedToMaintainPool(LOGGER, exception);
+            }
+        } catch (RuntimeException e) {
+            // don't let the exception cancel any further maintenance
+            failedToMaintainPool(LOGGER, new IOException(e));
+        }
+    }
+
+    private IOException evictIdleClients() {
+        List<Client> evictedClients;
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            evictedClients = new ArrayList<>(collectIdleClients(now));
+            evictedClients.addAll(collectIdleOverflowClients(now));
+            evictedClients.addAll(collectUnusedClients(now));
+        } finally {
+            lock.unlock();
+        }
+        IOException exception = null;
+        for (Client evictedClient : evictedClients) {
+            try {
+                evictedClient.disconnect();
+            } catch (IOException e) {
+                exception = add(exception, e);
+            }
+        }
+        return exception;
+    }
+
+    private IOException keepAliveIdleClients(long activeBefore, int replyTimeout) {
+        IOException exception = null;
+        Client client;
+        // take the idle clients one at a time, so the other idle clients remain available
+        while ((client = takeForKeepAlive(activeBefore)) != null) {
+            try {
+                client.keepAlive(replyTimeout);
+                sentKeepAlive(LOGGER, client.clientId);
+            } catch (IOException e) {
+                exception = add(exception, e);
+                discard(client);
+                continue;
+            }
+            try {
+                returnAfterKeepAlive(client);
+            } catch (IOException e) {
+                exception = add(exception, e);
+            }
+        }
+        return exception;
+    }
+
+    private Client takeForKeepAlive(long activeBefore) {
+        lock.lock();
+        try {
+            if (closed) {
+                return null;
+            }
+            for (Iterator<Client> i = idleClients.iterator(); i.hasNext(); ) {
+                Client client = i.next();
+                if (client.lastActivity - activeBefore < 0) {
+                    i.remove();
+                    return client;
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void returnAfterKeepAlive(Client client) throws IOException {
+        lock.lock();
+        try {
+            if (!closed) {
+                insertIdleClient(client);
+                signalClientAvailable();
+                return;
+            }
+            poolSize--;
+        } finally {
+            lock.unlock();
+        }
+        client.disconnect();
+    }
+
+    // must be called while holding the lock
+    private void insertIdleClient(Client client) {
+        // a keep alive does not count as usage, so keep the idle clients ordered by the time they were returned
+        Deque<Client> newerClients = new ArrayDeque<>();
+        while (!idleClients.isEmpty() && idleClients.peekLast().idleSince - client.idleSince > 0) {
+            newerClients.addFirst(idleClients.removeLast());
+        }
+        idleClients.addLast(client);
+        idleClients.addAll(newerClients);
+    }
+
+    private void discard(Client client) {
+        client.disconnectQuietly();
+
+        lock.lock();
+        try {
+            poolSize--;
+            release(client.lane);
+            client.lane = null;
+            brokenClientCount.increment();
+            discardedBrokenClient(LOGGER, client.clientId, poolSize);
+            signalClientAvailable();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void endpointFailed(Endpoint endpoint) {
+        if (!endpoints.failed(endpoint)) {
+            return;
+        }
+        List<Client> drainedClients = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Iterator<Client> i = idleClients.iterator(); i.hasNext(); ) {
+                Client client = i.next();
+                if (client.endpoint == endpoint) {
+                    i.remove();
+                    poolSize--;
+                    drainedClients.add(client);
+                }
+            }
+            for (Iterator<Client> i = idleOverflowClients.iterator(); i.hasNext(); ) {
+                Client client = i.next();
+                if (client.endpoint == endpoint) {
+                    i.remove();
+                    overflowSize--;
+                    drainedClients.add(client);
+                }
+            }
+            if (!drainedClients.isEmpty()) {
+                signalClientAvailable();
+            }
+        } finally {
+            lock.unlock();
+        }
+        failedEndpoint(LOGGER, endpoint.toString(), drainedClients.size());
+        for (Client client : drainedClients) {
+            client.disconnectQuietly();
+        }
+    }
+
+    private void detectLeaks() {
+        if (leakDetectionThreshold == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (Client client : leasedClients) {
+            if (!client.leakReported && client.isLeaked(now)) {
+                client.leakReported = true;
+                leakedClient(LOGGER, client.clientId, TimeUnit.NANOSECONDS.toMillis(now - client.leaseStart), client.leaseOrigin);
+            }
+        }
+    }
+
+    private void reclaimAbandonedClients() {
+        if (abandonedStreams == null) {
+            return;
+        }
+        StreamReference reference;
+        while ((reference = (StreamReference) abandonedStreams.poll()) != null) {
+            // if the reference was removed, the stream was closed after all
+            if (streamReferences.remove(reference)) {
+                reference.client.reclaim();
+                // only count the client once it's no longer in use, so the statistics are consistent
+                reclaimedClientCount.increment();
+                reclaimedClient(LOGGER, reference.client.clientId);
+            }
+        }
+    }
+
+    private StreamReference registerStream(Object stream, Client client) {
+        if (abandonedStreams == null) {
+            return null;
+        }
+        StreamReference reference = new StreamReference(stream, client, abandonedStreams);
+        streamReferences.add(reference);
+        return reference;
+    }
+
+    private void unregisterStream(StreamReference reference) {
+        if (reference != null) {
+            streamReferences.remove(reference);
+            reference.clear();
+        }
+    }
+
+    private String serverName() {
+        return port == -1 ? hostname : hostname + ":" + port; //$NON-NLS-1$
+    }
+
+    int poolSize() {
+        lock.lock();
+        try {
+            return poolSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int idleClientCount() {
+        lock.lock();
+        try {
+            return idleClients.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String getHostname() {
+        return hostname;
+    }
+
+    @Override
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public int getMinPoolSize() {
+        return minPoolSize;
+    }
+
+    @Override
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    @Override
+    public int getIdleCount() {
+        return idleClientCount();
+    }
+
+    @Override
+    public int getInUseCount() {
+        lock.lock();
+        try {
+            return poolSize - idleClients.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getMetadataInUseCount() {
+        lock.lock();
+        try {
+            return metadataInUse;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getTransferInUseCount() {
+        lock.lock();
+        try {
+            return transferInUse;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getBorrowCount() {
+        return borrowWaitTimes.count();
+    }
+
+    @Override
+    public double getBorrowWaitTimeP50() {
+        return toMillis(borrowWaitTimes.percentileNanos(50));
+    }
+
+    @Override
+    public double getBorrowWaitTimeP99() {
+        return toMillis(borrowWaitTimes.percentileNanos(99));
+    }
+
+    @Override
+    public double getBorrowWaitTimeMax() {
+        return toMillis(borrowWaitTimes.maxNanos());
+    }
+
+    @Override
+    public long getWaitTimeoutCount() {
+        return waitTimeoutCount.sum();
+    }
+
+    @Override
+    public long getBrokenClientCount() {
+        return brokenClientCount.sum();
+    }
+
+    @Override
+    public long getCreatedCount() {
+        return createdCount.sum();
+    }
+
+    @Override
+    public long getClosedCount() {
+        return closedCount.sum();
+    }
+
+    @Override
+    public double getAverageHoldTime() {
+        long leases = leaseCount.sum();
+        return leases == 0 ? 0 : toMillis(totalHoldTime.sum()) / leases;
+    }
+
+    @Override
+    public int getLeakedClientCount() {
+        long now = System.nanoTime();
+        int count = 0;
+        for (Client client : leasedClients) {
+            if (client.isLeaked(now)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public long getReclaimedClientCount() {
+        return reclaimedClientCount.sum();
+    }
+
+    @Override
+    public int getPoolSizeLimit() {
+        lock.lock();
+        try {
+            // don't use currentLimit(); reading the limit should not raise it
+            return Math.min(sizeLimit, connectionLimit);
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        creatingPool(LOGGER, hostname, port, poolSize, poolWaitTimeout);
-        fillPool(hostname, port, poolSize);
+    @Override
+    public boolean isConnectCircuitOpen() {
+        return circuitBreaker.isOpen();
     }
 
-    @SuppressWarnings("resource")
-    private void fillPool(String hostname, int port, final int poolSize) throws IOException {
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000D;
+    }
+
+    boolean isSecure() {
+        return env instanceof FTPSEnvironment;
+    }
+
+    void close() throws IOException {
+        List<Client> clients;
+        boolean wasClosed;
+        lock.lock();
         try {
-            for (int i = 0; i < poolSize; i++) {
-                pool.add(new Client(true));
+            if (maintenanceTask != null) {
+                maintenanceTask.cancel(false);
             }
-            createdPool(LOGGER, hostname, port, poolSize);
-        } catch (IOException e) {
-            // creating the pool failed, disconnect all clients
-            failedToCreatePool(LOGGER, e);
-            for (Client client : pool) {
-                try {
-                    client.disconnect();
-                } catch (IOException e2) {
-                    e.addSuppressed(e2);
-                }
+            wasClosed = closed;
+            closed = true;
+            clients = new ArrayList<>(idleClients);
+            idleClients.clear();
+            poolSize -= clients.size();
+            clients.addAll(idleOverflowClients);
+            overflowSize -= idleOverflowClients.size();
+            idleOverflowClients.clear();
+            // wake up all waiting threads, so they can fail
+            metadataClientAvailable.signalAll();
+            transferClientAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        drainedPoolForClose(LOGGER);
+
+        IOException exception = wasClosed ? null : unregisterMXBean(null);
+        for (Client client : clients) {
+            try {
+                client.disconnect();
+            } catch (IOException e) {
+                exception = add(exception, e);
             }
-            throw e;
+        }
+        if (budgetMember != null && !wasClosed) {
+            // clients that are still in use release their permits when they are closed
+            budgetMember.unregister();
+        }
+        if (exception != null) {
+            throw exception;
         }
     }
 
-    Client get() throws IOException {
+    private boolean evictIdleClientForBudget() {
+        Client client;
+        lock.lock();
         try {
-            Client client = getWithinTimeout();
-            try {
-                tookClient(LOGGER, client.clientId, pool.size());
-                if (!client.isConnected()) {
-                    clientNotConnected(LOGGER, client.clientId);
-                    client = new Client(true);
-                }
-            } catch (final Exception e) {
-                // could not create a new client; re-add the broken client to the pool to prevent pool starvation
-                pool.add(client);
-                returnedBrokenClient(LOGGER, client.clientId, pool.size());
-                throw e;
+            // the longest idle client is the first one
+            client = idleClients.pollFirst();
+            if (client == null) {
+                return false;
             }
-            client.increaseRefCount();
-            return client;
-
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-
-            InterruptedIOException iioe = new InterruptedIOException(e.getMessage());
-            iioe.initCause(e);
-            throw iioe;
+            poolSize--;
+            evictedIdleClient(LOGGER, client.clientId, poolSize);
+            signalClientAvailable();
+        } finally {
+            lock.unlock();
         }
+        // disconnecting releases the permit of the client
+        client.disconnectQuietly();
+        return true;
     }
 
-    private Client getWithinTimeout() throws InterruptedException, IOException {
-        if (poolWaitTimeout == 0) {
-            return pool.take();
-        }
-        Client client = pool.poll(poolWaitTimeout, TimeUnit.MILLISECONDS);
-        if (client == null) {
-            throw new IOException(FTPMessages.clientConnectionWaitTimeoutExpired());
+    private IOException add(IOException existing, IOException e) {
+        if (existing == null) {
+            return e;
         }
-        return client;
+        existing.addSuppressed(e);
+        return existing;
     }
 
-    Client getOrCreate() throws IOException {
-        Client client = pool.poll();
-        if (client == null) {
-            // nothing was taken from the pool, so no risk of pool starvation if creating the client fails
-            return new Client(false);
-        }
+    private void returnToPool(Client client) throws IOException {
+        assert client.refCount == 0;
+
+        List<Client> evictedClients;
+        lock.lock();
         try {
-            tookClient(LOGGER, client.clientId, pool.size());
-            if (!client.isConnected()) {
-                clientNotConnected(LOGGER, client.clientId);
-                client = new Client(true);
+            release(client.lane);
+            client.lane = null;
+            // if the connection limit was lowered, shrink the pool to it
+            if (closed || endpoints.isDrained(client.endpoint) || poolSize > connectionLimit) {
+                poolSize--;
+                signalClientAvailable();
+                evictedClients = Collections.singletonList(client);
+            } else {
+                client.idleSince = System.nanoTime();
+                client.lastActivity = client.idleSince;
+                idleClients.addLast(client);
+                returnedClient(LOGGER, client.clientId, idleClients.size());
+                signalClientAvailable();
+                evictedClients = collectIdleClients(client.idleSince);
             }
-        } catch (final Exception e) {
-            // could not create a new client; re-add the broken client to the pool to prevent pool starvation
-            pool.add(client);
-            returnedBrokenClient(LOGGER, client.clientId, pool.size());
-            throw e;
+        } finally {
+            lock.unlock();
+        }
+        IOException exception = null;
+        for (Client evictedClient : evictedClients) {
+            try {
+                evictedClient.disconnect();
+            } catch (IOException e) {
+                exception = add(exception, e);
+            }
+        }
+        if (exception != null) {
+            throw exception;
         }
-        client.increaseRefCount();
-        return client;
     }
 
-    void keepAlive() throws IOException {
-        List<Client> clients = new ArrayList<>();
-        pool.drainTo(clients);
-        drainedPoolForKeepAlive(LOGGER);
+    private void returnOverflowClient(Client client) throws IOException {
+        assert client.refCount == 0;
 
+        List<Client> evictedClients;
+        lock.lock();
+        try {
+            if (closed || client.broken || !client.client.isConnected() || endpoints.isDrained(client.endpoint)) {
+                overflowSize--;
+                evictedClients = Collections.singletonList(client);
+            } else {
+                client.idleSince = System.nanoTime();
+                client.lastActivity = client.idleSince;
+                idleOverflowClients.addLast(client);
+                returnedClient(LOGGER, client.clientId, idleOverflowClients.size());
+                evictedClients = collectIdleOverflowClients(client.idleSince);
+            }
+        } finally {
+            lock.unlock();
+        }
         IOException exception = null;
-        for (Client client : clients) {
+        for (Client evictedClient : evictedClients) {
             try {
-                client.keepAlive();
+                evictedClient.disconnect();
             } catch (IOException e) {
                 exception = add(exception, e);
-            } finally {
-                returnToPool(client);
             }
         }
         if (exception != null) {
@@ -189,41 +1466,234 @@ final class FTPClientPool {
         }
     }
 
-    boolean isSecure() {
-        return env instanceof FTPSEnvironment;
+    // must be called while holding the lock
+    private List<Client> collectIdleOverflowClients(long now) {
+        List<Client> evictedClients = Collections.emptyList();
+        // the first idle overflow client has been idle the longest
+        Client client = idleOverflowClients.peekFirst();
+        while (client != null && now - client.idleSince >= overflowLingerTime) {
+            idleOverflowClients.removeFirst();
+            overflowSize--;
+            evictedOverflowClient(LOGGER, client.clientId);
+            if (evictedClients.isEmpty()) {
+                evictedClients = new ArrayList<>();
+            }
+            evictedClients.add(client);
+            client = idleOverflowClients.peekFirst();
+        }
+        return evictedClients;
     }
 
-    void close() throws IOException {
-        List<Client> clients = new ArrayList<>();
-        pool.drainTo(clients);
-        drainedPoolForClose(LOGGER);
+    // must be called while holding the lock
+    private List<Client> collectIdleClients(long now) {
+        List<Client> evictedClients = Collections.emptyList();
+        // the first idle client has been idle the longest
+        Client client = idleClients.peekFirst();
+        while (client != null && poolSize > minPoolSize && now - client.idleSince >= idleTimeout) {
+            idleClients.removeFirst();
+            poolSize--;
+            evictedIdleClient(LOGGER, client.clientId, poolSize);
+            if (evictedClients.isEmpty()) {
+                evictedClients = new ArrayList<>();
+            }
+            evictedClients.add(client);
+            client = idleClients.peekFirst();
+        }
+        if (!evictedClients.isEmpty()) {
+            shrinkSizeLimit();
+        }
+        return evictedClients;
+    }
 
-        IOException exception = null;
-        for (Client client : clients) {
+    // must be called while holding the lock
+    private List<Client> collectUnusedClients(long now) {
+        if (unusedTimeout == 0 || idleClients.isEmpty() || idleClients.size() < poolSize || overflowSize > idleOverflowClients.size()) {
+            // not enabled, nothing to close, or some clients are in use or being created
+            return Collections.emptyList();
+        }
+        // the last idle client has been returned most recently
+        long idleTime = now - idleClients.peekLast().idleSince;
+        if (idleTime < unusedTimeout) {
+            return Collections.emptyList();
+        }
+        // the pool is not used; close all of its clients, including the minimum number, and recreate them on the next use
+        List<Client> evictedClients = new ArrayList<>(idleClients);
+        idleClients.clear();
+        poolSize = 0;
+        closedUnusedPool(LOGGER, evictedClients.size(), TimeUnit.NANOSECONDS.toMillis(idleTime));
+        shrinkSizeLimit();
+        return evictedClients;
+    }
+
+    final class Handle {
+
+        private final String defaultDirectory;
+        // the working directory of client connections used by this handle; only known after the first client connection has been reset
+        private volatile String workingDirectory;
+        private final AtomicBoolean open = new AtomicBoolean(true);
+
+        private Handle(String defaultDirectory) {
+            this.defaultDirectory = defaultDirectory;
+        }
+
+        Client get() throws IOException {
+            checkHandleOpen();
+            return lease(FTPClientPool.this.get());
+        }
+
+        Client getForTransfer(TransferOptions options) throws IOException {
+            checkHandleOpen();
+            return lease(FTPClientPool.this.getForTransfer(options));
+        }
+
+        Client getOrCreate(TransferOptions options) throws IOException {
+            checkHandleOpen();
+            return lease(FTPClientPool.this.getOrCreate(options));
+        }
+
+        private void checkHandleOpen() {
+            if (!open.get()) {
+                throw new ClosedFileSystemException();
+            }
+        }
+
+        private Client lease(Client client) throws IOException {
+            if (sharedKey == null || client.owner == this) {
+                return client;
+            }
             try {
-                client.disconnect();
+                client.reset(this);
+                return client;
             } catch (IOException e) {
-                exception = add(exception, e);
+                client.failed(e);
+                try {
+                    client.close();
+                } catch (IOException e2) {
+                    e.addSuppressed(e2);
+                }
+                throw e;
             }
         }
-        if (exception != null) {
-            throw exception;
+
+        void reconfigure(Map<String, ?> settings) throws IOException {
+            checkHandleOpen();
+            FTPClientPool.this.reconfigure(settings);
+        }
+
+        void keepAlive() throws IOException {
+            FTPClientPool.this.keepAlive();
+        }
+
+        boolean isSecure() {
+            return FTPClientPool.this.isSecure();
+        }
+
+        void close() throws IOException {
+            if (open.getAndSet(false)) {
+                release();
+            }
         }
     }
 
-    private IOException add(IOException existing, IOException e) {
-        if (existing == null) {
-            return e;
+    private static final class StreamReference extends PhantomReference<Object> {
+
+        private final Client client;
+
+        private StreamReference(Object stream, Client client, ReferenceQueue<Object> queue) {
+            super(stream, queue);
+            this.client = client;
         }
-        existing.addSuppressed(e);
-        return existing;
     }
 
-    private void returnToPool(Client client) {
-        assert client.refCount == 0;
+    private static final class LeaseOrigin extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private LeaseOrigin(String clientId) {
+            super(FTPMessages.clientBorrowedHere(clientId));
+        }
+    }
+
+    private enum Lane {
+        METADATA,
+        TRANSFER,
+    }
+
+    private static final class SharedPoolKey {
+
+        private final Class<?> envClass;
+        private final String hostname;
+        private final int port;
+        private final String username;
+        private final char[] password;
+        private final String account;
+        private final Map<String, Object> settings;
+
+        private SharedPoolKey(String hostname, int port, FTPEnvironment env) {
+            this.envClass = env.getClass();
+            this.hostname = hostname;
+            this.port = port;
+            this.username = env.getUsername();
+            char[] envPassword = env.getPassword();
+            this.password = envPassword != null ? envPassword.clone() : null;
+            this.account = env.getAccount();
+            this.settings = env.getSharedClientPoolSettings();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            SharedPoolKey other = (SharedPoolKey) o;
+            return envClass == other.envClass
+                    && Objects.equals(hostname, other.hostname)
+                    && port == other.port
+                    && Objects.equals(username, other.username)
+                    && Arrays.equals(password, other.password)
+                    && Objects.equals(account, other.account)
+                    && settingsEqual(other.settings);
+        }
+
+        private boolean settingsEqual(Map<String, Object> otherSettings) {
+            if (settings.size() != otherSettings.size()) {
+                return false;
+            }
+            for (Map.Entry<String, Object> entry : settings.entrySet()) {
+                String key = entry.getKey();
+                // compare array values such as passwords by content
+                if (!otherSettings.containsKey(key) || !Objects.deepEquals(entry.getValue(), otherSettings.get(key))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = Objects.hash(envClass, hostname, port, username, account);
+            hash = 31 * hash + Arrays.hashCode(password);
+            int settingsHash = 0;
+            for (Map.Entry<String, Object> entry : settings.entrySet()) {
+                settingsHash += entry.getKey().hashCode() ^ Arrays.deepHashCode(new Object[] { entry.getValue() });
+            }
+            return 31 * hash + settingsHash;
+        }
+    }
 
-        pool.add(client);
-        returnedClient(LOGGER, client.clientId, pool.size());
+    private static final class MaintenanceExecutor {
+
+        // a single daemon thread is shared by all pools; it's only created once the first pool needs it
+        // the only blocking I/O it performs is sending keep alives, and these wait at most MAINTENANCE_REPLY_TIMEOUT for a reply,
+        // so an unresponsive FTP server can't stall the maintenance of the other pools; evicted clients are disconnected without a reply
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(
+                r -> createDaemonThread(r, "ftp-fs-pool-maintenance")); //$NON-NLS-1$
+
+        private MaintenanceExecutor() {
+        }
     }
 
     final class Client implements Closeable {
@@ -231,29 +1701,178 @@ final class FTPClientPool {
         private final String clientId;
 
         private final FTPClient client;
+        private Endpoint endpoint;
         private final boolean pooled;
+        // overflow clients are not pooled, but can be reused by getOrCreate
+        private boolean overflow = false;
+        // true if the client holds a permit of the connection budget
+        private final boolean budgeted;
 
         private FileType fileType;
         private FileStructure fileStructure;
         private FileTransferMode fileTransferMode;
 
         private int refCount = 0;
+        private long idleSince;
+        private long lastActivity;
+        private boolean broken = false;
+        // a client can be disconnected more than once, for instance after a failed validation; only the first time counts
+        private final AtomicBoolean disconnected = new AtomicBoolean(false);
+        // the lane the client is borrowed for, or null if the client is idle or not pooled
+        private Lane lane;
+        // the lease fields are also read by the maintenance thread
+        private volatile long leaseStart;
+        private boolean leased = false;
+        private volatile LeaseOrigin leaseOrigin;
+        private volatile boolean leakReported = false;
+        // only tracked for shared pools
+        private String loginDirectory;
+        private String workingDirectory;
+        private Handle owner;
 
         private Client(boolean pooled) throws IOException {
+            this(pooled, true);
+        }
+
+        private Client(boolean pooled, boolean waitForBudget) throws IOException {
             this.clientId = "client-" + CLIENT_COUNTER.incrementAndGet(); //$NON-NLS-1$
 
-            this.client = env.createClient(hostname, port);
+            if (budgetMember == null) {
+                this.budgeted = false;
+            } else if (waitForBudget) {
+                budgetMember.acquire(poolWaitTimeout);
+                this.budgeted = true;
+            } else {
+                // Clients that are not taken from the pool may be needed while the caller already holds clients, for instance to copy files.
+                // Waiting for a permit could then wait for the caller itself, so create these clients without a permit if there is none.
+                this.budgeted = budgetMember.tryAcquire();
+            }
+            try {
+                this.client = connect();
+            } catch (IOException | RuntimeException e) {
+                if (budgeted) {
+                    budgetMember.release();
+                }
+                throw e;
+            }
             this.pooled = pooled;
 
             this.fileType = env.getDefaultFileType();
             this.fileStructure = env.getDefaultFileStructure();
             this.fileTransferMode = env.getDefaultFileTransferMode();
 
+            createdCount.increment();
             createdClient(LOGGER, clientId, pooled);
             addCommandListener(LOGGER, client);
+
+            if (sharedKey != null) {
+                try {
+                    this.loginDirectory = pwd();
+                    this.workingDirectory = loginDirectory;
+                } catch (IOException e) {
+                    disconnectQuietly();
+                    throw e;
+                }
+            }
+        }
+
+        private FTPClient connect() throws IOException {
+            circuitBreaker.acquire();
+            try {
+                return connectToEndpoint();
+            } catch (RuntimeException e) {
+                // every attempt that passed the circuit breaker must be recorded, otherwise a probe would never finish
+                connectFailed();
+                throw e;
+            }
+        }
+
+        private FTPClient connectToEndpoint() throws IOException {
+            IOException exception = null;
+            // if any endpoint replied, the FTP server is reachable even if the connect failed
+            boolean reachable = false;
+            List<Endpoint> candidates = endpoints.candidates();
+            for (int i = 0; i < candidates.size(); i++) {
+                Endpoint candidate = candidates.get(i);
+                if (i > 0) {
+                    endpoints.connecting(candidate);
+                }
+                long startTime = System.nanoTime();
+                try {
+                    FTPClient ftpClient = env.createClient(candidate.hostname, candidate.port);
+                    endpoints.connected(candidate, System.nanoTime() - startTime);
+                    endpoint = candidate;
+                    connectSucceeded();
+                    return ftpClient;
+                } catch (IOException e) {
+                    endpoints.disconnected(candidate);
+                    // file system exceptions are the result of FTP replies, like failed logins, so the endpoint itself works
+                    if (e instanceof FileSystemException) {
+                        reachable = true;
+                    } else {
+                        endpointFailed(candidate);
+                    }
+                    exception = add(exception, e);
+                }
+            }
+            if (reachable) {
+                connectSucceeded();
+            } else {
+                connectFailed();
+            }
+            throw exception;
+        }
+
+        private void connectSucceeded() {
+            if (circuitBreaker.succeeded()) {
+                closedConnectCircuit(LOGGER, serverName());
+            }
+        }
+
+        private void connectFailed() {
+            long backoff = circuitBreaker.failed();
+            if (backoff >= 0) {
+                openedConnectCircuit(LOGGER, serverName(), backoff);
+            }
+        }
+
+        private void reset(Handle handle) throws IOException {
+            String directory = handle.workingDirectory;
+            if (directory == null) {
+                // resolve the default directory the same way as for a client connection that is not shared
+                changeWorkingDirectory(loginDirectory);
+                if (handle.defaultDirectory != null) {
+                    changeWorkingDirectory(handle.defaultDirectory);
+                }
+                directory = pwd();
+                handle.workingDirectory = directory;
+            } else {
+                changeWorkingDirectory(directory);
+            }
+            applyTransferOptions(defaultTransferOptions);
+            owner = handle;
+        }
+
+        private void changeWorkingDirectory(String directory) throws IOException {
+            if (!directory.equals(workingDirectory)) {
+                if (!client.changeWorkingDirectory(directory)) {
+                    throw exceptionFactory.createChangeWorkingDirectoryException(directory, client.getReplyCode(), client.getReplyString());
+                }
+                // the directory may be relative, so it's only known after a call to pwd()
+                workingDirectory = directory.startsWith("/") ? directory : null; //$NON-NLS-1$
+            }
         }
 
         private void increaseRefCount() {
+            if (refCount == 0) {
+                leaseStart = System.nanoTime();
+                leased = true;
+                if (leakDetectionThreshold > 0) {
+                    leaseOrigin = new LeaseOrigin(clientId);
+                    leakReported = false;
+                    leasedClients.add(this);
+                }
+            }
             refCount++;
             increasedRefCount(LOGGER, clientId, refCount);
         }
@@ -267,11 +1886,30 @@ final class FTPClientPool {
         }
 
         private void keepAlive() throws IOException {
+            long startTime = System.nanoTime();
             client.sendNoOp();
+            lastActivity = System.nanoTime();
+            endpoints.commandCompleted(endpoint, lastActivity - startTime);
+        }
+
+        private void keepAlive(int replyTimeout) throws IOException {
+            int soTimeout = client.getSoTimeout();
+            boolean bounded = replyTimeout > 0 && (soTimeout == 0 || soTimeout > replyTimeout);
+            if (bounded) {
+                client.setSoTimeout(replyTimeout);
+            }
+            // if the keep alive fails the client is discarded, so the timeout only needs to be restored afterwards if it succeeds
+            keepAlive();
+            if (bounded) {
+                client.setSoTimeout(soTimeout);
+            }
         }
 
-        private boolean isConnected() {
+        private boolean isConnected(boolean validate) {
             if (client.isConnected()) {
+                if (!validate) {
+                    return true;
+                }
                 try {
                     keepAlive();
                     return true;
@@ -284,7 +1922,18 @@ final class FTPClientPool {
         }
 
         private void disconnect() throws IOException {
-            client.disconnect();
+            if (!disconnected.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                client.disconnect();
+            } finally {
+                endpoints.disconnected(endpoint);
+                if (budgeted) {
+                    budgetMember.release();
+                }
+            }
+            closedCount.increment();
             disconnectedClient(LOGGER, clientId);
         }
 
@@ -299,14 +1948,42 @@ final class FTPClientPool {
         @Override
         public void close() throws IOException {
             if (decreaseRefCount() == 0) {
-                if (pooled) {
-                    returnToPool(this);
-                } else {
+                if (leased) {
+                    leaseCount.increment();
+                    totalHoldTime.add(System.nanoTime() - leaseStart);
+                    leased = false;
+                    if (leaseOrigin != null) {
+                        leasedClients.remove(this);
+                        leaseOrigin = null;
+                    }
+                }
+                if (overflow) {
+                    returnOverflowClient(this);
+                } else if (!pooled) {
                     disconnect();
+                } else if (broken || !client.isConnected()) {
+                    discard(this);
+                } else {
+                    returnToPool(this);
                 }
             }
         }
 
+        private boolean isLeaked(long now) {
+            return leaseOrigin != null && now - leaseStart >= leakDetectionThreshold;
+        }
+
+        private void reclaim() {
+            // the stream was never closed, so its data transfer never finished; don't reuse the connection
+            broken = true;
+            refCount = 1;
+            try {
+                close();
+            } catch (@SuppressWarnings("unused") IOException e) {
+                // ignore
+            }
+        }
+
         FTPClient ftpClient() {
             return client;
         }
@@ -315,12 +1992,33 @@ final class FTPClientPool {
             return exceptionFactory;
         }
 
+        IOException failed(IOException e) {
+            // file system exceptions are the result of FTP replies, so the connection still works unless the server is closing it
+            if (!broken && (!(e instanceof FileSystemException) || client.getReplyCode() == FTPReply.SERVICE_NOT_AVAILABLE)) {
+                broken = true;
+                brokenClient(LOGGER, clientId);
+                endpointFailed(endpoint);
+            }
+            return e;
+        }
+
         String pwd() throws IOException {
-            String pwd = client.printWorkingDirectory();
-            if (pwd == null) {
-                throw new FTPFileSystemException(client.getReplyCode(), client.getReplyString());
+            try {
+                String pwd = client.printWorkingDirectory();
+                if (pwd == null) {
+                    throw new FTPFileSystemException(client.getReplyCode(), client.getReplyString());
+                }
+                workingDirectory = pwd;
+                return pwd;
+            } catch (IOException e) {
+                throw failed(e);
             }
-            return pwd;
+        }
+
+        private boolean hasTransferOptions(TransferOptions options) {
+            return (options.fileType == null || options.fileType == fileType)
+                    && (options.fileStructure == null || options.fileStructure == fileStructure)
+                    && (options.fileTransferMode == null || options.fileTransferMode == fileTransferMode);
         }
 
         private void applyTransferOptions(TransferOptions options) throws IOException {
@@ -342,14 +2040,18 @@ final class FTPClientPool {
         InputStream newInputStream(FTPPath path, OpenOptions options) throws IOException {
             assert options.read;
 
-            applyTransferOptions(options);
+            try {
+                applyTransferOptions(options);
 
-            InputStream in = client.retrieveFileStream(path.path());
-            if (in == null) {
-                throw exceptionFactory.createNewInputStreamException(path.path(), client.getReplyCode(), client.getReplyString());
+                InputStream in = client.retrieveFileStream(path.path());
+                if (in == null) {
+                    throw exceptionFactory.createNewInputStreamException(path.path(), client.getReplyCode(), client.getReplyString());
+                }
+                increaseRefCount();
+                return new FTPInputStream(path, in, options.deleteOnClose);
+            } catch (IOException e) {
+                throw failed(e);
             }
-            increaseRefCount();
-            return new FTPInputStream(path, in, options.deleteOnClose);
         }
 
         private final class FTPInputStream extends InputStream {
@@ -357,6 +2059,7 @@ final class FTPClientPool {
             private final FTPPath path;
             private final InputStream in;
             private final boolean deleteOnClose;
+            private final StreamReference reference;
 
             private boolean open = true;
 
@@ -364,6 +2067,7 @@ final class FTPClientPool {
                 this.path = path;
                 this.in = in;
                 this.deleteOnClose = deleteOnClose;
+                this.reference = registerStream(this, Client.this);
                 createdInputStream(LOGGER, clientId, path.path());
             }
 
@@ -395,6 +2099,7 @@ final class FTPClientPool {
             @Override
             public void close() throws IOException {
                 if (open) {
+                    unregisterStream(reference);
                     in.close();
                     open = false;
                     finalizeStream();
@@ -425,14 +2130,18 @@ final class FTPClientPool {
         OutputStream newOutputStream(FTPPath path, OpenOptions options) throws IOException {
             assert options.write;
 
-            applyTransferOptions(options);
+            try {
+                applyTransferOptions(options);
 
-            OutputStream out = options.append ? client.appendFileStream(path.path()) : client.storeFileStream(path.path());
-            if (out == null) {
-                throw exceptionFactory.createNewOutputStreamException(path.path(), client.getReplyCode(), client.getReplyString(), options.options);
+                OutputStream out = options.append ? client.appendFileStream(path.path()) : client.storeFileStream(path.path());
+                if (out == null) {
+                    throw exceptionFactory.createNewOutputStreamException(path.path(), client.getReplyCode(), client.getReplyString(), options.options);
+                }
+                increaseRefCount();
+                return new FTPOutputStream(path, out, options.deleteOnClose);
+            } catch (IOException e) {
+                throw failed(e);
             }
-            increaseRefCount();
-            return new FTPOutputStream(path, out, options.deleteOnClose);
         }
 
         private final class FTPOutputStream extends OutputStream {
@@ -440,6 +2149,7 @@ final class FTPClientPool {
             private final FTPPath path;
             private final OutputStream out;
             private final boolean deleteOnClose;
+            private final StreamReference reference;
 
             private boolean open = true;
 
@@ -447,6 +2157,7 @@ final class FTPClientPool {
                 this.path = path;
                 this.out = out;
                 this.deleteOnClose = deleteOnClose;
+                this.reference = registerStream(this, Client.this);
                 createdOutputStream(LOGGER, clientId, path.path());
             }
 
@@ -473,6 +2184,7 @@ final class FTPClientPool {
             @Override
             public void close() throws IOException {
                 if (open) {
+                    unregisterStream(reference);
                     out.close();
                     open = false;
                     finalizeStream();
@@ -491,27 +2203,37 @@ final class FTPClientPool {
                 if (!client.completePendingCommand()) {
                     throw new FTPFileSystemException(client.getReplyCode(), client.getReplyString());
                 }
+            } catch (IOException e) {
+                throw failed(e);
             } finally {
                 close();
             }
         }
 
         void storeFile(FTPPath path, InputStream local, TransferOptions options, Collection<? extends OpenOption> openOptions) throws IOException {
-            applyTransferOptions(options);
+            try {
+                applyTransferOptions(options);
 
-            if (!client.storeFile(path.path(), local)) {
-                throw exceptionFactory.createNewOutputStreamException(path.path(), client.getReplyCode(), client.getReplyString(), openOptions);
+                if (!client.storeFile(path.path(), local)) {
+                    throw exceptionFactory.createNewOutputStreamException(path.path(), client.getReplyCode(), client.getReplyString(), openOptions);
+                }
+            } catch (IOException e) {
+                throw failed(e);
             }
         }
 
         void mkdir(FTPPath path, FTPFileStrategy ftpFileStrategy) throws IOException {
-            if (!client.makeDirectory(path.path())) {
-                int replyCode = client.getReplyCode();
-                String replyString = client.getReplyString();
-                if (fileExists(path, ftpFileStrategy)) {
-                    throw new FileAlreadyExistsException(path.path());
+            try {
+                if (!client.makeDirectory(path.path())) {
+                    int replyCode = client.getReplyCode();
+                    String replyString = client.getReplyString();
+                    if (fileExists(path, ftpFileStrategy)) {
+                        throw new FileAlreadyExistsException(path.path());
+                    }
+                    throw exceptionFactory.createCreateDirectoryException(path.path(), replyCode, replyString);
                 }
-                throw exceptionFactory.createCreateDirectoryException(path.path(), replyCode, replyString);
+            } catch (IOException e) {
+                throw failed(e);
             }
         }
 
@@ -526,21 +2248,33 @@ final class FTPClientPool {
         }
 
         void delete(FTPPath path, boolean isDirectory) throws IOException {
-            boolean success = isDirectory ? client.removeDirectory(path.path()) : client.deleteFile(path.path());
-            if (!success) {
-                throw exceptionFactory.createDeleteException(path.path(), client.getReplyCode(), client.getReplyString(), isDirectory);
+            try {
+                boolean success = isDirectory ? client.removeDirectory(path.path()) : client.deleteFile(path.path());
+                if (!success) {
+                    throw exceptionFactory.createDeleteException(path.path(), client.getReplyCode(), client.getReplyString(), isDirectory);
+                }
+            } catch (IOException e) {
+                throw failed(e);
             }
         }
 
         void rename(FTPPath source, FTPPath target) throws IOException {
-            if (!client.rename(source.path(), target.path())) {
-                throw exceptionFactory.createMoveException(source.path(), target.path(), client.getReplyCode(), client.getReplyString());
+            try {
+                if (!client.rename(source.path(), target.path())) {
+                    throw exceptionFactory.createMoveException(source.path(), target.path(), client.getReplyCode(), client.getReplyString());
+                }
+            } catch (IOException e) {
+                throw failed(e);
             }
         }
 
         Calendar mdtm(FTPPath path) throws IOException {
-            FTPFile file = client.mdtmFile(path.path());
-            return file == null ? null : file.getTimestamp();
+            try {
+                FTPFile file = client.mdtmFile(path.path());
+                return file == null ? null : file.getTimestamp();
+            } catch (IOException e) {
+                throw failed(e);
+            }
         }
     }
 }
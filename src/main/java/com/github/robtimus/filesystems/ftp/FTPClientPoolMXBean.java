@@ -0,0 +1,191 @@
+/*
+ * FTPClientPoolMXBean.java
+ * Copyright 2020 Rob Spoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.robtimus.filesystems.ftp;
+
+/**
+ * A management interface for the client connection pool of an FTP file system.
+ * An instance is registered for each FTP file system that has {@link FTPEnvironment#withClientPoolMXBeanEnabled(boolean) enabled} it,
+ * with an object name of the form {@code com.github.robtimus.filesystems.ftp:type=FTPClientPool,host=<host>,id=<id>}.
+ * <p>
+ * All times are in milliseconds.
+ *
+ * @author Rob Spoor
+ * @since 2.2
+ */
+public interface FTPClientPoolMXBean {
+
+    /**
+     * Returns the host name of the FTP server the client connections are connected to.
+     *
+     * @return The host name of the FTP server.
+     */
+    String getHostname();
+
+    /**
+     * Returns the port of the FTP server the client connections are connected to.
+     *
+     * @return The port of the FTP server, or {@code -1} if the default port is used.
+     */
+    int getPort();
+
+    /**
+     * Returns the minimum number of pooled client connections.
+     *
+     * @return The minimum number of pooled client connections.
+     */
+    int getMinPoolSize();
+
+    /**
+     * Returns the maximum number of pooled client connections.
+     *
+     * @return The maximum number of pooled client connections.
+     */
+    int getMaxPoolSize();
+
+    /**
+     * Returns the current maximum number of pooled client connections.
+     * If a {@link FTPEnvironment#withTargetBorrowWaitTime(long) target borrow wait time} is set, this limit grows when borrowing a client
+     * connection takes too long, and shrinks when client connections are idle for too long.
+     * If {@link FTPEnvironment#withConnectionLimitLearningEnabled(boolean) connection limit learning} is enabled, this limit is also lowered
+     * when the FTP server rejects client connections.
+     * Otherwise it is always equal to the {@link #getMaxPoolSize() maximum pool size}.
+     *
+     * @return The current maximum number of pooled client connections.
+     */
+    int getPoolSizeLimit();
+
+    /**
+     * Returns the current number of pooled client connections that are idle.
+     *
+     * @return The current number of idle client connections.
+     */
+    int getIdleCount();
+
+    /**
+     * Returns the current number of pooled client connections that are in use or being created.
+     *
+     * @return The current number of client connections in use.
+     */
+    int getInUseCount();
+
+    /**
+     * Returns the current number of pooled client connections that are in use for metadata operations.
+     *
+     * @return The current number of client connections in use for metadata operations.
+     * @see FTPEnvironment#withReservedMetadataClientConnections(int)
+     */
+    int getMetadataInUseCount();
+
+    /**
+     * Returns the current number of pooled client connections that are in use for data transfers.
+     *
+     * @return The current number of client connections in use for data transfers.
+     * @see FTPEnvironment#withReservedTransferClientConnections(int)
+     */
+    int getTransferInUseCount();
+
+    /**
+     * Returns the total number of times a client connection has been borrowed from the connection pool.
+     *
+     * @return The total number of borrows.
+     */
+    long getBorrowCount();
+
+    /**
+     * Returns the median time it took to borrow a client connection from the connection pool.
+     * This value is an approximation, based on a histogram of borrow wait times.
+     *
+     * @return The median borrow wait time.
+     */
+    double getBorrowWaitTimeP50();
+
+    /**
+     * Returns the 99th percentile of the time it took to borrow a client connection from the connection pool.
+     * This value is an approximation, based on a histogram of borrow wait times.
+     *
+     * @return The 99th percentile of the borrow wait time.
+     */
+    double getBorrowWaitTimeP99();
+
+    /**
+     * Returns the maximum time it took to borrow a client connection from the connection pool.
+     *
+     * @return The maximum borrow wait time.
+     */
+    double getBorrowWaitTimeMax();
+
+    /**
+     * Returns the number of times borrowing a client connection failed because the
+     * {@link FTPEnvironment#withClientConnectionWaitTimeout(long) client connection wait timeout} expired.
+     *
+     * @return The number of wait timeouts.
+     */
+    long getWaitTimeoutCount();
+
+    /**
+     * Returns the number of broken client connections that were discarded so they could be replaced.
+     *
+     * @return The number of broken client connections that were replaced.
+     */
+    long getBrokenClientCount();
+
+    /**
+     * Returns the total number of client connections that were created, both pooled and not pooled.
+     *
+     * @return The total number of created client connections.
+     */
+    long getCreatedCount();
+
+    /**
+     * Returns the total number of client connections that were closed, both pooled and not pooled.
+     *
+     * @return The total number of closed client connections.
+     */
+    long getClosedCount();
+
+    /**
+     * Returns the average time client connections were held, from the moment they were borrowed until the moment they were released.
+     *
+     * @return The average hold time.
+     */
+    double getAverageHoldTime();
+
+    /**
+     * Returns the current number of client connections that have been borrowed for longer than the leak detection threshold.
+     * This is always {@code 0} if leak detection is not {@link FTPEnvironment#withClientLeakDetectionThreshold(long) enabled}.
+     *
+     * @return The current number of leaked client connections.
+     */
+    int getLeakedClientCount();
+
+    /**
+     * Returns the number of client connections that were reclaimed because their streams were garbage collected without having been closed.
+     * This is always {@code 0} if reclaiming client connections is not {@link FTPEnvironment#withAbandonedStreamReclaimEnabled(boolean) enabled}.
+     *
+     * @return The number of reclaimed client connections.
+     */
+    long getReclaimedClientCount();
+
+    /**
+     * Returns whether or not new client connections currently fail fast, because connecting to the FTP server failed too often.
+     * This is always {@code false} if a {@link FTPEnvironment#withConnectFailureThreshold(int) connect failure threshold} is not set.
+     *
+     * @return {@code true} if new client connections currently fail fast, or {@code false} otherwise.
+     */
+    boolean isConnectCircuitOpen();
+}
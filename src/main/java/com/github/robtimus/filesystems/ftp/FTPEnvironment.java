@@ -27,8 +27,10 @@ import java.net.URI;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.spi.FileSystemProvider;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -40,7 +42,10 @@ import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPClient.HostnameResolver;
 import org.apache.commons.net.ftp.FTPClient.NatServerResolverImpl;
 import org.apache.commons.net.ftp.FTPClientConfig;
+import org.apache.commons.net.ftp.FTPConnectionClosedException;
 import org.apache.commons.net.ftp.FTPFileEntryParser;
+import org.apache.commons.net.ftp.FTPReply;
+import org.apache.commons.net.ftp.parser.DefaultFTPFileEntryParserFactory;
 import org.apache.commons.net.ftp.parser.FTPFileEntryParserFactory;
 import com.github.robtimus.filesystems.FileSystemProviderSupport;
 
@@ -55,6 +60,8 @@ public class FTPEnvironment implements Map<String, Object>, Cloneable {
     // connect support
 
     private static final String LOCAL_ADDR = "localAddr"; //$NON-NLS-1$
+    private static final String ADDITIONAL_ENDPOINTS = "additionalEndpoints"; //$NON-NLS-1$
+    private static final String ENDPOINT_RETRY_INTERVAL = "endpointRetryInterval"; //$NON-NLS-1$
     private static final String LOCAL_PORT = "localPort"; //$NON-NLS-1$
 
     // login support
@@ -110,11 +117,62 @@ public class FTPEnvironment implements Map<String, Object>, Cloneable {
 
     private static final int DEFAULT_CLIENT_CONNECTION_COUNT = 5;
     private static final long DEFAULT_CLIENT_CONNECTION_WAIT_TIMEOUT = 0;
+    private static final long DEFAULT_CLIENT_CONNECTION_IDLE_TIMEOUT = 60_000;
+    private static final long DEFAULT_CLIENT_CONNECTION_MAINTENANCE_INTERVAL = 0;
+    private static final int DEFAULT_MAX_CONCURRENT_CLIENT_CONNECTS = 4;
+    private static final long DEFAULT_CLIENT_CONNECTION_KEEP_ALIVE_INTERVAL = 0;
+    private static final long DEFAULT_CLIENT_VALIDATION_IDLE_TIME = 5_000;
+    private static final long DEFAULT_OVERFLOW_CLIENT_CONNECTION_LINGER_TIME = 10_000;
+    private static final long DEFAULT_ENDPOINT_RETRY_INTERVAL = 30_000;
+    private static final long DEFAULT_CONNECTION_LIMIT_RECOVERY_INTERVAL = 60_000;
+    private static final long DEFAULT_CONNECT_FAILURE_BACKOFF = 1_000;
+    private static final long DEFAULT_MAX_CONNECT_FAILURE_BACKOFF = 60_000;
+    private static final long DEFAULT_CAPABILITY_CACHE_MAX_AGE = 86_400_000;
+    private static final int DEFAULT_METADATA_CACHE_MAX_ENTRIES = 1000;
     private static final String CLIENT_CONNECTION_COUNT = "clientConnectionCount"; //$NON-NLS-1$
+    private static final String MIN_CLIENT_CONNECTIONS = "minClientConnections"; //$NON-NLS-1$
+    private static final String MAX_CLIENT_CONNECTIONS = "maxClientConnections"; //$NON-NLS-1$
+    private static final String RESERVED_METADATA_CLIENT_CONNECTIONS = "reservedMetadataClientConnections"; //$NON-NLS-1$
+    private static final String RESERVED_TRANSFER_CLIENT_CONNECTIONS = "reservedTransferClientConnections"; //$NON-NLS-1$
+    private static final String MAX_OVERFLOW_CLIENT_CONNECTIONS = "maxOverflowClientConnections"; //$NON-NLS-1$
+    private static final String OVERFLOW_CLIENT_CONNECTION_LINGER_TIME = "overflowClientConnectionLingerTime"; //$NON-NLS-1$
+    private static final String CLIENT_CONNECTION_IDLE_TIMEOUT = "clientConnectionIdleTimeout"; //$NON-NLS-1$
+    private static final String MAX_CONCURRENT_CLIENT_CONNECTS = "maxConcurrentClientConnects"; //$NON-NLS-1$
+    private static final String CLIENT_CONNECTION_MAINTENANCE_INTERVAL = "clientConnectionMaintenanceInterval"; //$NON-NLS-1$
+    private static final String CLIENT_CONNECTION_KEEP_ALIVE_INTERVAL = "clientConnectionKeepAliveInterval"; //$NON-NLS-1$
+    private static final String CLIENT_VALIDATION_POLICY = "clientValidationPolicy"; //$NON-NLS-1$
+    private static final String CLIENT_VALIDATION_IDLE_TIME = "clientValidationIdleTime"; //$NON-NLS-1$
+    private static final String CLIENT_POOL_MXBEAN_ENABLED = "clientPoolMXBeanEnabled"; //$NON-NLS-1$
+    private static final String SHARED_CLIENT_POOL_ENABLED = "sharedClientPoolEnabled"; //$NON-NLS-1$
+    private static final String HOST_CONNECTION_BUDGET = "hostConnectionBudget"; //$NON-NLS-1$
+    private static final String CONNECTION_BUDGET_WEIGHT = "connectionBudgetWeight"; //$NON-NLS-1$
+    private static final String FILE_SYSTEM_IDLE_TIMEOUT = "fileSystemIdleTimeout"; //$NON-NLS-1$
+    private static final String LAZY_INITIALIZATION_ENABLED = "lazyInitializationEnabled"; //$NON-NLS-1$
+    private static final String CAPABILITY_CACHE_FILE = "capabilityCacheFile"; //$NON-NLS-1$
+    private static final String CAPABILITY_CACHE_MAX_AGE = "capabilityCacheMaxAge"; //$NON-NLS-1$
+    private static final String METADATA_CACHE_TIME_TO_LIVE = "metadataCacheTimeToLive"; //$NON-NLS-1$
+    private static final String METADATA_CACHE_MAX_ENTRIES = "metadataCacheMaxEntries"; //$NON-NLS-1$
+    private static final String MISSING_FILE_CACHE_TIME_TO_LIVE = "missingFileCacheTimeToLive"; //$NON-NLS-1$
+    // not public; set from a capability cache
+    private static final String SERVER_SYSTEM_TYPE = "serverSystemType"; //$NON-NLS-1$
+    // not public; set from the FTP file strategy
+    private static final String UNPARSEABLE_ENTRIES = "unparseableEntries"; //$NON-NLS-1$
+    private static final String CLIENT_LEAK_DETECTION_THRESHOLD = "clientLeakDetectionThreshold"; //$NON-NLS-1$
+    private static final String ABANDONED_STREAM_RECLAIM_ENABLED = "abandonedStreamReclaimEnabled"; //$NON-NLS-1$
+    private static final String TARGET_BORROW_WAIT_TIME = "targetBorrowWaitTime"; //$NON-NLS-1$
+    private static final String CONNECTION_LIMIT_LEARNING_ENABLED = "connectionLimitLearningEnabled"; //$NON-NLS-1$
+    private static final String CONNECTION_LIMIT_RECOVERY_INTERVAL = "connectionLimitRecoveryInterval"; //$NON-NLS-1$
+    private static final String CONNECT_FAILURE_THRESHOLD = "connectFailureThreshold"; //$NON-NLS-1$
+    private static final String CONNECT_FAILURE_BACKOFF = "connectFailureBackoff"; //$NON-NLS-1$
+    private static final String MAX_CONNECT_FAILURE_BACKOFF = "maxConnectFailureBackoff"; //$NON-NLS-1$
     private static final String CLIENT_CONNECTION_WAIT_TIMEOUT = "clientConnectionWaitTimeout"; //$NON-NLS-1$
     private static final String FILE_SYSTEM_EXCEPTION_FACTORY = "fileSystemExceptionFactory"; //$NON-NLS-1$
     private static final String FTP_FILE_STRATEGY_FACTORY = "ftpFileStrategyFactory"; //$NON-NLS-1$
 
+    // the settings that can be changed for an existing FTP file system
+    private static final List<String> RECONFIGURABLE_POOL_SETTINGS = Arrays.asList(CLIENT_CONNECTION_COUNT, MIN_CLIENT_CONNECTIONS,
+            MAX_CLIENT_CONNECTIONS, CLIENT_CONNECTION_WAIT_TIMEOUT, CLIENT_CONNECTION_IDLE_TIMEOUT, CLIENT_CONNECTION_KEEP_ALIVE_INTERVAL);
+
     private Map<String, Object> map;
 
     /**
@@ -158,6 +216,60 @@ public class FTPEnvironment implements Map<String, Object>, Cloneable {
         return this;
     }
 
+    /**
+     * Stores the endpoints of FTP servers that are equivalent to the FTP server of the URI, for instance mirrors.
+     * Client connections are spread across the FTP server of the URI and these endpoints, preferring the ones with the lowest measured
+     * connect and command latency and the fewest client connections.
+     * If connecting to an endpoint fails or client connections to an endpoint are lost repeatedly, no new client connections are made to that
+     * endpoint until the {@link #withEndpointRetryInterval(long) retry interval} has passed, and its idle client connections are closed.
+     * The number of consecutive failures that is needed for this is the {@link #withConnectFailureThreshold(int) connect failure threshold}
+     * if set, or {@code 2} otherwise.
+     * <p>
+     * All endpoints should provide access to the same files, using the same credentials.
+     *
+     * @param endpoints The additional endpoints. A port of {@code 0} means that the default port is used.
+     * @return This object.
+     * @see InetSocketAddress#createUnresolved(String, int)
+     * @since 2.2
+     */
+    public FTPEnvironment withAdditionalEndpoints(InetSocketAddress... endpoints) {
+        put(ADDITIONAL_ENDPOINTS, endpoints);
+        return this;
+    }
+
+    /**
+     * Stores the time to wait before trying to connect again to an endpoint that failed.
+     * This is only used if {@link #withAdditionalEndpoints(InetSocketAddress...) additional endpoints} are set.
+     * <p>
+     * If this value is not set, it defaults to 30 seconds.
+     *
+     * @param interval The retry interval in milliseconds.
+     * @return This object.
+     * @see #withEndpointRetryInterval(long, TimeUnit)
+     * @since 2.2
+     */
+    public FTPEnvironment withEndpointRetryInterval(long interval) {
+        put(ENDPOINT_RETRY_INTERVAL, interval);
+        return this;
+    }
+
+    /**
+     * Stores the time to wait before trying to connect again to an endpoint that failed.
+     * This is only used if {@link #withAdditionalEndpoints(InetSocketAddress...) additional endpoints} are set.
+     * <p>
+     * If this value is not set, it defaults to 30 seconds.
+     *
+     * @param duration The retry interval duration.
+     * @param unit The retry interval unit.
+     * @return This object.
+     * @throws NullPointerException If the retry interval unit is {@code null}.
+     * @see #withEndpointRetryInterval(long)
+     * @since 2.2
+     */
+    public FTPEnvironment withEndpointRetryInterval(long duration, TimeUnit unit) {
+        return withEndpointRetryInterval(TimeUnit.MILLISECONDS.convert(duration, unit));
+    }
+
     // login support
 
     /**
@@ -596,6 +708,9 @@ public class FTPEnvironment implements Map<String, Object>, Cloneable {
 
     /**
      * Stores the number of client connections to use. This value influences the number of concurrent threads that can access an FTP file system.
+     * <p>
+     * This value is used as default for both the {@link #withMinClientConnections(int) minimum} and the
+     * {@link #withMaxClientConnections(int) maximum} number of client connections.
      *
      * @param count The number of client connection to use.
      * @return This object.
@@ -605,6 +720,325 @@ public class FTPEnvironment implements Map<String, Object>, Cloneable {
         return this;
     }
 
+    /**
+     * Stores the minimum number of client connections to use.
+     * This many client connections will be created when an FTP file system is created, and the connection pool will never shrink below it.
+     * <p>
+     * If this value is not set, it defaults to the {@link #withClientConnectionCount(int) client connection count},
+     * but never more than the {@link #withMaxClientConnections(int) maximum number of client connections}.
+     *
+     * @param count The minimum number of client connections to use.
+     * @return This object.
+     * @since 2.2
+     */
+    public FTPEnvironment withMinClientConnections(int count) {
+        put(MIN_CLIENT_CONNECTIONS, count);
+        return this;
+    }
+
+    /**
+     * Stores the maximum number of client connections to use.
+     * If no client connection is available, a new one will be created on demand as long as this maximum is not reached.
+     * This value determines the number of concurrent threads that can access an FTP file system.
+     * <p>
+     * If this value is not set, it defaults to the {@link #withClientConnectionCount(int) client connection count}.
+     *
+     * @param count The maximum number of client connections to use.
+     * @return This object.
+     * @since 2.2
+     */
+    public FTPEnvironment withMaxClientConnections(int count) {
+        put(MAX_CLIENT_CONNECTIONS, count);
+        return this;
+    }
+
+    /**
+     * Stores the number of client connections that are reserved for metadata operations like reading attributes or listing directories.
+     * Data transfers using streams, channels or copying files can never use these client connections.
+     * This prevents long running data transfers from blocking metadata operations.
+     * <p>
+     * The number of reserved client connections is part of the {@link #withMaxClientConnections(int) maximum number of client connections};
+     * at least one client connection is always available for data transfers.
+     * If fewer client connections can currently be used, because the pool size limit is adaptive or because the FTP server does not accept as
+     * many client connections, the reserved client connections are part of that lower limit instead.
+     * If this value is not set, it defaults to {@code 0}.
+     *
+     * @param count The number of client connections reserved for metadata operations.
+     * @return This object.
+     * @since 2.2
+     */
+    public FTPEnvironment withReservedMetadataClientConnections(int count) {
+        put(RESERVED_METADATA_CLIENT_CONNECTIONS, count);
+        return this;
+    }
+
+    /**
+     * Stores the number of client connections that are reserved for data transfers using streams, channels or copying files.
+     * Metadata operations like reading attributes or listing directories can never use these client connections.
+     * <p>
+     * The number of reserved client connections is part of the {@link #withMaxClientConnections(int) maximum number of client connections};
+     * at least one client connection is always available for metadata operations.
+     * If fewer client connections can currently be used, because the pool size limit is adaptive or because the FTP server does not accept as
+     * many client connections, the reserved client connections are part of that lower limit instead.
+     * If this value is not set, it defaults to {@code 0}.
+     *
+     * @param count The number of client connections reserved for data transfers.
+     * @return This object.
+     * @since 2.2
+     */
+    public FTPEnvironment withReservedTransferClientConnections(int count) {
+        put(RESERVED_TRANSFER_CLIENT_CONNECTIONS, count);
+        return this;
+    }
+
+    /**
+     * Stores the maximum number of overflow client connections to keep.
+     * When copying files, an additional client connection is needed. If the connection pool has no client connection available for it,
+     * an overflow client connection is used instead, which is not part of the connection pool. Up to this number of overflow client
+     * connections are kept after they have been used, so they can be reused by subsequent copy operations.
+     * Any additional overflow client connections are disconnected as soon as they are no longer used.
+     * <p>
+     * If this value is not set, it defaults to {@code 0}, which means that overflow client connections are never reused.
+     *
+     * @param count The maximum number of overflow client connections to keep.
+     * @return This object.
+     * @see #withOverflowClientConnectionLingerTime(long)
+     * @since 2.2
+     */
+    public FTPEnvironment withMaxOverflowClientConnections(int count) {
+        put(MAX_OVERFLOW_CLIENT_CONNECTIONS, count);
+        return this;
+    }
+
+    /**
+     * Stores the time that unused overflow client connections are kept before they are disconnected.
+     * Idle overflow client connections are checked in the background at least once per linger time, so they are disconnected even if the
+     * FTP file system is no longer used.
+     * <p>
+     * If this value is not set, it defaults to 10 seconds.
+     *
+     * @param lingerTime The linger time in milliseconds.
+     * @return This object.
+     * @see #withMaxOverflowClientConnections(int)
+     * @see #withOverflowClientConnectionLingerTime(long, TimeUnit)
+     * @since 2.2
+     */
+    public FTPEnvironment withOverflowClientConnectionLingerTime(long lingerTime) {
+        put(OVERFLOW_CLIENT_CONNECTION_LINGER_TIME, lingerTime);
+        return this;
+    }
+
+    /**
+     * Stores the time that unused overflow client connections are kept before they are disconnected.
+     * Idle overflow client connections are checked in the background at least once per linger time, so they are disconnected even if the
+     * FTP file system is no longer used.
+     * <p>
+     * If this value is not set, it defaults to 10 seconds.
+     *
+     * @param duration The linger time duration.
+     * @param unit The linger time unit.
+     * @return This object.
+     * @throws NullPointerException If the linger time unit is {@code null}.
+     * @see #withMaxOverflowClientConnections(int)
+     * @see #withOverflowClientConnectionLingerTime(long)
+     * @since 2.2
+     */
+    public FTPEnvironment withOverflowClientConnectionLingerTime(long duration, TimeUnit unit) {
+        return withOverflowClientConnectionLingerTime(TimeUnit.MILLISECONDS.convert(duration, unit));
+    }
+
+    /**
+     * Stores the maximum number of client connections that can be established concurrently when an FTP file system is created.
+     * Establishing the {@link #withMinClientConnections(int) minimum number of client connections} in parallel reduces the time it takes to
+     * create an FTP file system, especially for FTPS or when the FTP server is far away.
+     * <p>
+     * If this value is not set, it defaults to {@code 4}. A value of {@code 1} establishes client connections one at a time.
+     *
+     * @param count The maximum number of client connections to establish concurrently.
+     * @return This object.
+     * @since 2.2
+     */
+    public FTPEnvironment withMaxConcurrentClientConnects(int count) {
+        put(MAX_CONCURRENT_CLIENT_CONNECTS, count);
+        return this;
+    }
+
+    /**
+     * Stores the time that client connections can remain idle in the connection pool before they can be disconnected.
+     * Client connections will only be disconnected if this would not cause the connection pool to shrink below the
+     * {@link #withMinClientConnections(int) minimum number of client connections}.
+     * If the minimum is lower than the {@link #withMaxClientConnections(int) maximum number of client connections}, idle client connections
+     * are checked in the background at least once per idle timeout, even if no {@link #withClientConnectionMaintenanceInterval(long)
+     * maintenance interval} is set.
+     * <p>
+     * If this value is not set, it defaults to one minute.
+     *
+     * @param timeout The idle timeout in milliseconds.
+     * @return This object.
+     * @see #withClientConnectionIdleTimeout(long, TimeUnit)
+     * @since 2.2
+     */
+    public FTPEnvironment withClientConnectionIdleTimeout(long timeout) {
+        put(CLIENT_CONNECTION_IDLE_TIMEOUT, timeout);
+        return this;
+    }
+
+    /**
+     * Stores the time that client connections can remain idle in the connection pool before they can be disconnected.
+     * Client connections will only be disconnected if this would not cause the connection pool to shrink below the
+     * {@link #withMinClientConnections(int) minimum number of client connections}.
+     * If the minimum is lower than the {@link #withMaxClientConnections(int) maximum number of client connections}, idle client connections
+     * are checked in the background at least once per idle timeout, even if no {@link #withClientConnectionMaintenanceInterval(long)
+     * maintenance interval} is set.
+     * <p>
+     * If this value is not set, it defaults to one minute.
+     *
+     * @param duration The idle timeout duration.
+     * @param unit The idle timeout unit.
+     * @return This object.
+     * @throws NullPointerException If the idle timeout unit is {@code null}.
+     * @see #withClientConnectionIdleTimeout(long)
+     * @since 2.2
+     */
+    public FTPEnvironment withClientConnectionIdleTimeout(long duration, TimeUnit unit) {
+        return withClientConnectionIdleTimeout(TimeUnit.MILLISECONDS.convert(duration, unit));
+    }
+
+    /**
+     * Stores the interval at which the connection pool should be maintained in the background.
+     * Each maintenance run disconnects idle client connections that have exceeded the
+     * {@link #withClientConnectionIdleTimeout(long) idle timeout}, and sends keep-alive signals to idle client connections that have
+     * not been used for longer than the {@link #withClientConnectionKeepAliveInterval(long) keep-alive interval}.
+     * Idle client connections are checked one at a time; the connection pool is never drained.
+     * <p>
+     * The background maintenance of all FTP file systems is performed by a single thread. To prevent an unresponsive FTP server from delaying
+     * the maintenance of other FTP file systems, keep-alive signals sent in the background wait at most 10 seconds for a reply, even if the
+     * {@link #withSoTimeout(int) socket timeout} is larger or not set. Client connections that don't reply in time are disconnected.
+     * <p>
+     * If the interval is not larger than {@code 0}, no background maintenance is performed. This is the default.
+     *
+     * @param interval The maintenance interval in milliseconds.
+     * @return This object.
+     * @see #withClientConnectionMaintenanceInterval(long, TimeUnit)
+     * @since 2.2
+     */
+    public FTPEnvironment withClientConnectionMaintenanceInterval(long interval) {
+        put(CLIENT_CONNECTION_MAINTENANCE_INTERVAL, interval);
+        return this;
+    }
+
+    /**
+     * Stores the interval at which the connection pool should be maintained in the background.
+     * Each maintenance run disconnects idle client connections that have exceeded the
+     * {@link #withClientConnectionIdleTimeout(long) idle timeout}, and sends keep-alive signals to idle client connections that have
+     * not been used for longer than the {@link #withClientConnectionKeepAliveInterval(long) keep-alive interval}.
+     * Idle client connections are checked one at a time; the connection pool is never drained.
+     * <p>
+     * The background maintenance of all FTP file systems is performed by a single thread. To prevent an unresponsive FTP server from delaying
+     * the maintenance of other FTP file systems, keep-alive signals sent in the background wait at most 10 seconds for a reply, even if the
+     * {@link #withSoTimeout(int) socket timeout} is larger or not set. Client connections that don't reply in time are disconnected.
+     * <p>
+     * If the interval is not larger than {@code 0}, no background maintenance is performed. This is the default.
+     *
+     * @param duration The maintenance interval duration.
+     * @param unit The maintenance interval unit.
+     * @return This object.
+     * @throws NullPointerException If the maintenance interval unit is {@code null}.
+     * @see #withClientConnectionMaintenanceInterval(long)
+     * @since 2.2
+     */
+    public FTPEnvironment withClientConnectionMaintenanceInterval(long duration, TimeUnit unit) {
+        return withClientConnectionMaintenanceInterval(TimeUnit.MILLISECONDS.convert(duration, unit));
+    }
+
+    /**
+     * Stores the time after which background maintenance should send a keep-alive signal (NOOP) to an idle client connection.
+     * This should be somewhat lower than the idle timeout of the FTP server.
+     * Client connections that have been used more recently are left alone.
+     * <p>
+     * If the interval is not larger than {@code 0}, background maintenance does not send any keep-alive signals. This is the default.
+     * This value has no effect unless a {@link #withClientConnectionMaintenanceInterval(long) maintenance interval} is set.
+     *
+     * @param interval The keep-alive interval in milliseconds.
+     * @return This object.
+     * @see #withClientConnectionKeepAliveInterval(long, TimeUnit)
+     * @since 2.2
+     */
+    public FTPEnvironment withClientConnectionKeepAliveInterval(long interval) {
+        put(CLIENT_CONNECTION_KEEP_ALIVE_INTERVAL, interval);
+        return this;
+    }
+
+    /**
+     * Stores the time after which background maintenance should send a keep-alive signal (NOOP) to an idle client connection.
+     * This should be somewhat lower than the idle timeout of the FTP server.
+     * Client connections that have been used more recently are left alone.
+     * <p>
+     * If the interval is not larger than {@code 0}, background maintenance does not send any keep-alive signals. This is the default.
+     * This value has no effect unless a {@link #withClientConnectionMaintenanceInterval(long) maintenance interval} is set.
+     *
+     * @param duration The keep-alive interval duration.
+     * @param unit The keep-alive interval unit.
+     * @return This object.
+     * @throws NullPointerException If the keep-alive interval unit is {@code null}.
+     * @see #withClientConnectionKeepAliveInterval(long)
+     * @since 2.2
+     */
+    public FTPEnvironment withClientConnectionKeepAliveInterval(long duration, TimeUnit unit) {
+        return withClientConnectionKeepAliveInterval(TimeUnit.MILLISECONDS.convert(duration, unit));
+    }
+
+    /**
+     * Stores the policy for validating client connections from the connection pool.
+     * <p>
+     * If this value is not set, it defaults to {@link ClientValidationPolicy#ALWAYS}.
+     *
+     * @param policy The policy for validating client connections.
+     * @return This object.
+     * @since 2.2
+     */
+    public FTPEnvironment withClientValidationPolicy(ClientValidationPolicy policy) {
+        put(CLIENT_VALIDATION_POLICY, policy);
+        return this;
+    }
+
+    /**
+     * Stores the time that client connections need to be unused before they are validated.
+     * This value is only used for validation policies {@link ClientValidationPolicy#WHEN_IDLE} and {@link ClientValidationPolicy#WHILE_IDLE}.
+     * For {@link ClientValidationPolicy#WHILE_IDLE}, it is also used as {@link #withClientConnectionMaintenanceInterval(long) maintenance interval}
+     * if none is set.
+     * <p>
+     * If this value is not set, it defaults to five seconds.
+     *
+     * @param time The validation idle time in milliseconds.
+     * @return This object.
+     * @see #withClientValidationIdleTime(long, TimeUnit)
+     * @since 2.2
+     */
+    public FTPEnvironment withClientValidationIdleTime(long time) {
+        put(CLIENT_VALIDATION_IDLE_TIME, time);
+        return this;
+    }
+
+    /**
+     * Stores the time that client connections need to be unused before they are validated.
+     * This value is only used for validation policies {@link ClientValidationPolicy#WHEN_IDLE} and {@link ClientValidationPolicy#WHILE_IDLE}.
+     * For {@link ClientValidationPolicy#WHILE_IDLE}, it is also used as {@link #withClientConnectionMaintenanceInterval(long) maintenance interval}
+     * if none is set.
+     * <p>
+     * If this value is not set, it defaults to five seconds.
+     *
+     * @param duration The validation idle time duration.
+     * @param unit The validation idle time unit.
+     * @return This object.
+     * @throws NullPointerException If the validation idle time unit is {@code null}.
+     * @see #withClientValidationIdleTime(long)
+     * @since 2.2
+     */
+    public FTPEnvironment withClientValidationIdleTime(long duration, TimeUnit unit) {
+        return withClientValidationIdleTime(TimeUnit.MILLISECONDS.convert(duration, unit));
+    }
+
     /**
      * Stores the wait timeout to use for retrieving client connection from the connection pool.
      * <p>
@@ -636,6 +1070,561 @@ public class FTPEnvironment implements Map<String, Object>, Cloneable {
         return withClientConnectionWaitTimeout(TimeUnit.MILLISECONDS.convert(duration, unit));
     }
 
+    /**
+     * Stores the time after which a client connection that has not been returned to the connection pool is considered to be leaked.
+     * If set, the stack trace of each borrow of a client connection is recorded. Client connections that are held for longer than this
+     * threshold are logged once, including the stack trace of where they were borrowed, and are counted by the
+     * {@link FTPClientPoolMXBean#getLeakedClientCount() MXBean} of the connection pool.
+     * Recording stack traces has a cost, so this should normally only be used to find leaks.
+     * <p>
+     * If this value is not set, it defaults to {@code 0}, which means that leaks are not detected.
+     *
+     * @param threshold The leak detection threshold in milliseconds.
+     * @return This object.
+     * @see #withClientLeakDetectionThreshold(long, TimeUnit)
+     * @since 2.2
+     */
+    public FTPEnvironment withClientLeakDetectionThreshold(long threshold) {
+        put(CLIENT_LEAK_DETECTION_THRESHOLD, threshold);
+        return this;
+    }
+
+    /**
+     * Stores the time after which a client connection that has not been returned to the connection pool is considered to be leaked.
+     * If set, the stack trace of each borrow of a client connection is recorded. Client connections that are held for longer than this
+     * threshold are logged once, including the stack trace of where they were borrowed, and are counted by the
+     * {@link FTPClientPoolMXBean#getLeakedClientCount() MXBean} of the connection pool.
+     * Recording stack traces has a cost, so this should normally only be used to find leaks.
+     * <p>
+     * If this value is not set, it defaults to {@code 0}, which means that leaks are not detected.
+     *
+     * @param duration The leak detection threshold duration.
+     * @param unit The leak detection threshold unit.
+     * @return This object.
+     * @throws NullPointerException If the leak detection threshold unit is {@code null}.
+     * @see #withClientLeakDetectionThreshold(long)
+     * @since 2.2
+     */
+    public FTPEnvironment withClientLeakDetectionThreshold(long duration, TimeUnit unit) {
+        return withClientLeakDetectionThreshold(TimeUnit.MILLISECONDS.convert(duration, unit));
+    }
+
+    /**
+     * Stores whether or not client connections of streams that are garbage collected without having been closed should be reclaimed.
+     * Such client connections would otherwise never be returned to the connection pool. Because the data transfer of these streams never
+     * finished, reclaimed client connections are disconnected, and replaced by new client connections when needed.
+     * <p>
+     * Streams should always be closed; this only limits the damage of streams that aren't. Reclaiming client connections relies on garbage
+     * collection, so it may take a while before a client connection is reclaimed.
+     * If this value is not set, it defaults to {@code false}.
+     *
+     * @param enabled {@code true} to reclaim client connections of abandoned streams, or {@code false} otherwise.
+     * @return This object.
+     * @since 2.2
+     */
+    public FTPEnvironment withAbandonedStreamReclaimEnabled(boolean enabled) {
+        put(ABANDONED_STREAM_RECLAIM_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Stores the time that borrowing a client connection from the connection pool may take before the pool is allowed to grow.
+     * If set, the pool starts with at most the {@link #withMinClientConnections(int) minimum number of client connections}, but at least one.
+     * Each time a borrow has waited for longer than this time, the limit is raised by one, up to the
+     * {@link #withMaxClientConnections(int) maximum number of client connections}. When client connections are evicted because they have been
+     * idle for longer than the {@link #withClientConnectionIdleTimeout(long) idle timeout}, the limit is lowered again.
+     * This lets the pool follow the load, instead of growing to the maximum number of client connections at the first peak.
+     * <p>
+     * If this value is not set, it defaults to {@code 0}, which means that the pool grows without waiting up to the maximum number of
+     * client connections.
+     *
+     * @param waitTime The target borrow wait time in milliseconds.
+     * @return This object.
+     * @see #withTargetBorrowWaitTime(long, TimeUnit)
+     * @since 2.2
+     */
+    public FTPEnvironment withTargetBorrowWaitTime(long waitTime) {
+        put(TARGET_BORROW_WAIT_TIME, waitTime);
+        return this;
+    }
+
+    /**
+     * Stores the time that borrowing a client connection from the connection pool may take before the pool is allowed to grow.
+     * If set, the pool starts with at most the {@link #withMinClientConnections(int) minimum number of client connections}, but at least one.
+     * Each time a borrow has waited for longer than this time, the limit is raised by one, up to the
+     * {@link #withMaxClientConnections(int) maximum number of client connections}. When client connections are evicted because they have been
+     * idle for longer than the {@link #withClientConnectionIdleTimeout(long) idle timeout}, the limit is lowered again.
+     * This lets the pool follow the load, instead of growing to the maximum number of client connections at the first peak.
+     * <p>
+     * If this value is not set, it defaults to {@code 0}, which means that the pool grows without waiting up to the maximum number of
+     * client connections.
+     *
+     * @param duration The target borrow wait time duration.
+     * @param unit The target borrow wait time unit.
+     * @return This object.
+     * @throws NullPointerException If the target borrow wait time unit is {@code null}.
+     * @see #withTargetBorrowWaitTime(long)
+     * @since 2.2
+     */
+    public FTPEnvironment withTargetBorrowWaitTime(long duration, TimeUnit unit) {
+        return withTargetBorrowWaitTime(TimeUnit.MILLISECONDS.convert(duration, unit));
+    }
+
+    /**
+     * Stores whether or not the maximum number of client connections should be lowered when the FTP server rejects client connections.
+     * Many FTP servers limit the number of connections per user or IP address, and reply with code 421 or 530 when that limit is exceeded.
+     * If enabled, such a reply halves the maximum number of client connections of the connection pool, and operations that need a client
+     * connection wait for one that is in use instead of failing. The limit is raised by one each time the
+     * {@link #withConnectionLimitRecoveryInterval(long) recovery interval} passes without any client connection being rejected, up to the
+     * {@link #withMaxClientConnections(int) maximum number of client connections}.
+     * <p>
+     * Because code 530 is also used for failed logins, these replies are only treated as rejections if the connection pool has at least one
+     * other client connection. If this value is not set, it defaults to {@code false}.
+     *
+     * @param enabled {@code true} to learn the connection limit of the FTP server, or {@code false} otherwise.
+     * @return This object.
+     * @since 2.2
+     */
+    public FTPEnvironment withConnectionLimitLearningEnabled(boolean enabled) {
+        put(CONNECTION_LIMIT_LEARNING_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Stores the time after which the learned {@link #withConnectionLimitLearningEnabled(boolean) connection limit} is raised by one again,
+     * if the FTP server has not rejected any client connection in the meantime.
+     * <p>
+     * If this value is not set, it defaults to 1 minute.
+     *
+     * @param interval The recovery interval in milliseconds.
+     * @return This object.
+     * @see #withConnectionLimitRecoveryInterval(long, TimeUnit)
+     * @since 2.2
+     */
+    public FTPEnvironment withConnectionLimitRecoveryInterval(long interval) {
+        put(CONNECTION_LIMIT_RECOVERY_INTERVAL, interval);
+        return this;
+    }
+
+    /**
+     * Stores the time after which the learned {@link #withConnectionLimitLearningEnabled(boolean) connection limit} is raised by one again,
+     * if the FTP server has not rejected any client connection in the meantime.
+     * <p>
+     * If this value is not set, it defaults to 1 minute.
+     *
+     * @param duration The recovery interval duration.
+     * @param unit The recovery interval unit.
+     * @return This object.
+     * @throws NullPointerException If the recovery interval unit is {@code null}.
+     * @see #withConnectionLimitRecoveryInterval(long)
+     * @since 2.2
+     */
+    public FTPEnvironment withConnectionLimitRecoveryInterval(long duration, TimeUnit unit) {
+        return withConnectionLimitRecoveryInterval(TimeUnit.MILLISECONDS.convert(duration, unit));
+    }
+
+    /**
+     * Stores the number of consecutive failures to connect to the FTP server after which new client connections fail fast.
+     * Instead of waiting for the connect timeout, attempts to create a client connection then immediately fail with a
+     * {@link java.net.ConnectException} until the {@link #withConnectFailureBackoff(long) backoff time} has passed. After that, a single attempt
+     * to connect is allowed; if it succeeds, client connections are created as usual again.
+     * This prevents all threads that need a client connection from waiting for the connect timeout while the FTP server is unavailable,
+     * and from all connecting at once when it becomes available again.
+     * <p>
+     * Failures that are the result of a reply of the FTP server, like a failed login, are not counted.
+     * If this value is not set, it defaults to {@code 0}, which means that new client connections never fail fast.
+     *
+     * @param threshold The number of consecutive connect failures after which new client connections fail fast.
+     * @return This object.
+     * @since 2.2
+     */
+    public FTPEnvironment withConnectFailureThreshold(int threshold) {
+        put(CONNECT_FAILURE_THRESHOLD, threshold);
+        return this;
+    }
+
+    /**
+     * Stores the time that new client connections fail fast after the {@link #withConnectFailureThreshold(int) connect failure threshold} has
+     * been reached. After this time a single attempt to connect is allowed. If that attempt fails as well, the time is doubled, up to the
+     * {@link #withMaxConnectFailureBackoff(long) maximum backoff}.
+     * <p>
+     * If this value is not set, it defaults to 1 second.
+     *
+     * @param backoff The initial backoff time in milliseconds.
+     * @return This object.
+     * @see #withConnectFailureBackoff(long, TimeUnit)
+     * @since 2.2
+     */
+    public FTPEnvironment withConnectFailureBackoff(long backoff) {
+        put(CONNECT_FAILURE_BACKOFF, backoff);
+        return this;
+    }
+
+    /**
+     * Stores the time that new client connections fail fast after the {@link #withConnectFailureThreshold(int) connect failure threshold} has
+     * been reached. After this time a single attempt to connect is allowed. If that attempt fails as well, the time is doubled, up to the
+     * {@link #withMaxConnectFailureBackoff(long) maximum backoff}.
+     * <p>
+     * If this value is not set, it defaults to 1 second.
+     *
+     * @param duration The initial backoff duration.
+     * @param unit The initial backoff unit.
+     * @return This object.
+     * @throws NullPointerException If the initial backoff unit is {@code null}.
+     * @see #withConnectFailureBackoff(long)
+     * @since 2.2
+     */
+    public FTPEnvironment withConnectFailureBackoff(long duration, TimeUnit unit) {
+        return withConnectFailureBackoff(TimeUnit.MILLISECONDS.convert(duration, unit));
+    }
+
+    /**
+     * Stores the maximum time that new client connections fail fast after the
+     * {@link #withConnectFailureThreshold(int) connect failure threshold} has been reached.
+     * <p>
+     * If this value is not set, it defaults to 1 minute.
+     *
+     * @param backoff The maximum backoff time in milliseconds.
+     * @return This object.
+     * @see #withMaxConnectFailureBackoff(long, TimeUnit)
+     * @since 2.2
+     */
+    public FTPEnvironment withMaxConnectFailureBackoff(long backoff) {
+        put(MAX_CONNECT_FAILURE_BACKOFF, backoff);
+        return this;
+    }
+
+    /**
+     * Stores the maximum time that new client connections fail fast after the
+     * {@link #withConnectFailureThreshold(int) connect failure threshold} has been reached.
+     * <p>
+     * If this value is not set, it defaults to 1 minute.
+     *
+     * @param duration The maximum backoff duration.
+     * @param unit The maximum backoff unit.
+     * @return This object.
+     * @throws NullPointerException If the maximum backoff unit is {@code null}.
+     * @see #withMaxConnectFailureBackoff(long)
+     * @since 2.2
+     */
+    public FTPEnvironment withMaxConnectFailureBackoff(long duration, TimeUnit unit) {
+        return withMaxConnectFailureBackoff(TimeUnit.MILLISECONDS.convert(duration, unit));
+    }
+
+    /**
+     * Stores whether or not to register an {@link FTPClientPoolMXBean} for the connection pool of the FTP file system.
+     * The MXBean is registered with the platform MBean server when the FTP file system is created, and unregistered when it is closed.
+     * <p>
+     * If this value is not set, it defaults to {@code false}.
+     *
+     * @param enabled {@code true} to register an MXBean for the connection pool, or {@code false} otherwise.
+     * @return This object.
+     * @since 2.2
+     */
+    public FTPEnvironment withClientPoolMXBeanEnabled(boolean enabled) {
+        put(CLIENT_POOL_MXBEAN_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Stores whether or not FTP file systems may share their connection pool with other FTP file systems.
+     * If enabled, FTP file systems that connect to the same host and port using an environment that is equal apart from its
+     * {@link #withDefaultDirectory(String) default directory} use one connection pool, which is closed when the last of them is closed.
+     * This allows, for instance, several file systems with different default directories to be created for the same server without multiplying
+     * the number of connections to it. The connection pool settings of the first FTP file system are used.
+     * <p>
+     * Because a connection pool can be registered only once, file systems that should share a connection pool need to be created using
+     * separate {@link FTPFileSystemProvider} instances if their URIs are the same.
+     * Whenever a client connection is taken from a shared connection pool by another FTP file system than the one that last used it,
+     * the client connection's working directory and transfer settings are reset before it is used.
+     * <p>
+     * If this value is not set, it defaults to {@code false}.
+     *
+     * @param enabled {@code true} to allow sharing connection pools, or {@code false} otherwise.
+     * @return This object.
+     * @since 2.2
+     */
+    public FTPEnvironment withSharedClientPoolEnabled(boolean enabled) {
+        put(SHARED_CLIENT_POOL_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Stores the maximum number of client connections that all FTP file systems of the same {@link FTPFileSystemProvider} may have to the
+     * host and port of the FTP file system combined.
+     * This is useful if several FTP file systems connect to the same server, for instance one per user, and the server limits the total
+     * number of connections. The budget is created by the first FTP file system with a budget for the host and port; the budget of other
+     * FTP file systems for the same host and port is ignored.
+     * <p>
+     * If the budget is exhausted, FTP file systems that need a new client connection wait in order of their usage relative to their
+     * {@link #withConnectionBudgetWeight(int) weight}. An FTP file system that uses less than its share of the budget can make an FTP file
+     * system that uses more than its share close an idle client connection. Client connections that are in use are never closed.
+     * Waiting for the budget is limited by the {@link #withClientConnectionWaitTimeout(long) client connection wait timeout}.
+     * <p>
+     * Operations that need an additional client connection while they already use one, like copying files, never wait for the budget.
+     * If the budget is exhausted, the additional client connection is created outside of the budget and closed after it's used.
+     * <p>
+     * If this value is not set, it defaults to {@code 0}, which means that there is no budget.
+     *
+     * @param budget The maximum number of client connections to the host of all FTP file systems combined.
+     * @return This object.
+     * @since 2.2
+     */
+    public FTPEnvironment withHostConnectionBudget(int budget) {
+        put(HOST_CONNECTION_BUDGET, budget);
+        return this;
+    }
+
+    /**
+     * Stores the weight of the FTP file system when sharing the {@link #withHostConnectionBudget(int) connection budget} of its host.
+     * The share of the budget of each FTP file system is proportional to its weight.
+     * <p>
+     * If this value is not set, it defaults to {@code 1}.
+     *
+     * @param weight The weight of the FTP file system.
+     * @return This object.
+     * @since 2.2
+     */
+    public FTPEnvironment withConnectionBudgetWeight(int weight) {
+        put(CONNECTION_BUDGET_WEIGHT, weight);
+        return this;
+    }
+
+    /**
+     * Stores the time after which all client connections of an FTP file system that is not used are closed, including the
+     * {@link #withMinClientConnections(int) minimum number of client connections}.
+     * The FTP file system itself remains open, and its paths remain valid; new client connections are created when the FTP file system is used
+     * again. This is useful for applications that connect to many FTP servers, each of which is only used occasionally.
+     * <p>
+     * An FTP file system is considered to be not used if none of its client connections is in use, and none has been returned to the
+     * connection pool during this time. If this value is not set, it defaults to {@code 0}, which means that the client connections of FTP
+     * file systems that are not used are kept open.
+     *
+     * @param timeout The file system idle timeout in milliseconds.
+     * @return This object.
+     * @see #withFileSystemIdleTimeout(long, TimeUnit)
+     * @since 2.2
+     */
+    public FTPEnvironment withFileSystemIdleTimeout(long timeout) {
+        put(FILE_SYSTEM_IDLE_TIMEOUT, timeout);
+        return this;
+    }
+
+    /**
+     * Stores the time after which all client connections of an FTP file system that is not used are closed, including the
+     * {@link #withMinClientConnections(int) minimum number of client connections}.
+     * The FTP file system itself remains open, and its paths remain valid; new client connections are created when the FTP file system is used
+     * again. This is useful for applications that connect to many FTP servers, each of which is only used occasionally.
+     * <p>
+     * An FTP file system is considered to be not used if none of its client connections is in use, and none has been returned to the
+     * connection pool during this time. If this value is not set, it defaults to {@code 0}, which means that the client connections of FTP
+     * file systems that are not used are kept open.
+     *
+     * @param duration The file system idle timeout duration.
+     * @param unit The file system idle timeout unit.
+     * @return This object.
+     * @throws NullPointerException If the file system idle timeout unit is {@code null}.
+     * @see #withFileSystemIdleTimeout(long)
+     * @since 2.2
+     */
+    public FTPEnvironment withFileSystemIdleTimeout(long duration, TimeUnit unit) {
+        return withFileSystemIdleTimeout(TimeUnit.MILLISECONDS.convert(duration, unit));
+    }
+
+    /**
+     * Stores whether or not FTP file systems should connect to the FTP server only when they are first used.
+     * Normally, creating an FTP file system creates the {@link #withMinClientConnections(int) minimum number of client connections}, retrieves
+     * the default directory and initializes the {@link #withFTPFileStrategyFactory(FTPFileStrategyFactory) FTP file strategy}, and fails if
+     * any of that fails. If enabled, creating an FTP file system does not connect to the FTP server at all. Instead, the first operation that
+     * needs a client connection creates it and performs the initialization, and fails if the FTP server cannot be reached.
+     * <p>
+     * Converting a relative path to an absolute path needs the default directory. If that is done before the FTP file system has been
+     * initialized, it initializes the FTP file system, and throws an {@link java.io.IOError} if that fails.
+     * <p>
+     * If this value is not set, it defaults to {@code false}.
+     *
+     * @param enabled {@code true} to initialize FTP file systems when they are first used, or {@code false} to initialize them when they are
+     *                    created.
+     * @return This object.
+     * @since 2.2
+     */
+    public FTPEnvironment withLazyInitializationEnabled(boolean enabled) {
+        put(LAZY_INITIALIZATION_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Stores a local file in which the capabilities of FTP servers are stored.
+     * When an FTP file system is initialized, it retrieves the default directory, initializes the
+     * {@link #withFTPFileStrategyFactory(FTPFileStrategyFactory) FTP file strategy} and, when listing files, lets the FTP server determine its
+     * system type. The results are stored in this file, for the URI, user name and {@link #withDefaultDirectory(String) default directory} of the
+     * FTP file system. FTP file systems that are created later for the same URI, user name and default directory use the stored results instead,
+     * even after the JVM has been restarted. This saves several round trips to the FTP server, which is useful for short-lived applications.
+     * <p>
+     * Stored results are used until they are older than the {@link #withCapabilityCacheMaxAge(long) maximum age}; after that, they are
+     * detected and stored again. If retrieving file attributes or listing files fails while an FTP file system uses stored results, these are
+     * detected again once, and replaced if they turn out to be outdated. Passwords are never stored. Failing to read or write the file does not
+     * make FTP file systems fail.
+     * The file can be shared by several FTP file systems.
+     * <p>
+     * If this value is not set, capabilities are not stored.
+     *
+     * @param file The file to store the capabilities of FTP servers in.
+     * @return This object.
+     * @since 2.2
+     */
+    public FTPEnvironment withCapabilityCacheFile(Path file) {
+        put(CAPABILITY_CACHE_FILE, file);
+        return this;
+    }
+
+    /**
+     * Stores the time after which capabilities that are stored in the {@link #withCapabilityCacheFile(Path) capability cache file} are detected
+     * again.
+     * <p>
+     * If this value is not set, it defaults to 1 day. A value of {@code 0} means that stored capabilities never expire.
+     *
+     * @param maxAge The maximum age of stored capabilities in milliseconds.
+     * @return This object.
+     * @see #withCapabilityCacheMaxAge(long, TimeUnit)
+     * @since 2.2
+     */
+    public FTPEnvironment withCapabilityCacheMaxAge(long maxAge) {
+        put(CAPABILITY_CACHE_MAX_AGE, maxAge);
+        return this;
+    }
+
+    /**
+     * Stores the time after which capabilities that are stored in the {@link #withCapabilityCacheFile(Path) capability cache file} are detected
+     * again.
+     * <p>
+     * If this value is not set, it defaults to 1 day. A value of {@code 0} means that stored capabilities never expire.
+     *
+     * @param duration The maximum age duration.
+     * @param unit The maximum age unit.
+     * @return This object.
+     * @throws NullPointerException If the maximum age unit is {@code null}.
+     * @see #withCapabilityCacheMaxAge(long)
+     * @since 2.2
+     */
+    public FTPEnvironment withCapabilityCacheMaxAge(long duration, TimeUnit unit) {
+        return withCapabilityCacheMaxAge(TimeUnit.MILLISECONDS.convert(duration, unit));
+    }
+
+    /**
+     * Stores the time that information about files, links and directory contents is cached.
+     * Without caching, each operation that needs information about a file lists files on the FTP server, even if the same file was listed
+     * shortly before; for instance, walking a file tree lists the same directories several times. With caching, such information is reused
+     * until it is older than this time to live.
+     * <p>
+     * Cached information is invalidated when the FTP file system itself creates, deletes, moves, copies or writes files. Changes that are made
+     * in any other way, for instance by other FTP clients, are only noticed after the time to live has passed.
+     * <p>
+     * If this value is not set, it defaults to {@code 0}, which means that information is not cached.
+     *
+     * @param timeToLive The time to live of cached information in milliseconds.
+     * @return This object.
+     * @see #withMetadataCacheTimeToLive(long, TimeUnit)
+     * @see #withMetadataCacheMaxEntries(int)
+     * @since 2.2
+     */
+    public FTPEnvironment withMetadataCacheTimeToLive(long timeToLive) {
+        put(METADATA_CACHE_TIME_TO_LIVE, timeToLive);
+        return this;
+    }
+
+    /**
+     * Stores the time that information about files, links and directory contents is cached.
+     * Without caching, each operation that needs information about a file lists files on the FTP server, even if the same file was listed
+     * shortly before; for instance, walking a file tree lists the same directories several times. With caching, such information is reused
+     * until it is older than this time to live.
+     * <p>
+     * Cached information is invalidated when the FTP file system itself creates, deletes, moves, copies or writes files. Changes that are made
+     * in any other way, for instance by other FTP clients, are only noticed after the time to live has passed.
+     * <p>
+     * If this value is not set, it defaults to {@code 0}, which means that information is not cached.
+     *
+     * @param duration The time to live duration.
+     * @param unit The time to live unit.
+     * @return This object.
+     * @throws NullPointerException If the time to live unit is {@code null}.
+     * @see #withMetadataCacheTimeToLive(long)
+     * @see #withMetadataCacheMaxEntries(int)
+     * @since 2.2
+     */
+    public FTPEnvironment withMetadataCacheTimeToLive(long duration, TimeUnit unit) {
+        return withMetadataCacheTimeToLive(TimeUnit.MILLISECONDS.convert(duration, unit));
+    }
+
+    /**
+     * Stores the maximum number of cached entries of information about files, links and directory contents.
+     * If there are more entries, the least recently used entries are removed.
+     * This value is only used if the {@link #withMetadataCacheTimeToLive(long) time to live} of cached information or the
+     * {@link #withMissingFileCacheTimeToLive(long) time to live} of cached missing files is larger than {@code 0}.
+     * Cached missing files count as entries as well.
+     * <p>
+     * If this value is not set, it defaults to {@code 1000}.
+     *
+     * @param maxEntries The maximum number of cached entries.
+     * @return This object.
+     * @see #withMetadataCacheTimeToLive(long)
+     * @see #withMissingFileCacheTimeToLive(long)
+     * @since 2.2
+     */
+    public FTPEnvironment withMetadataCacheMaxEntries(int maxEntries) {
+        put(METADATA_CACHE_MAX_ENTRIES, maxEntries);
+        return this;
+    }
+
+    /**
+     * Stores the time that the fact that a file does not exist is cached.
+     * Without caching, each check for a file that does not exist lists files on the FTP server; for instance, repeatedly calling
+     * {@link java.nio.file.Files#exists(java.nio.file.Path, java.nio.file.LinkOption...) Files.exists} for a file that is expected to arrive lists
+     * files each time. With caching, a {@link java.nio.file.NoSuchFileException NoSuchFileException} is thrown without contacting the FTP
+     * server until the cached result is older than this time to live.
+     * <p>
+     * This time to live is separate from the {@link #withMetadataCacheTimeToLive(long) time to live} of cached information about existing files;
+     * it's usually shorter. Cached missing files are invalidated when the FTP file system itself creates, moves, copies or writes files.
+     * Files that are created in any other way, for instance by other FTP clients, are only noticed after the time to live has passed.
+     * <p>
+     * If this value is not set, it defaults to {@code 0}, which means that missing files are not cached.
+     *
+     * @param timeToLive The time to live of cached missing files in milliseconds.
+     * @return This object.
+     * @see #withMissingFileCacheTimeToLive(long, TimeUnit)
+     * @see #withMetadataCacheMaxEntries(int)
+     * @since 2.2
+     */
+    public FTPEnvironment withMissingFileCacheTimeToLive(long timeToLive) {
+        put(MISSING_FILE_CACHE_TIME_TO_LIVE, timeToLive);
+        return this;
+    }
+
+    /**
+     * Stores the time that the fact that a file does not exist is cached.
+     * Without caching, each check for a file that does not exist lists files on the FTP server; for instance, repeatedly calling
+     * {@link java.nio.file.Files#exists(java.nio.file.Path, java.nio.file.LinkOption...) Files.exists} for a file that is expected to arrive lists
+     * files each time. With caching, a {@link java.nio.file.NoSuchFileException NoSuchFileException} is thrown without contacting the FTP
+     * server until the cached result is older than this time to live.
+     * <p>
+     * This time to live is separate from the {@link #withMetadataCacheTimeToLive(long) time to live} of cached information about existing files;
+     * it's usually shorter. Cached missing files are invalidated when the FTP file system itself creates, moves, copies or writes files.
+     * Files that are created in any other way, for instance by other FTP clients, are only noticed after the time to live has passed.
+     * <p>
+     * If this value is not set, it defaults to {@code 0}, which means that missing files are not cached.
+     *
+     * @param duration The time to live duration.
+     * @param unit The time to live unit.
+     * @return This object.
+     * @throws NullPointerException If the time to live unit is {@code null}.
+     * @see #withMissingFileCacheTimeToLive(long)
+     * @see #withMetadataCacheMaxEntries(int)
+     * @since 2.2
+     */
+    public FTPEnvironment withMissingFileCacheTimeToLive(long duration, TimeUnit unit) {
+        return withMissingFileCacheTimeToLive(TimeUnit.MILLISECONDS.convert(duration, unit));
+    }
+
     /**
      * Stores the file system exception factory to use.
      *
@@ -663,6 +1652,14 @@ public class FTPEnvironment implements Map<String, Object>, Cloneable {
         return FileSystemProviderSupport.getValue(this, USERNAME, String.class, null);
     }
 
+    char[] getPassword() {
+        return FileSystemProviderSupport.getValue(this, PASSWORD, char[].class, null);
+    }
+
+    String getAccount() {
+        return FileSystemProviderSupport.getValue(this, ACCOUNT, String.class, null);
+    }
+
     FileType getDefaultFileType() {
         // explicitly set in initializePostConnect
         return FileType.binary();
@@ -683,11 +1680,239 @@ public class FTPEnvironment implements Map<String, Object>, Cloneable {
         return Math.max(1, count);
     }
 
+    int getMinClientConnections() {
+        int maxCount = getMaxClientConnections();
+        if (containsKey(MIN_CLIENT_CONNECTIONS)) {
+            int count = FileSystemProviderSupport.getIntValue(this, MIN_CLIENT_CONNECTIONS);
+            return Math.max(0, Math.min(count, maxCount));
+        }
+        return Math.min(getClientConnectionCount(), maxCount);
+    }
+
+    int getMaxClientConnections() {
+        if (containsKey(MAX_CLIENT_CONNECTIONS)) {
+            int count = FileSystemProviderSupport.getIntValue(this, MAX_CLIENT_CONNECTIONS);
+            return Math.max(1, count);
+        }
+        return getClientConnectionCount();
+    }
+
+    int getReservedMetadataClientConnections() {
+        int count = FileSystemProviderSupport.getIntValue(this, RESERVED_METADATA_CLIENT_CONNECTIONS, 0);
+        return Math.max(0, count);
+    }
+
+    int getReservedTransferClientConnections() {
+        int count = FileSystemProviderSupport.getIntValue(this, RESERVED_TRANSFER_CLIENT_CONNECTIONS, 0);
+        return Math.max(0, count);
+    }
+
+    InetSocketAddress[] getAdditionalEndpoints() {
+        InetSocketAddress[] endpoints = FileSystemProviderSupport.getValue(this, ADDITIONAL_ENDPOINTS, InetSocketAddress[].class, null);
+        return endpoints == null ? new InetSocketAddress[0] : endpoints.clone();
+    }
+
+    long getEndpointRetryInterval() {
+        long interval = FileSystemProviderSupport.getLongValue(this, ENDPOINT_RETRY_INTERVAL, DEFAULT_ENDPOINT_RETRY_INTERVAL);
+        return Math.max(0, interval);
+    }
+
+    int getMaxOverflowClientConnections() {
+        int count = FileSystemProviderSupport.getIntValue(this, MAX_OVERFLOW_CLIENT_CONNECTIONS, 0);
+        return Math.max(0, count);
+    }
+
+    long getOverflowClientConnectionLingerTime() {
+        long lingerTime = FileSystemProviderSupport.getLongValue(this, OVERFLOW_CLIENT_CONNECTION_LINGER_TIME,
+                DEFAULT_OVERFLOW_CLIENT_CONNECTION_LINGER_TIME);
+        return Math.max(0, lingerTime);
+    }
+
+    int getMaxConcurrentClientConnects() {
+        int count = FileSystemProviderSupport.getIntValue(this, MAX_CONCURRENT_CLIENT_CONNECTS, DEFAULT_MAX_CONCURRENT_CLIENT_CONNECTS);
+        return Math.max(1, count);
+    }
+
+    long getClientConnectionIdleTimeout() {
+        long timeout = FileSystemProviderSupport.getLongValue(this, CLIENT_CONNECTION_IDLE_TIMEOUT, DEFAULT_CLIENT_CONNECTION_IDLE_TIMEOUT);
+        return Math.max(0, timeout);
+    }
+
+    long getClientConnectionMaintenanceInterval() {
+        long interval = FileSystemProviderSupport.getLongValue(this, CLIENT_CONNECTION_MAINTENANCE_INTERVAL,
+                DEFAULT_CLIENT_CONNECTION_MAINTENANCE_INTERVAL);
+        return Math.max(0, interval);
+    }
+
+    long getClientConnectionKeepAliveInterval() {
+        long interval = FileSystemProviderSupport.getLongValue(this, CLIENT_CONNECTION_KEEP_ALIVE_INTERVAL,
+                DEFAULT_CLIENT_CONNECTION_KEEP_ALIVE_INTERVAL);
+        return Math.max(0, interval);
+    }
+
+    ClientValidationPolicy getClientValidationPolicy() {
+        return FileSystemProviderSupport.getValue(this, CLIENT_VALIDATION_POLICY, ClientValidationPolicy.class, ClientValidationPolicy.ALWAYS);
+    }
+
+    long getClientValidationIdleTime() {
+        long time = FileSystemProviderSupport.getLongValue(this, CLIENT_VALIDATION_IDLE_TIME, DEFAULT_CLIENT_VALIDATION_IDLE_TIME);
+        return Math.max(0, time);
+    }
+
     long getClientConnectionWaitTimeout() {
         long timeout = FileSystemProviderSupport.getLongValue(this, CLIENT_CONNECTION_WAIT_TIMEOUT, DEFAULT_CLIENT_CONNECTION_WAIT_TIMEOUT);
         return Math.max(0, timeout);
     }
 
+    boolean isClientPoolMXBeanEnabled() {
+        return FileSystemProviderSupport.getBooleanValue(this, CLIENT_POOL_MXBEAN_ENABLED, false);
+    }
+
+    long getClientLeakDetectionThreshold() {
+        long threshold = FileSystemProviderSupport.getLongValue(this, CLIENT_LEAK_DETECTION_THRESHOLD, 0);
+        return Math.max(0, threshold);
+    }
+
+    boolean isAbandonedStreamReclaimEnabled() {
+        return FileSystemProviderSupport.getBooleanValue(this, ABANDONED_STREAM_RECLAIM_ENABLED, false);
+    }
+
+    long getTargetBorrowWaitTime() {
+        long waitTime = FileSystemProviderSupport.getLongValue(this, TARGET_BORROW_WAIT_TIME, 0);
+        return Math.max(0, waitTime);
+    }
+
+    boolean isConnectionLimitLearningEnabled() {
+        return FileSystemProviderSupport.getBooleanValue(this, CONNECTION_LIMIT_LEARNING_ENABLED, false);
+    }
+
+    long getConnectionLimitRecoveryInterval() {
+        long interval = FileSystemProviderSupport.getLongValue(this, CONNECTION_LIMIT_RECOVERY_INTERVAL, DEFAULT_CONNECTION_LIMIT_RECOVERY_INTERVAL);
+        return Math.max(0, interval);
+    }
+
+    int getConnectFailureThreshold() {
+        int threshold = FileSystemProviderSupport.getIntValue(this, CONNECT_FAILURE_THRESHOLD, 0);
+        return Math.max(0, threshold);
+    }
+
+    long getConnectFailureBackoff() {
+        long backoff = FileSystemProviderSupport.getLongValue(this, CONNECT_FAILURE_BACKOFF, DEFAULT_CONNECT_FAILURE_BACKOFF);
+        return Math.max(1, backoff);
+    }
+
+    long getMaxConnectFailureBackoff() {
+        long backoff = FileSystemProviderSupport.getLongValue(this, MAX_CONNECT_FAILURE_BACKOFF, DEFAULT_MAX_CONNECT_FAILURE_BACKOFF);
+        return Math.max(getConnectFailureBackoff(), backoff);
+    }
+
+    boolean isSharedClientPoolEnabled() {
+        return FileSystemProviderSupport.getBooleanValue(this, SHARED_CLIENT_POOL_ENABLED, false);
+    }
+
+    int getHostConnectionBudget() {
+        int budget = FileSystemProviderSupport.getIntValue(this, HOST_CONNECTION_BUDGET, 0);
+        return Math.max(0, budget);
+    }
+
+    int getConnectionBudgetWeight() {
+        int weight = FileSystemProviderSupport.getIntValue(this, CONNECTION_BUDGET_WEIGHT, 1);
+        return Math.max(1, weight);
+    }
+
+    long getFileSystemIdleTimeout() {
+        long timeout = FileSystemProviderSupport.getLongValue(this, FILE_SYSTEM_IDLE_TIMEOUT, 0);
+        return Math.max(0, timeout);
+    }
+
+    boolean isLazyInitializationEnabled() {
+        return FileSystemProviderSupport.getBooleanValue(this, LAZY_INITIALIZATION_ENABLED, false);
+    }
+
+    Path getCapabilityCacheFile() {
+        return FileSystemProviderSupport.getValue(this, CAPABILITY_CACHE_FILE, Path.class, null);
+    }
+
+    long getCapabilityCacheMaxAge() {
+        long maxAge = FileSystemProviderSupport.getLongValue(this, CAPABILITY_CACHE_MAX_AGE, DEFAULT_CAPABILITY_CACHE_MAX_AGE);
+        return Math.max(0, maxAge);
+    }
+
+    long getMetadataCacheTimeToLive() {
+        long timeToLive = FileSystemProviderSupport.getLongValue(this, METADATA_CACHE_TIME_TO_LIVE, 0);
+        return Math.max(0, timeToLive);
+    }
+
+    int getMetadataCacheMaxEntries() {
+        int maxEntries = FileSystemProviderSupport.getIntValue(this, METADATA_CACHE_MAX_ENTRIES, DEFAULT_METADATA_CACHE_MAX_ENTRIES);
+        return Math.max(1, maxEntries);
+    }
+
+    long getMissingFileCacheTimeToLive() {
+        long timeToLive = FileSystemProviderSupport.getLongValue(this, MISSING_FILE_CACHE_TIME_TO_LIVE, 0);
+        return Math.max(0, timeToLive);
+    }
+
+    FTPEnvironment withServerSystemType(String systemType) {
+        if (containsKey(CLIENT_CONFIG)) {
+            // an explicit client config determines how files are parsed
+            return this;
+        }
+        FTPEnvironment copy = clone();
+        copy.map.put(SERVER_SYSTEM_TYPE, systemType);
+        return copy;
+    }
+
+    FTPFileEntryParser createFileEntryParser(FTPClient client) throws IOException {
+        // create the parser the same way FTPClient does for LIST, using the same parser factory and client config
+        FTPFileEntryParserFactory parserFactory = FileSystemProviderSupport.getValue(this, PARSER_FACTORY, FTPFileEntryParserFactory.class, null);
+        if (parserFactory == null) {
+            parserFactory = new DefaultFTPFileEntryParserFactory();
+        }
+        FTPClientConfig clientConfig = getClientConfig();
+        if (clientConfig != null && !clientConfig.getServerSystemKey().isEmpty()) {
+            return parserFactory.createFileEntryParser(clientConfig);
+        }
+        String systemType = System.getProperty(FTPClient.FTP_SYSTEM_TYPE);
+        return parserFactory.createFileEntryParser(systemType != null ? systemType : client.getSystemType());
+    }
+
+    FTPEnvironment withUnparseableEntries() {
+        FTPEnvironment copy = clone();
+        copy.map.put(UNPARSEABLE_ENTRIES, true);
+        return copy;
+    }
+
+    String getDefaultDirectory() {
+        return FileSystemProviderSupport.getValue(this, DEFAULT_DIR, String.class, null);
+    }
+
+    FTPEnvironment withPoolSettings(Map<String, ?> settings) {
+        FTPEnvironment copy = clone();
+        for (String key : RECONFIGURABLE_POOL_SETTINGS) {
+            if (settings.containsKey(key)) {
+                copy.map.put(key, settings.get(key));
+            }
+        }
+        return copy;
+    }
+
+    FTPEnvironment withoutDefaultDirectory() {
+        FTPEnvironment copy = clone();
+        copy.map.remove(DEFAULT_DIR);
+        return copy;
+    }
+
+    Map<String, Object> getSharedClientPoolSettings() {
+        // the credentials are compared separately, the default directory is applied per file system
+        Map<String, Object> settings = new HashMap<>(map);
+        settings.remove(USERNAME);
+        settings.remove(PASSWORD);
+        settings.remove(ACCOUNT);
+        settings.remove(DEFAULT_DIR);
+        return settings;
+    }
+
     FileSystemExceptionFactory getExceptionFactory() {
         return FileSystemProviderSupport.getValue(this, FILE_SYSTEM_EXCEPTION_FACTORY, FileSystemExceptionFactory.class,
                 DefaultFileSystemExceptionFactory.INSTANCE);
@@ -732,6 +1957,28 @@ public class FTPEnvironment implements Map<String, Object>, Cloneable {
         }
     }
 
+    private FTPClientConfig getClientConfig() {
+        FTPClientConfig clientConfig = null;
+        if (containsKey(CLIENT_CONFIG)) {
+            clientConfig = FileSystemProviderSupport.getValue(this, CLIENT_CONFIG, FTPClientConfig.class, null);
+            if (clientConfig != null) {
+                clientConfig = new FTPClientConfig(clientConfig);
+            }
+        } else if (containsKey(SERVER_SYSTEM_TYPE)) {
+            // the system type is known already; don't let the FTP client ask the FTP server for it
+            String systemType = FileSystemProviderSupport.getValue(this, SERVER_SYSTEM_TYPE, String.class, null);
+            clientConfig = new FTPClientConfig(systemType);
+        }
+        if (containsKey(UNPARSEABLE_ENTRIES)) {
+            if (clientConfig == null) {
+                // an empty system type still lets the FTP client ask the FTP server for it
+                clientConfig = new FTPClientConfig(""); //$NON-NLS-1$
+            }
+            clientConfig.setUnparseableEntries(true);
+        }
+        return clientConfig;
+    }
+
     void initializePreConnect(FTPClient client) throws IOException {
         boolean listHiddenFiles = FileSystemProviderSupport.getBooleanValue(this, LIST_HIDDEN_FILES, true);
         client.setListHiddenFiles(listHiddenFiles);
@@ -806,11 +2053,8 @@ public class FTPEnvironment implements Map<String, Object>, Cloneable {
             client.setReceieveDataSocketBufferSize(bufSize);
         }
 
-        if (containsKey(CLIENT_CONFIG)) {
-            FTPClientConfig clientConfig = FileSystemProviderSupport.getValue(this, CLIENT_CONFIG, FTPClientConfig.class, null);
-            if (clientConfig != null) {
-                clientConfig = new FTPClientConfig(clientConfig);
-            }
+        FTPClientConfig clientConfig = getClientConfig();
+        if (clientConfig != null || containsKey(CLIENT_CONFIG)) {
             client.configure(clientConfig);
         }
 
@@ -846,17 +2090,28 @@ public class FTPEnvironment implements Map<String, Object>, Cloneable {
         }
 
         InetAddress localAddr = FileSystemProviderSupport.getValue(this, LOCAL_ADDR, InetAddress.class, null);
-        if (localAddr != null) {
-            int localPort = FileSystemProviderSupport.getIntValue(this, LOCAL_PORT);
-            client.connect(hostname, port, localAddr, localPort);
-        } else {
-            client.connect(hostname, port);
+        try {
+            if (localAddr != null) {
+                int localPort = FileSystemProviderSupport.getIntValue(this, LOCAL_PORT);
+                client.connect(hostname, port, localAddr, localPort);
+            } else {
+                client.connect(hostname, port);
+            }
+        } catch (FTPConnectionClosedException e) {
+            if (client.getReplyCode() == FTPReply.SERVICE_NOT_AVAILABLE) {
+                // the FTP server replied but refused the connection, for instance because it has too many connections
+                FTPFileSystemException exception = new FTPFileSystemException(client.getReplyCode(), client.getReplyString());
+                exception.initCause(e);
+                client.disconnect();
+                throw exception;
+            }
+            throw e;
         }
 
         String username = getUsername();
-        char[] passwordChars = FileSystemProviderSupport.getValue(this, PASSWORD, char[].class, null);
+        char[] passwordChars = getPassword();
         String password = passwordChars != null ? new String(passwordChars) : null;
-        String account = FileSystemProviderSupport.getValue(this, ACCOUNT, String.class, null);
+        String account = getAccount();
         if (account != null) {
             if (!client.login(username, password, account)) {
                 throw new FTPFileSystemException(client.getReplyCode(), client.getReplyString());
@@ -893,7 +2148,7 @@ public class FTPEnvironment implements Map<String, Object>, Cloneable {
         // default to binary
         client.setFileType(FTP.BINARY_FILE_TYPE);
 
-        String defaultDir = FileSystemProviderSupport.getValue(this, DEFAULT_DIR, String.class, null);
+        String defaultDir = getDefaultDirectory();
         if (defaultDir != null && !client.changeWorkingDirectory(defaultDir)) {
             throw getExceptionFactory().createChangeWorkingDirectoryException(defaultDir, client.getReplyCode(), client.getReplyString());
         }
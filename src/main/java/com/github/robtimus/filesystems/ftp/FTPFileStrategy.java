@@ -23,9 +23,18 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPFileEntryParser;
+import org.apache.commons.net.ftp.FTPFileFilter;
+import org.apache.commons.net.ftp.FTPFileFilters;
+import org.apache.commons.net.ftp.FTPReply;
+import org.apache.commons.net.ftp.parser.FTPFileEntryParserFactory;
+import org.apache.commons.net.ftp.parser.MLSxEntryParser;
 import com.github.robtimus.filesystems.ftp.FTPClientPool.Client;
 
 /**
@@ -37,15 +46,27 @@ import com.github.robtimus.filesystems.ftp.FTPClientPool.Client;
 public abstract class FTPFileStrategy {
 
     final List<FTPFile> getChildren(Client client, Path path) throws IOException {
-        return getChildren(client.ftpClient(), path, client.exceptionFactory());
+        try {
+            return getChildren(client.ftpClient(), path, client.exceptionFactory());
+        } catch (IOException e) {
+            throw client.failed(e);
+        }
     }
 
     final FTPFile getFTPFile(Client client, Path path) throws IOException {
-        return getFTPFile(client.ftpClient(), path, client.exceptionFactory());
+        try {
+            return getFTPFile(client.ftpClient(), path, client.exceptionFactory());
+        } catch (IOException e) {
+            throw client.failed(e);
+        }
     }
 
     final FTPFile getLink(Client client, FTPFile ftpFile, Path path) throws IOException {
-        return getLink(client.ftpClient(), ftpFile, path, client.exceptionFactory());
+        try {
+            return getLink(client.ftpClient(), ftpFile, path, client.exceptionFactory());
+        } catch (IOException e) {
+            throw client.failed(e);
+        }
     }
 
     /**
@@ -59,6 +80,71 @@ public abstract class FTPFileStrategy {
         // does nothing
     }
 
+    /**
+     * Returns the name of the FTP file strategy that was detected during initialization, so it can be stored in a capability cache.
+     * This default implementation returns {@code null}, because it does not detect anything.
+     *
+     * @return The name of the detected FTP file strategy, or {@code null} if nothing was detected.
+     */
+    String getDetectedStrategy() {
+        return null;
+    }
+
+    /**
+     * Initializes the FTP file strategy using the name of an FTP file strategy that was detected earlier, instead of using an FTP client.
+     * This default implementation returns {@code false}, because it does not detect anything.
+     *
+     * @param detectedStrategy The name of the FTP file strategy that was detected earlier.
+     * @return {@code true} if the FTP file strategy was initialized, or {@code false} if it needs to be {@link #initialize(FTPClient) initialized}
+     *         using an FTP client.
+     */
+    boolean restoreDetectedStrategy(String detectedStrategy) {
+        return false;
+    }
+
+    /**
+     * Detects the FTP file strategy again, because the FTP file strategy that was {@link #restoreDetectedStrategy(String) restored} may be
+     * outdated. This default implementation does nothing, because it does not detect anything.
+     *
+     * @param client The FTP client to use for detection.
+     * @throws IOException If an I/O error occurs.
+     */
+    void redetect(FTPClient client) throws IOException {
+        // does nothing
+    }
+
+    /**
+     * Returns whether or not the timestamps of the FTP files returned by this FTP file strategy are exact.
+     * If not, the last modification time of files needs to be retrieved separately.
+     * This default implementation returns {@code false}.
+     *
+     * @return {@code true} if the timestamps of returned FTP files are exact, or {@code false} otherwise.
+     */
+    boolean hasExactTimestamps() {
+        return false;
+    }
+
+    /**
+     * Returns whether or not this FTP file strategy needs FTP clients to return entries that cannot be parsed, instead of dropping them.
+     * This default implementation returns {@code false}.
+     *
+     * @return {@code true} if FTP clients need to be configured to return entries that cannot be parsed, or {@code false} otherwise.
+     * @see org.apache.commons.net.ftp.FTPClientConfig#setUnparseableEntries(boolean)
+     */
+    boolean needsUnparseableEntries() {
+        return false;
+    }
+
+    /**
+     * Configures this FTP file strategy with the environment that is used to create FTP clients.
+     * This default implementation does nothing.
+     *
+     * @param env The environment that is used to create FTP clients.
+     */
+    void configure(FTPEnvironment env) {
+        // does nothing
+    }
+
     /**
      * Returns the direct children for a path.
      *
@@ -172,9 +258,70 @@ public abstract class FTPFileStrategy {
         return NonUnix.INSTANCE;
     }
 
+    /**
+     * Returns a strategy for Unix-like FTP file systems that lists files using the STAT command instead of the LIST command.
+     * Like {@link #unix()}, it is assumed that these return an entry for the current directory (.) when listing directories.
+     * <p>
+     * The STAT command returns the same information as the LIST command, but over the control connection. This removes the need to open a
+     * data connection for each listing. If the FTP server refuses the STAT command, the LIST command is used instead.
+     * Because some FTP servers limit the size of replies, the LIST command is also used if a reply of the STAT command contains more than
+     * 1000 entries, or if its last entry cannot be parsed.
+     * Listings returned by the STAT command are parsed like listings returned by the LIST command, using the configured
+     * {@link FTPEnvironment#withClientConfig(org.apache.commons.net.ftp.FTPClientConfig) client config} and
+     * {@link FTPEnvironment#withParserFactory(FTPFileEntryParserFactory) parser factory}.
+     *
+     * @return A strategy for Unix-like FTP file systems that lists files using the STAT command.
+     * @since 2.2
+     */
+    public static FTPFileStrategy unixUsingStat() {
+        return new Unix(new StatLister());
+    }
+
+    /**
+     * Returns a strategy for non-Unix-like FTP file systems that lists files using the STAT command instead of the LIST command.
+     * Like {@link #nonUnix()}, it is assumed that these do not return an entry for the current directory (.) when listing directories.
+     * <p>
+     * The STAT command returns the same information as the LIST command, but over the control connection. This removes the need to open a
+     * data connection for each listing. If the FTP server refuses the STAT command, the LIST command is used instead.
+     * Because some FTP servers limit the size of replies, the LIST command is also used if a reply of the STAT command contains more than
+     * 1000 entries, or if its last entry cannot be parsed.
+     * Listings returned by the STAT command are parsed like listings returned by the LIST command, using the configured
+     * {@link FTPEnvironment#withClientConfig(org.apache.commons.net.ftp.FTPClientConfig) client config} and
+     * {@link FTPEnvironment#withParserFactory(FTPFileEntryParserFactory) parser factory}.
+     *
+     * @return A strategy for non-Unix-like FTP file systems that lists files using the STAT command.
+     * @since 2.2
+     */
+    public static FTPFileStrategy nonUnixUsingStat() {
+        return new NonUnix(new StatLister());
+    }
+
+    /**
+     * Returns a strategy for FTP servers that support machine-readable listings, as defined in
+     * <a href="https://tools.ietf.org/html/rfc3659">RFC 3659</a>.
+     * This strategy uses the MLSD command to list directories. Unlike listings returned by the LIST command, these listings have a well-defined
+     * format, and contain exact timestamps in UTC. As a result, the last modification time of files does not need to be retrieved separately.
+     * Single files are retrieved using the MLST command, which returns the file's information over the control connection; if the FTP server
+     * does not support that command, the file's parent directory is listed instead. Once the FTP server has refused the MLST command, it's no
+     * longer sent.
+     * <p>
+     * Symbolic links are supported if the FTP server reports them using type {@code OS.unix=slink} or {@code OS.unix=symlink}, followed by a
+     * colon and the link target, like Unix-based FTP servers such as ProFTPD do. FTP servers that report symbolic links as the files or
+     * directories they point to will cause these to be treated as regular files and directories.
+     *
+     * @return A strategy for FTP servers that support machine-readable listings.
+     * @since 2.2
+     */
+    public static FTPFileStrategy mlsd() {
+        return new Mlsd();
+    }
+
     /**
      * Returns a strategy that will detect whether or not an FTP file system is Unix-like or not.
      * It will do so by listing the root and checking for the presence of an entry for the current directory (.).
+     * <p>
+     * The {@link #mlsd() MLSD} strategy is never selected, not even if the FTP server supports machine-readable listings. Many FTP servers report
+     * symbolic links in these listings as the files or directories they point to, which would break support for symbolic links.
      *
      * @return A strategy that will detect whether or not an FTP file system is Unix-like or not.
      */
@@ -182,13 +329,88 @@ public abstract class FTPFileStrategy {
         return new AutoDetect();
     }
 
+    private static FTPFile[] listFiles(FTPClient client, String path, FTPFileFilter filter, StatLister statLister) throws IOException {
+        if (statLister != null) {
+            FTPFile[] ftpFiles = statLister.listFiles(client, path, filter);
+            if (ftpFiles != null) {
+                return ftpFiles;
+            }
+        }
+        return client.listFiles(path, filter);
+    }
+
+    private static final class StatLister {
+
+        // some FTP servers limit the size of replies; don't trust larger listings to be complete
+        private static final int MAX_ENTRIES = 1000;
+
+        // null if the FTP file strategy is used without FTP file system
+        private volatile FTPEnvironment env;
+
+        // created when first needed, because it may need the FTP server's system type; FTP file entry parsers are not thread-safe
+        private FTPFileEntryParser parser;
+
+        private FTPFile[] listFiles(FTPClient client, String path, FTPFileFilter filter) throws IOException {
+            String pathname = client.getListHiddenFiles() ? "-a " + path : path; //$NON-NLS-1$
+            if (client.getStatus(pathname) == null) {
+                if (client.getReplyCode() == FTPReply.FILE_UNAVAILABLE) {
+                    // the path does not exist; listing it using LIST will not change that
+                    return new FTPFile[0];
+                }
+                // the FTP server refused the STAT command
+                return null;
+            }
+            // the first and last lines contain the reply code; all other lines are listing entries
+            String[] replyStrings = client.getReplyStrings();
+            if (replyStrings.length - 2 > MAX_ENTRIES) {
+                return null;
+            }
+            List<String> entries = new ArrayList<>(Math.max(replyStrings.length - 2, 0));
+            for (int i = 1; i < replyStrings.length - 1; i++) {
+                // some FTP servers indent the lines of multi-line replies
+                entries.add(replyStrings[i].replaceFirst("^\\s+", "")); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+
+            List<FTPFile> ftpFiles = new ArrayList<>(entries.size());
+            boolean lastEntryParsed = true;
+            synchronized (this) {
+                if (parser == null) {
+                    parser = env != null ? env.createFileEntryParser(client) : new FTPEnvironment().createFileEntryParser(client);
+                }
+                for (String entry : parser.preParse(entries)) {
+                    FTPFile ftpFile = parser.parseFTPEntry(entry);
+                    if (ftpFile != null && filter.accept(ftpFile)) {
+                        ftpFiles.add(ftpFile);
+                    }
+                    lastEntryParsed = ftpFile != null;
+                }
+            }
+            // pre-parsing removes lines like "total 0", so the last entry can only not be parsed if the reply was truncated
+            return lastEntryParsed ? ftpFiles.toArray(new FTPFile[0]) : null;
+        }
+    }
+
     private static final class Unix extends FTPFileStrategy {
 
-        private static final FTPFileStrategy INSTANCE = new Unix();
+        private static final FTPFileStrategy INSTANCE = new Unix(null);
+
+        // null if LIST is used
+        private final StatLister statLister;
+
+        private Unix(StatLister statLister) {
+            this.statLister = statLister;
+        }
+
+        @Override
+        void configure(FTPEnvironment env) {
+            if (statLister != null) {
+                statLister.env = env;
+            }
+        }
 
         @Override
         protected List<FTPFile> getChildren(FTPClient client, Path path, FileSystemExceptionFactory exceptionFactory) throws IOException {
-            FTPFile[] ftpFiles = client.listFiles(path(path));
+            FTPFile[] ftpFiles = listFiles(client, path(path), FTPFileFilters.NON_NULL, statLister);
 
             if (ftpFiles.length == 0) {
                 throw new NoSuchFileException(path(path));
@@ -215,10 +437,10 @@ public abstract class FTPFileStrategy {
         protected FTPFile getFTPFile(FTPClient client, Path path, FileSystemExceptionFactory exceptionFactory) throws IOException {
             final String name = fileName(path);
 
-            FTPFile[] ftpFiles = client.listFiles(path(path), f -> {
+            FTPFile[] ftpFiles = listFiles(client, path(path), f -> {
                 String fileName = FTPFileSystem.getFileName(f);
                 return FTPFileSystem.CURRENT_DIR.equals(fileName) || (name != null && name.equals(fileName));
-            });
+            }, statLister);
             throwIfEmpty(ftpFiles, path, client, exceptionFactory);
             if (ftpFiles.length == 1) {
                 return ftpFiles[0];
@@ -248,8 +470,8 @@ public abstract class FTPFileStrategy {
                     return null;
                 }
 
-                FTPFile[] ftpFiles = client.listFiles(parentPath,
-                        f -> (f.isDirectory() || f.isSymbolicLink()) && name.equals(FTPFileSystem.getFileName(f)));
+                FTPFile[] ftpFiles = listFiles(client, parentPath,
+                        f -> (f.isDirectory() || f.isSymbolicLink()) && name.equals(FTPFileSystem.getFileName(f)), statLister);
                 throwIfEmpty(ftpFiles, path, client, exceptionFactory);
                 return ftpFiles[0].getLink() == null ? null : ftpFiles[0];
             }
@@ -259,17 +481,31 @@ public abstract class FTPFileStrategy {
         @Override
         @SuppressWarnings("nls")
         public String toString() {
-            return "UNIX";
+            return statLister != null ? "UNIX_STAT" : "UNIX";
         }
     }
 
     private static final class NonUnix extends FTPFileStrategy {
 
-        private static final FTPFileStrategy INSTANCE = new NonUnix();
+        private static final FTPFileStrategy INSTANCE = new NonUnix(null);
+
+        // null if LIST is used
+        private final StatLister statLister;
+
+        private NonUnix(StatLister statLister) {
+            this.statLister = statLister;
+        }
+
+        @Override
+        void configure(FTPEnvironment env) {
+            if (statLister != null) {
+                statLister.env = env;
+            }
+        }
 
         @Override
         protected List<FTPFile> getChildren(FTPClient client, Path path, FileSystemExceptionFactory exceptionFactory) throws IOException {
-            FTPFile[] ftpFiles = client.listFiles(path(path));
+            FTPFile[] ftpFiles = listFiles(client, path(path), FTPFileFilters.NON_NULL, statLister);
 
             boolean isDirectory = false;
             List<FTPFile> children = new ArrayList<>(ftpFiles.length);
@@ -311,7 +547,7 @@ public abstract class FTPFileStrategy {
                 return rootFtpFile;
             }
 
-            FTPFile[] ftpFiles = client.listFiles(parentPath, f -> name.equals(FTPFileSystem.getFileName(f)));
+            FTPFile[] ftpFiles = listFiles(client, parentPath, f -> name.equals(FTPFileSystem.getFileName(f)), statLister);
             if (ftpFiles.length == 0) {
                 throw new NoSuchFileException(path(path));
             }
@@ -330,13 +566,202 @@ public abstract class FTPFileStrategy {
         @Override
         @SuppressWarnings("nls")
         public String toString() {
-            return "NON_UNIX";
+            return statLister != null ? "NON_UNIX_STAT" : "NON_UNIX";
+        }
+    }
+
+    private static final class Mlsd extends FTPFileStrategy {
+
+        // volatile because it can be set by any client; once set, the parent is listed instead of sending MLST
+        private volatile boolean mlstRefused = false;
+
+        @Override
+        protected List<FTPFile> getChildren(FTPClient client, Path path, FileSystemExceptionFactory exceptionFactory) throws IOException {
+            FTPFile[] ftpFiles = client.mlistDir(path(path));
+
+            if (!FTPReply.isPositiveCompletion(client.getReplyCode())) {
+                // MLSD can only list directories; check whether the path exists and is a regular file
+                int replyCode = client.getReplyCode();
+                String replyString = client.getReplyString();
+
+                // MLSD follows symbolic links, so follow them as well to check whether the path leads to a regular file
+                Set<Path> visited = new HashSet<>();
+                Path currentPath = path;
+                FTPFile currentFtpFile = getFTPFile(client, currentPath, exceptionFactory);
+                while (currentFtpFile.isSymbolicLink() && visited.add(currentPath)) {
+                    currentPath = currentPath.resolveSibling(currentFtpFile.getLink());
+                    currentFtpFile = getFTPFile(client, currentPath, exceptionFactory);
+                }
+                if (currentFtpFile.isFile()) {
+                    throw new NotDirectoryException(path(path));
+                }
+                // the path is a directory that can't be listed, or a symbolic link loop
+                throw exceptionFactory.createGetFileException(path(path), replyCode, replyString);
+            }
+
+            List<FTPFile> children = new ArrayList<>(ftpFiles.length);
+            for (FTPFile ftpFile : ftpFiles) {
+                FTPFile child = parseUnparsedEntry(ftpFile);
+                if (child != null && !isCurrentOrParentDirectory(child)) {
+                    children.add(child);
+                }
+            }
+            return children;
+        }
+
+        @Override
+        protected FTPFile getFTPFile(FTPClient client, Path path, FileSystemExceptionFactory exceptionFactory) throws IOException {
+            if (mlstRefused) {
+                return getFTPFileFromParent(client, path);
+            }
+            // MLST does not need a data connection, so try that first
+            FTPFile ftpFile = client.mlistFile(path(path));
+            if (ftpFile == null && FTPReply.isPositiveCompletion(client.getReplyCode())) {
+                // the entry could not be parsed; the second line of the reply contains the entry, preceded by a space
+                String[] replyStrings = client.getReplyStrings();
+                ftpFile = replyStrings.length > 1 && replyStrings[1].startsWith(" ") ? parseLink(replyStrings[1].substring(1)) : null; //$NON-NLS-1$
+            }
+            if (ftpFile != null) {
+                // MLST entries contain the full pathname, whereas directory listings only contain the file name
+                if (parentPath(path) != null) {
+                    ftpFile.setName(fileName(path));
+                }
+                return ftpFile;
+            }
+            int replyCode = client.getReplyCode();
+            if (replyCode == FTPReply.FILE_UNAVAILABLE) {
+                throw new NoSuchFileException(path(path));
+            }
+            if (replyCode == FTPReply.UNRECOGNIZED_COMMAND || replyCode == FTPReply.COMMAND_NOT_IMPLEMENTED) {
+                // the FTP server does not support MLST; that will not change, so don't send it again
+                mlstRefused = true;
+            }
+            // MLST is not supported, or its entry could not be parsed
+            return getFTPFileFromParent(client, path);
+        }
+
+        private FTPFile getFTPFileFromParent(FTPClient client, Path path) throws IOException {
+            final String parentPath = parentPath(path);
+            final String name = fileName(path);
+
+            if (parentPath == null) {
+                // path is /, use the entry for the current directory if there is one
+                FTPFile[] ftpFiles = client.mlistDir(path(path), this::isCurrentDirectory);
+                if (ftpFiles.length > 0) {
+                    return ftpFiles[0];
+                }
+                FTPFile rootFtpFile = new FTPFile();
+                rootFtpFile.setName("/"); //$NON-NLS-1$
+                rootFtpFile.setType(FTPFile.DIRECTORY_TYPE);
+                return rootFtpFile;
+            }
+
+            FTPFile result = null;
+            for (FTPFile ftpFile : client.mlistDir(parentPath)) {
+                // parse unparsed entries before filtering, because these do not have a name
+                FTPFile child = parseUnparsedEntry(ftpFile);
+                if (child != null && !isCurrentOrParentDirectory(child) && name.equals(FTPFileSystem.getFileName(child))) {
+                    if (result != null) {
+                        throw new IllegalStateException();
+                    }
+                    result = child;
+                }
+            }
+            if (result == null) {
+                throw new NoSuchFileException(path(path));
+            }
+            return result;
+        }
+
+        @Override
+        protected FTPFile getLink(FTPClient client, FTPFile ftpFile, Path path, FileSystemExceptionFactory exceptionFactory) throws IOException {
+            // getFTPFile returns the entry for the path itself, either using MLST or from the parent listing, and never the entry of a link target.
+            // There's no need to list the parent here.
+            return ftpFile.getLink() == null ? null : ftpFile;
+        }
+
+        @Override
+        boolean hasExactTimestamps() {
+            return true;
+        }
+
+        @Override
+        boolean needsUnparseableEntries() {
+            // MLSxEntryParser cannot parse symbolic links of type OS.unix=slink, because it does not allow = in fact values
+            return true;
+        }
+
+        private FTPFile parseUnparsedEntry(FTPFile ftpFile) {
+            // entries that could not be parsed are only returned as raw listing; symbolic links are the only supported ones
+            return ftpFile.isValid() ? ftpFile : parseLink(ftpFile.getRawListing());
+        }
+
+        private FTPFile parseLink(String entry) {
+            int factsEnd = entry == null ? -1 : entry.indexOf(' ');
+            if (factsEnd == -1) {
+                return null;
+            }
+            // remove the type fact, then let MLSxEntryParser parse the remainder
+            StringBuilder remainder = new StringBuilder(entry.length());
+            String link = null;
+            for (String fact : entry.substring(0, factsEnd).split(";")) { //$NON-NLS-1$
+                String lowerCaseFact = fact.toLowerCase(Locale.ENGLISH);
+                if (lowerCaseFact.startsWith("type=os.unix=slink:") //$NON-NLS-1$
+                        || lowerCaseFact.startsWith("type=os.unix=symlink:")) { //$NON-NLS-1$
+                    // link targets are case sensitive, so don't take them from the lower case fact
+                    link = fact.substring(fact.indexOf(':') + 1);
+                } else if (!fact.isEmpty()) {
+                    remainder.append(fact).append(';');
+                }
+            }
+            if (link == null || link.isEmpty()) {
+                return null;
+            }
+            FTPFile ftpFile = MLSxEntryParser.parseEntry(remainder.append(entry.substring(factsEnd)).toString());
+            if (ftpFile != null) {
+                ftpFile.setRawListing(entry);
+                ftpFile.setType(FTPFile.SYMBOLIC_LINK_TYPE);
+                ftpFile.setLink(link);
+            }
+            return ftpFile;
+        }
+
+        private boolean isCurrentDirectory(FTPFile ftpFile) {
+            return FTPFileSystem.CURRENT_DIR.equals(FTPFileSystem.getFileName(ftpFile)) || "cdir".equals(getType(ftpFile)); //$NON-NLS-1$
+        }
+
+        private boolean isCurrentOrParentDirectory(FTPFile ftpFile) {
+            return isCurrentDirectory(ftpFile)
+                    || FTPFileSystem.PARENT_DIR.equals(FTPFileSystem.getFileName(ftpFile))
+                    || "pdir".equals(getType(ftpFile)); //$NON-NLS-1$
+        }
+
+        private String getType(FTPFile ftpFile) {
+            // the type is not part of FTPFile, because cdir, pdir and dir are all directories; get it from the raw listing
+            String rawListing = ftpFile.getRawListing();
+            int factsEnd = rawListing == null ? -1 : rawListing.indexOf(' ');
+            if (factsEnd == -1) {
+                return null;
+            }
+            for (String fact : rawListing.substring(0, factsEnd).split(";")) { //$NON-NLS-1$
+                if (fact.toLowerCase(Locale.ENGLISH).startsWith("type=")) { //$NON-NLS-1$
+                    return fact.substring("type=".length()).toLowerCase(Locale.ENGLISH); //$NON-NLS-1$
+                }
+            }
+            return null;
+        }
+
+        @Override
+        @SuppressWarnings("nls")
+        public String toString() {
+            return "MLSD";
         }
     }
 
     private static final class AutoDetect extends FTPFileStrategy {
 
-        private FTPFileStrategy delegate;
+        // volatile because it can be replaced by redetect while other threads use it
+        private volatile FTPFileStrategy delegate;
 
         @Override
         protected void initialize(FTPClient client) throws IOException {
@@ -344,11 +769,46 @@ public abstract class FTPFileStrategy {
                 throw new IllegalStateException(FTPMessages.autoDetectFileStrategyAlreadyInitialized());
             }
 
+            delegate = detect(client);
+        }
+
+        @Override
+        void redetect(FTPClient client) throws IOException {
+            // don't reset the delegate first, so other threads can keep using it until detection has finished
+            delegate = detect(client);
+        }
+
+        private FTPFileStrategy detect(FTPClient client) throws IOException {
             FTPFile[] ftpFiles = client.listFiles("/", f -> { //$NON-NLS-1$
                 String fileName = FTPFileSystem.getFileName(f);
                 return FTPFileSystem.CURRENT_DIR.equals(fileName);
             });
-            delegate = ftpFiles.length == 0 ? NonUnix.INSTANCE : Unix.INSTANCE;
+            return ftpFiles.length == 0 ? NonUnix.INSTANCE : Unix.INSTANCE;
+        }
+
+        @Override
+        String getDetectedStrategy() {
+            return delegate == null ? null : delegate.toString();
+        }
+
+        @Override
+        boolean restoreDetectedStrategy(String detectedStrategy) {
+            if (delegate != null) {
+                throw new IllegalStateException(FTPMessages.autoDetectFileStrategyAlreadyInitialized());
+            }
+
+            for (FTPFileStrategy strategy : new FTPFileStrategy[] { Unix.INSTANCE, NonUnix.INSTANCE }) {
+                if (strategy.toString().equals(detectedStrategy)) {
+                    delegate = strategy;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        boolean hasExactTimestamps() {
+            return delegate != null && delegate.hasExactTimestamps();
         }
 
         private void checkInitialized() {
@@ -17,6 +17,9 @@
 
 package com.github.robtimus.filesystems.ftp;
 
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOError;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -89,11 +92,22 @@ class FTPFileSystem extends FileSystem {
     private final FileStore fileStore;
     private final Iterable<FileStore> fileStores;
 
-    private final FTPClientPool clientPool;
+    private final FTPClientPool.Handle clientPool;
     private final URI uri;
-    private final String defaultDirectory;
+    // null until the file system has been initialized
+    private volatile String defaultDirectory;
 
     private final FTPFileStrategy ftpFileStrategy;
+    // null if metadata is not cached
+    private final MetadataCache metadataCache;
+
+    // null if capabilities are not cached
+    private final CapabilityCache capabilityCache;
+    private final String capabilityKey;
+    // the stored capabilities to initialize the file system with, or null if there are none
+    private final CapabilityCache.Profile capabilityProfile;
+    // true if the file system was initialized using the stored capabilities, until these are verified after an operation failed
+    private volatile boolean capabilityProfileRestored = false;
 
     private final AtomicBoolean open = new AtomicBoolean(true);
 
@@ -103,15 +117,182 @@ class FTPFileSystem extends FileSystem {
         this.fileStore = new FTPFileStore(this);
         this.fileStores = Collections.<FileStore>singleton(fileStore);
 
-        this.clientPool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        Path capabilityCacheFile = env.getCapabilityCacheFile();
+        this.capabilityCache = capabilityCacheFile != null ? CapabilityCache.forFile(capabilityCacheFile) : null;
+        String configuredDefaultDirectory = env.getDefaultDirectory();
+        this.capabilityKey = configuredDefaultDirectory != null ? uri + configuredDefaultDirectory : uri.toString();
+        this.capabilityProfile = capabilityCache != null ? capabilityCache.get(capabilityKey, env.getCapabilityCacheMaxAge()) : null;
+        this.ftpFileStrategy = env.getFTPFileStrategy();
+        FTPEnvironment poolEnv = capabilityProfile != null && capabilityProfile.systemType() != null
+                ? env.withServerSystemType(capabilityProfile.systemType())
+                : env;
+        if (ftpFileStrategy.needsUnparseableEntries()) {
+            poolEnv = poolEnv.withUnparseableEntries();
+        }
+        ftpFileStrategy.configure(poolEnv);
+
+        this.clientPool = FTPClientPool.open(uri.getHost(), uri.getPort(), poolEnv,
+                provider.getConnectionBudget(uri.getHost(), uri.getPort(), env));
         this.uri = Objects.requireNonNull(uri);
 
+        long metadataCacheTimeToLive = env.getMetadataCacheTimeToLive();
+        long missingFileCacheTimeToLive = env.getMissingFileCacheTimeToLive();
+        this.metadataCache = metadataCacheTimeToLive > 0 || missingFileCacheTimeToLive > 0
+                ? new MetadataCache(metadataCacheTimeToLive, missingFileCacheTimeToLive, env.getMetadataCacheMaxEntries())
+                : null;
+        if (env.isLazyInitializationEnabled()) {
+            // the first operation that needs a client will initialize the file system
+            return;
+        }
+
         try (Client client = clientPool.get()) {
-            this.defaultDirectory = client.pwd();
+            initialize(client);
+        } catch (IOException | RuntimeException e) {
+            // release the connection pool, in case it's shared with other file systems
+            try {
+                clientPool.close();
+            } catch (IOException e2) {
+                e.addSuppressed(e2);
+            }
+            throw e;
+        }
+    }
+
+    private synchronized void initialize(Client client) throws IOException {
+        if (defaultDirectory != null) {
+            // another thread has initialized the file system already
+            return;
+        }
+        String directory;
+        if (capabilityProfile != null) {
+            directory = capabilityProfile.defaultDirectory();
+            if (!ftpFileStrategy.restoreDetectedStrategy(capabilityProfile.strategy())) {
+                ftpFileStrategy.initialize(client.ftpClient());
+            }
+            capabilityProfileRestored = true;
+        } else {
+            directory = client.pwd();
+            ftpFileStrategy.initialize(client.ftpClient());
+            if (capabilityCache != null) {
+                String strategy = ftpFileStrategy.getDetectedStrategy();
+                capabilityCache.put(capabilityKey, new CapabilityCache.Profile(strategy, getSystemType(client), directory));
+            }
+        }
+        // set the default directory last, so the file system is only marked as initialized if both succeeded
+        defaultDirectory = directory;
+    }
+
+    /**
+     * Verifies the stored capabilities the file system was initialized with, after an operation failed.
+     * If the default directory or the detected FTP file strategy are outdated, they are replaced, and so is the stored capability profile.
+     *
+     * @return {@code true} if the stored capabilities were outdated, and the operation should be retried.
+     */
+    private synchronized boolean revalidateCapabilityProfile(Client client) throws IOException {
+        if (!capabilityProfileRestored) {
+            // the stored capabilities were already verified
+            return false;
+        }
+        String directory = client.pwd();
+        String restoredStrategy = ftpFileStrategy.getDetectedStrategy();
+        ftpFileStrategy.redetect(client.ftpClient());
+        String strategy = ftpFileStrategy.getDetectedStrategy();
+        capabilityProfileRestored = false;
+
+        if (directory.equals(defaultDirectory) && Objects.equals(strategy, restoredStrategy)) {
+            return false;
+        }
+        defaultDirectory = directory;
+        if (metadataCache != null) {
+            // metadata may have been cached using the outdated capabilities
+            metadataCache.invalidateAll();
+        }
+        capabilityCache.put(capabilityKey, new CapabilityCache.Profile(strategy, getSystemType(client), directory));
+        return true;
+    }
+
+    private <T> T withCapabilityProfile(Client client, FTPPath path, MetadataCache.Loader<T> loader) throws IOException {
+        try {
+            return loader.load();
+        } catch (IOException e) {
+            if (!capabilityProfileRestored || !isCausedByCapabilityProfile(path, e)) {
+                throw e;
+            }
+            boolean outdated;
+            try {
+                outdated = revalidateCapabilityProfile(client);
+            } catch (IOException e2) {
+                e.addSuppressed(e2);
+                throw e;
+            }
+            if (!outdated) {
+                throw e;
+            }
+            return loader.load();
+        }
+    }
+
+    private boolean isCausedByCapabilityProfile(FTPPath path, IOException exception) {
+        if (!(exception instanceof NoSuchFileException)) {
+            // the FTP file strategy may not be supported
+            return true;
+        }
+        // missing files are only suspicious if their path was resolved against a default directory that may no longer be correct
+        String directory = defaultDirectory;
+        String absolutePath = toAbsolutePath(path).path();
+        String directoryPrefix = directory.endsWith("/") ? directory : directory + "/"; //$NON-NLS-1$ //$NON-NLS-2$
+        return absolutePath.equals(directory) || absolutePath.startsWith(directoryPrefix);
+    }
+
+    private String getSystemType(Client client) {
+        try {
+            // if files have been listed, the FTP client already knows the system type
+            return client.ftpClient().getSystemType();
+        } catch (@SuppressWarnings("unused") IOException e) {
+            // the system type is not needed to use the file system
+            return null;
+        }
+    }
+
+    private Client initialized(Client client) throws IOException {
+        if (defaultDirectory == null) {
+            try {
+                initialize(client);
+            } catch (IOException | RuntimeException e) {
+                try {
+                    client.close();
+                } catch (IOException e2) {
+                    e.addSuppressed(e2);
+                }
+                throw e;
+            }
+        }
+        return client;
+    }
+
+    private Client getClient() throws IOException {
+        return initialized(clientPool.get());
+    }
+
+    private Client getClientForTransfer(TransferOptions options) throws IOException {
+        return initialized(clientPool.getForTransfer(options));
+    }
 
-            this.ftpFileStrategy = env.getFTPFileStrategy();
-            this.ftpFileStrategy.initialize(client.ftpClient());
+    private Client getOrCreateClient(TransferOptions options) throws IOException {
+        return initialized(clientPool.getOrCreate(options));
+    }
+
+    private String getDefaultDirectory() {
+        String directory = defaultDirectory;
+        if (directory == null) {
+            // the file system has not been initialized yet
+            try (Client client = getClient()) {
+                directory = defaultDirectory;
+            } catch (IOException e) {
+                throw new IOError(e);
+            }
         }
+        return directory;
     }
 
     @Override
@@ -182,6 +363,10 @@ class FTPFileSystem extends FileSystem {
         throw Messages.unsupportedOperation(FileSystem.class, "newWatchService"); //$NON-NLS-1$
     }
 
+    void reconfigure(Map<String, ?> settings) throws IOException {
+        clientPool.reconfigure(settings);
+    }
+
     void keepAlive() throws IOException {
         clientPool.keepAlive();
     }
@@ -203,12 +388,12 @@ class FTPFileSystem extends FileSystem {
         if (path.isAbsolute()) {
             return path;
         }
-        return new FTPPath(this, defaultDirectory + "/" + path.path()); //$NON-NLS-1$
+        return new FTPPath(this, getDefaultDirectory() + "/" + path.path()); //$NON-NLS-1$
     }
 
     FTPPath toRealPath(FTPPath path, LinkOption... options) throws IOException {
         boolean followLinks = LinkOptionSupport.followLinks(options);
-        try (Client client = clientPool.get()) {
+        try (Client client = getClient()) {
             return toRealPath(client, path, followLinks).ftpPath;
         }
     }
@@ -248,7 +433,7 @@ class FTPFileSystem extends FileSystem {
     InputStream newInputStream(FTPPath path, OpenOption... options) throws IOException {
         OpenOptions openOptions = OpenOptions.forNewInputStream(options);
 
-        try (Client client = clientPool.get()) {
+        try (Client client = getClientForTransfer(openOptions)) {
             return newInputStream(client, path, openOptions);
         }
     }
@@ -256,13 +441,36 @@ class FTPFileSystem extends FileSystem {
     private InputStream newInputStream(Client client, FTPPath path, OpenOptions options) throws IOException {
         assert options.read;
 
-        return client.newInputStream(path, options);
+        InputStream in = client.newInputStream(path, options);
+        if (metadataCache != null && options.deleteOnClose) {
+            in = new MetadataInvalidatingInputStream(in, path);
+        }
+        return in;
+    }
+
+    private final class MetadataInvalidatingInputStream extends FilterInputStream {
+
+        private final FTPPath path;
+
+        private MetadataInvalidatingInputStream(InputStream in, FTPPath path) {
+            super(in);
+            this.path = path;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                invalidateMetadata(path);
+            }
+        }
     }
 
     OutputStream newOutputStream(FTPPath path, OpenOption... options) throws IOException {
         OpenOptions openOptions = OpenOptions.forNewOutputStream(options);
 
-        try (Client client = clientPool.get()) {
+        try (Client client = getClientForTransfer(openOptions)) {
             return newOutputStream(client, path, false, openOptions).out;
         }
     }
@@ -290,9 +498,39 @@ class FTPFileSystem extends FileSystem {
         }
 
         OutputStream out = client.newOutputStream(path, options);
+        if (metadataCache != null) {
+            // the file may have been created or truncated
+            invalidateMetadata(path);
+            out = new MetadataInvalidatingOutputStream(out, path);
+        }
         return new FTPFileAndOutputStreamPair(ftpFile, out);
     }
 
+    private final class MetadataInvalidatingOutputStream extends FilterOutputStream {
+
+        private final FTPPath path;
+
+        private MetadataInvalidatingOutputStream(OutputStream out, FTPPath path) {
+            super(out);
+            this.path = path;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            // FilterOutputStream writes byte by byte
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                invalidateMetadata(path);
+            }
+        }
+    }
+
     private static final class FTPFileAndOutputStreamPair {
 
         private final FTPFile ftpFile;
@@ -312,7 +550,7 @@ class FTPFileSystem extends FileSystem {
 
         OpenOptions openOptions = OpenOptions.forNewByteChannel(options);
 
-        try (Client client = clientPool.get()) {
+        try (Client client = getClientForTransfer(openOptions)) {
             if (openOptions.read) {
                 // use findFTPFile instead of getFTPFile, to let the opening of the stream provide the correct error message
                 FTPFile ftpFile = findFTPFile(client, path);
@@ -331,8 +569,8 @@ class FTPFileSystem extends FileSystem {
 
     DirectoryStream<Path> newDirectoryStream(final FTPPath path, Filter<? super Path> filter) throws IOException {
         List<FTPFile> children;
-        try (Client client = clientPool.get()) {
-            children = ftpFileStrategy.getChildren(client, path);
+        try (Client client = getClient()) {
+            children = getChildren(client, path);
         }
         return new FTPPathDirectoryStream(path, children, filter);
     }
@@ -365,21 +603,29 @@ class FTPFileSystem extends FileSystem {
             throw Messages.fileSystemProvider().unsupportedCreateFileAttribute(attrs[0].name());
         }
 
-        try (Client client = clientPool.get()) {
-            client.mkdir(path, ftpFileStrategy);
+        try (Client client = getClient()) {
+            try {
+                client.mkdir(path, ftpFileStrategy);
+            } finally {
+                invalidateMetadata(path);
+            }
         }
     }
 
     void delete(FTPPath path) throws IOException {
-        try (Client client = clientPool.get()) {
+        try (Client client = getClient()) {
             FTPFile ftpFile = getFTPFile(client, path);
             boolean isDirectory = ftpFile.isDirectory();
-            client.delete(path, isDirectory);
+            try {
+                client.delete(path, isDirectory);
+            } finally {
+                invalidateMetadata(path);
+            }
         }
     }
 
     FTPPath readSymbolicLink(FTPPath path) throws IOException {
-        try (Client client = clientPool.get()) {
+        try (Client client = getClient()) {
             FTPFile ftpFile = getFTPFile(client, path);
             FTPFile link = getLink(client, ftpFile, path);
             if (link == null) {
@@ -393,7 +639,7 @@ class FTPFileSystem extends FileSystem {
         boolean sameFileSystem = haveSameFileSystem(source, target);
         CopyOptions copyOptions = CopyOptions.forCopy(options);
 
-        try (Client client = clientPool.get()) {
+        try (Client client = getClientForTransfer(copyOptions)) {
             // get the FTP file to determine whether a directory needs to be created or a file needs to be copied
             // Files.copy specifies that for links, the final target must be copied
             FTPPathAndFilePair sourcePair = toRealPath(client, source, true);
@@ -414,20 +660,24 @@ class FTPFileSystem extends FileSystem {
 
             FTPFile targetFtpFile = findFTPFile(client, target);
 
-            if (targetFtpFile != null) {
-                if (copyOptions.replaceExisting) {
+            if (targetFtpFile != null && !copyOptions.replaceExisting) {
+                throw new FileAlreadyExistsException(target.path());
+            }
+
+            try {
+                if (targetFtpFile != null) {
                     client.delete(target, targetFtpFile.isDirectory());
-                } else {
-                    throw new FileAlreadyExistsException(target.path());
                 }
-            }
 
-            if (sourcePair.ftpFile.isDirectory()) {
-                client.mkdir(target, ftpFileStrategy);
-            } else {
-                try (Client client2 = clientPool.getOrCreate()) {
-                    copyFile(client, source, client2, target, copyOptions);
+                if (sourcePair.ftpFile.isDirectory()) {
+                    client.mkdir(target, ftpFileStrategy);
+                } else {
+                    try (Client client2 = getOrCreateClient(copyOptions)) {
+                        copyFile(client, source, client2, target, copyOptions);
+                    }
                 }
+            } finally {
+                invalidateMetadata(target);
             }
         }
     }
@@ -437,22 +687,26 @@ class FTPFileSystem extends FileSystem {
 
         @SuppressWarnings("resource")
         FTPFileSystem targetFileSystem = target.getFileSystem();
-        try (Client targetClient = targetFileSystem.clientPool.getOrCreate()) {
+        try (Client targetClient = targetFileSystem.getOrCreateClient(options)) {
 
-            FTPFile targetFtpFile = findFTPFile(targetClient, target);
+            FTPFile targetFtpFile = targetFileSystem.findFTPFile(targetClient, target);
+
+            if (targetFtpFile != null && !options.replaceExisting) {
+                throw new FileAlreadyExistsException(target.path());
+            }
 
-            if (targetFtpFile != null) {
-                if (options.replaceExisting) {
+            try {
+                if (targetFtpFile != null) {
                     targetClient.delete(target, targetFtpFile.isDirectory());
-                } else {
-                    throw new FileAlreadyExistsException(target.path());
                 }
-            }
 
-            if (sourceFtpFile.isDirectory()) {
-                sourceClient.mkdir(target, ftpFileStrategy);
-            } else {
-                copyFile(sourceClient, source, targetClient, target, options);
+                if (sourceFtpFile.isDirectory()) {
+                    sourceClient.mkdir(target, ftpFileStrategy);
+                } else {
+                    copyFile(sourceClient, source, targetClient, target, options);
+                }
+            } finally {
+                targetFileSystem.invalidateMetadata(target);
             }
         }
     }
@@ -470,14 +724,18 @@ class FTPFileSystem extends FileSystem {
         boolean sameFileSystem = haveSameFileSystem(source, target);
         CopyOptions copyOptions = CopyOptions.forMove(sameFileSystem, options);
 
-        try (Client client = clientPool.get()) {
+        try (Client client = getClient()) {
             if (!sameFileSystem) {
                 FTPFile ftpFile = getFTPFile(client, source);
                 if (getLink(client, ftpFile, source) != null) {
                     throw new IOException(FTPMessages.copyOfSymbolicLinksAcrossFileSystemsNotSupported());
                 }
                 copyAcrossFileSystems(client, source, ftpFile, target, copyOptions);
-                client.delete(source, ftpFile.isDirectory());
+                try {
+                    client.delete(source, ftpFile.isDirectory());
+                } finally {
+                    invalidateMetadata(source);
+                }
                 return;
             }
 
@@ -499,11 +757,16 @@ class FTPFileSystem extends FileSystem {
             }
 
             FTPFile targetFTPFile = findFTPFile(client, target);
-            if (copyOptions.replaceExisting && targetFTPFile != null) {
-                client.delete(target, targetFTPFile.isDirectory());
-            }
+            try {
+                if (copyOptions.replaceExisting && targetFTPFile != null) {
+                    client.delete(target, targetFTPFile.isDirectory());
+                }
 
-            client.rename(source, target);
+                client.rename(source, target);
+            } finally {
+                invalidateMetadata(source);
+                invalidateMetadata(target);
+            }
         }
     }
 
@@ -514,7 +777,7 @@ class FTPFileSystem extends FileSystem {
         if (path.equals(path2)) {
             return true;
         }
-        try (Client client = clientPool.get()) {
+        try (Client client = getClient()) {
             return isSameFile(client, path, path2);
         }
     }
@@ -533,7 +796,7 @@ class FTPFileSystem extends FileSystem {
 
     boolean isHidden(FTPPath path) throws IOException {
         // call getFTPFile to check for existence
-        try (Client client = clientPool.get()) {
+        try (Client client = getClient()) {
             getFTPFile(client, path);
         }
         String fileName = path.fileName();
@@ -542,14 +805,14 @@ class FTPFileSystem extends FileSystem {
 
     FileStore getFileStore(FTPPath path) throws IOException {
         // call getFTPFile to check existence of the path
-        try (Client client = clientPool.get()) {
+        try (Client client = getClient()) {
             getFTPFile(client, path);
         }
         return fileStore;
     }
 
     void checkAccess(FTPPath path, AccessMode... modes) throws IOException {
-        try (Client client = clientPool.get()) {
+        try (Client client = getClient()) {
             FTPFile ftpFile = getFTPFile(client, path);
             for (AccessMode mode : modes) {
                 if (!hasAccess(ftpFile, mode)) {
@@ -574,11 +837,12 @@ class FTPFileSystem extends FileSystem {
 
     PosixFileAttributes readAttributes(FTPPath path, LinkOption... options) throws IOException {
         boolean followLinks = LinkOptionSupport.followLinks(options);
-        try (Client client = clientPool.get()) {
+        try (Client client = getClient()) {
             FTPPathAndFilePair pair = toRealPath(client, path, followLinks);
 
             // pair.ftpFile.getTimestamp() is most likely based on a too broad precision (day), so use mdtm to retrieve the timestamp (if available)
-            Calendar lastModified = client.mdtm(pair.ftpPath);
+            // that's not needed if the FTP file strategy returns exact timestamps
+            Calendar lastModified = ftpFileStrategy.hasExactTimestamps() ? null : client.mdtm(pair.ftpPath);
 
             // we need to call getLink unless followLinks is true, because for folders otherwise the data will not be accurate
             FTPFile link = followLinks ? null : getLink(client, pair.ftpFile, path);
@@ -812,13 +1076,18 @@ class FTPFileSystem extends FileSystem {
     }
 
     FTPFile getFTPFile(FTPPath path) throws IOException {
-        try (Client client = clientPool.get()) {
+        try (Client client = getClient()) {
             return getFTPFile(client, path);
         }
     }
 
     private FTPFile getFTPFile(Client client, FTPPath path) throws IOException {
-        return ftpFileStrategy.getFTPFile(client, path);
+        return withCapabilityProfile(client, path, () -> {
+            String cachePath = getMetadataCachePath(path);
+            return cachePath == null
+                    ? ftpFileStrategy.getFTPFile(client, path)
+                    : metadataCache.getFTPFile(cachePath, () -> ftpFileStrategy.getFTPFile(client, path));
+        });
     }
 
     private FTPFile findFTPFile(Client client, FTPPath path) throws IOException {
@@ -830,7 +1099,44 @@ class FTPFileSystem extends FileSystem {
     }
 
     private FTPFile getLink(Client client, FTPFile ftpFile, FTPPath path) throws IOException {
-        return ftpFileStrategy.getLink(client, ftpFile, path);
+        return withCapabilityProfile(client, path, () -> {
+            String cachePath = getMetadataCachePath(path);
+            return cachePath == null
+                    ? ftpFileStrategy.getLink(client, ftpFile, path)
+                    : metadataCache.getLink(cachePath, () -> ftpFileStrategy.getLink(client, ftpFile, path));
+        });
+    }
+
+    private List<FTPFile> getChildren(Client client, FTPPath path) throws IOException {
+        return withCapabilityProfile(client, path, () -> {
+            String cachePath = getMetadataCachePath(path);
+            return cachePath == null
+                    ? ftpFileStrategy.getChildren(client, path)
+                    : metadataCache.getChildren(cachePath, () -> ftpFileStrategy.getChildren(client, path));
+        });
+    }
+
+    // returns null if metadata is not cached, or if the path is not normalized
+    private String getMetadataCachePath(FTPPath path) {
+        if (metadataCache == null) {
+            return null;
+        }
+        // don't cache paths like /foo/../bar; they could not be invalidated reliably because foo may be a link
+        FTPPath absolutePath = toAbsolutePath(path);
+        return absolutePath.path().equals(absolutePath.normalize().path()) ? absolutePath.path() : null;
+    }
+
+    private void invalidateMetadata(FTPPath path) {
+        if (metadataCache == null) {
+            return;
+        }
+        FTPPath absolutePath = toAbsolutePath(path);
+        if (absolutePath.path().equals(absolutePath.normalize().path())) {
+            metadataCache.invalidate(absolutePath.path(), absolutePath.parentPath());
+        } else {
+            // the cached paths that are affected cannot be determined reliably
+            metadataCache.invalidateAll();
+        }
     }
 
     static String getFileName(FTPFile ftpFile) {
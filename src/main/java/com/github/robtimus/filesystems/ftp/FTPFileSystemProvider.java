@@ -23,6 +23,7 @@ import java.io.OutputStream;
 import java.net.URI;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.AccessMode;
+import java.nio.file.ClosedFileSystemException;
 import java.nio.file.CopyOption;
 import java.nio.file.DirectoryStream;
 import java.nio.file.DirectoryStream.Filter;
@@ -63,6 +64,7 @@ import com.github.robtimus.filesystems.URISupport;
 public class FTPFileSystemProvider extends FileSystemProvider {
 
     private final Map<URI, FTPFileSystem> fileSystems = new HashMap<>();
+    private final Map<String, ConnectionBudget> connectionBudgets = new HashMap<>();
 
     /**
      * Returns the URI scheme that identifies this provider: {@code ftp}.
@@ -108,6 +110,18 @@ public class FTPFileSystemProvider extends FileSystemProvider {
         return FTPEnvironment.wrap(env);
     }
 
+    ConnectionBudget getConnectionBudget(String hostname, int port, FTPEnvironment env) {
+        int limit = env.getHostConnectionBudget();
+        if (limit == 0) {
+            return null;
+        }
+        String host = port == -1 ? hostname : hostname + ":" + port; //$NON-NLS-1$
+        synchronized (connectionBudgets) {
+            // the first file system with a connection budget for the host determines its limit
+            return connectionBudgets.computeIfAbsent(host, k -> new ConnectionBudget(limit));
+        }
+    }
+
     /**
      * Returns an existing {@code FileSystem} created by this provider.
      * <p>
@@ -491,6 +505,42 @@ public class FTPFileSystemProvider extends FileSystemProvider {
         throw new ProviderMismatchException();
     }
 
+    /**
+     * Changes the client connection pool settings of an FTP file system, without closing it.
+     * Only the following settings of the given environment are applied; all other settings are ignored:
+     * <ul>
+     * <li>{@link FTPEnvironment#withClientConnectionCount(int) client connection count}</li>
+     * <li>{@link FTPEnvironment#withMinClientConnections(int) minimum number of client connections}</li>
+     * <li>{@link FTPEnvironment#withMaxClientConnections(int) maximum number of client connections}</li>
+     * <li>{@link FTPEnvironment#withClientConnectionWaitTimeout(long) client connection wait timeout}</li>
+     * <li>{@link FTPEnvironment#withClientConnectionIdleTimeout(long) client connection idle timeout}</li>
+     * <li>{@link FTPEnvironment#withClientConnectionKeepAliveInterval(long) client connection keep-alive interval}</li>
+     * </ul>
+     * Settings that are not present in the given environment keep their current value.
+     * <p>
+     * Client connections that are in use are not interrupted. If the maximum number of client connections is lowered, idle client connections
+     * are closed immediately, and client connections that are in use are closed when they are released. A new client connection wait timeout
+     * only applies to operations that start waiting for a client connection after this method returns.
+     * If the FTP file system {@link FTPEnvironment#withSharedClientPoolEnabled(boolean) shares} its client connection pool with other FTP file
+     * systems, the new settings apply to all of them.
+     *
+     * @param fs The FTP file system to change the client connection pool settings of.
+     * @param env The environment with the new settings.
+     * @throws NullPointerException If the given environment is {@code null}.
+     * @throws ProviderMismatchException If the given file system is not an FTP file system (not created by an {@code FTPFileSystemProvider}).
+     * @throws ClosedFileSystemException If the given file system is closed.
+     * @throws IOException If an I/O error occurred while closing idle client connections.
+     * @since 2.2
+     */
+    public static void reconfigure(FileSystem fs, Map<String, ?> env) throws IOException {
+        Objects.requireNonNull(env);
+        if (fs instanceof FTPFileSystem) {
+            ((FTPFileSystem) fs).reconfigure(env);
+            return;
+        }
+        throw new ProviderMismatchException();
+    }
+
     /**
      * Send a keep-alive signal for an FTP file system.
      *
@@ -52,12 +52,13 @@ final class FTPLogger {
         return BUNDLE.getString(key);
     }
 
-    public static void creatingPool(Logger logger, String hostname, int port, int poolSize, long poolWaitTimeout) {
+    public static void creatingPool(Logger logger, String hostname, int port, int minPoolSize, int maxPoolSize, long poolWaitTimeout) {
         if (logger != null && logger.isDebugEnabled()) {
             if (port == -1) {
-                logger.debug(String.format(getMessage("log.creatingPoolWithoutPort"), hostname, poolSize, poolWaitTimeout)); //$NON-NLS-1$
+                logger.debug(String.format(getMessage("log.creatingPoolWithoutPort"), hostname, minPoolSize, maxPoolSize, poolWaitTimeout)); //$NON-NLS-1$
             } else {
-                logger.debug(String.format(getMessage("log.creatingPoolWithPort"), hostname, port, poolSize, poolWaitTimeout)); //$NON-NLS-1$
+                logger.debug(String.format(getMessage("log.creatingPoolWithPort"), hostname, port, minPoolSize, maxPoolSize, //$NON-NLS-1$
+                        poolWaitTimeout));
             }
         }
     }
@@ -102,15 +103,135 @@ final class FTPLogger {
         }
     }
 
-    public static void returnedBrokenClient(Logger logger, String clientId, int poolSize) {
+    public static void releasedClientSpot(Logger logger, int poolSize) {
         if (logger != null && logger.isDebugEnabled()) {
-            logger.debug(String.format(getMessage("log.returnedBrokenClient"), clientId, poolSize)); //$NON-NLS-1$
+            logger.debug(String.format(getMessage("log.releasedClientSpot"), poolSize)); //$NON-NLS-1$
         }
     }
 
-    public static void drainedPoolForKeepAlive(Logger logger) {
+    public static void brokenClient(Logger logger, String clientId) {
         if (logger != null && logger.isDebugEnabled()) {
-            logger.debug(getMessage("log.drainedPoolForKeepAlive")); //$NON-NLS-1$
+            logger.debug(String.format(getMessage("log.brokenClient"), clientId)); //$NON-NLS-1$
+        }
+    }
+
+    public static void discardedBrokenClient(Logger logger, String clientId, int poolSize) {
+        if (logger != null && logger.isDebugEnabled()) {
+            logger.debug(String.format(getMessage("log.discardedBrokenClient"), clientId, poolSize)); //$NON-NLS-1$
+        }
+    }
+
+    public static void evictedIdleClient(Logger logger, String clientId, int poolSize) {
+        if (logger != null && logger.isDebugEnabled()) {
+            logger.debug(String.format(getMessage("log.evictedIdleClient"), clientId, poolSize)); //$NON-NLS-1$
+        }
+    }
+
+    public static void evictedOverflowClient(Logger logger, String clientId) {
+        if (logger != null && logger.isDebugEnabled()) {
+            logger.debug(String.format(getMessage("log.evictedOverflowClient"), clientId)); //$NON-NLS-1$
+        }
+    }
+
+    public static void failedEndpoint(Logger logger, String endpoint, int drainedClientCount) {
+        if (logger != null && logger.isDebugEnabled()) {
+            logger.debug(String.format(getMessage("log.failedEndpoint"), endpoint, drainedClientCount)); //$NON-NLS-1$
+        }
+    }
+
+    public static void leakedClient(Logger logger, String clientId, long heldTime, Exception origin) {
+        if (logger != null && logger.isDebugEnabled()) {
+            logger.debug(String.format(getMessage("log.leakedClient"), clientId, heldTime), origin); //$NON-NLS-1$
+        }
+    }
+
+    public static void reclaimedClient(Logger logger, String clientId) {
+        if (logger != null && logger.isDebugEnabled()) {
+            logger.debug(String.format(getMessage("log.reclaimedClient"), clientId)); //$NON-NLS-1$
+        }
+    }
+
+    public static void grewPoolSizeLimit(Logger logger, int sizeLimit, long waitTime) {
+        if (logger != null && logger.isDebugEnabled()) {
+            logger.debug(String.format(getMessage("log.grewPoolSizeLimit"), sizeLimit, waitTime)); //$NON-NLS-1$
+        }
+    }
+
+    public static void shrankPoolSizeLimit(Logger logger, int sizeLimit) {
+        if (logger != null && logger.isDebugEnabled()) {
+            logger.debug(String.format(getMessage("log.shrankPoolSizeLimit"), sizeLimit)); //$NON-NLS-1$
+        }
+    }
+
+    public static void reconfiguredPool(Logger logger, int minPoolSize, int maxPoolSize, long poolWaitTimeout) {
+        if (logger != null && logger.isDebugEnabled()) {
+            logger.debug(String.format(getMessage("log.reconfiguredPool"), minPoolSize, maxPoolSize, poolWaitTimeout)); //$NON-NLS-1$
+        }
+    }
+
+    public static void closedUnusedPool(Logger logger, int clientCount, long idleTime) {
+        if (logger != null && logger.isDebugEnabled()) {
+            logger.debug(String.format(getMessage("log.closedUnusedPool"), clientCount, idleTime)); //$NON-NLS-1$
+        }
+    }
+
+    public static void loweredConnectionLimit(Logger logger, int connectionLimit, int replyCode) {
+        if (logger != null && logger.isDebugEnabled()) {
+            logger.debug(String.format(getMessage("log.loweredConnectionLimit"), connectionLimit, replyCode)); //$NON-NLS-1$
+        }
+    }
+
+    public static void raisedConnectionLimit(Logger logger, int connectionLimit) {
+        if (logger != null && logger.isDebugEnabled()) {
+            logger.debug(String.format(getMessage("log.raisedConnectionLimit"), connectionLimit)); //$NON-NLS-1$
+        }
+    }
+
+    public static void openedConnectCircuit(Logger logger, String server, long backoff) {
+        if (logger != null && logger.isDebugEnabled()) {
+            logger.debug(String.format(getMessage("log.openedConnectCircuit"), server, backoff)); //$NON-NLS-1$
+        }
+    }
+
+    public static void closedConnectCircuit(Logger logger, String server) {
+        if (logger != null && logger.isDebugEnabled()) {
+            logger.debug(String.format(getMessage("log.closedConnectCircuit"), server)); //$NON-NLS-1$
+        }
+    }
+
+    public static void sslSessionCacheNotAccessible(Logger logger, String reason) {
+        if (logger != null && logger.isDebugEnabled()) {
+            logger.debug(String.format(getMessage("log.sslSessionCacheNotAccessible"), reason)); //$NON-NLS-1$
+        }
+    }
+
+    public static void usedCapabilityProfile(Logger logger, String key) {
+        if (logger != null && logger.isDebugEnabled()) {
+            logger.debug(String.format(getMessage("log.usedCapabilityProfile"), key)); //$NON-NLS-1$
+        }
+    }
+
+    public static void storedCapabilityProfile(Logger logger, String key) {
+        if (logger != null && logger.isDebugEnabled()) {
+            logger.debug(String.format(getMessage("log.storedCapabilityProfile"), key)); //$NON-NLS-1$
+        }
+    }
+
+    public static void failedToAccessCapabilityCache(Logger logger, String file, Exception e) {
+        if (logger != null && logger.isDebugEnabled()) {
+            logger.debug(String.format(getMessage("log.failedToAccessCapabilityCache"), file), e); //$NON-NLS-1$
+        }
+    }
+
+    public static void sentKeepAlive(Logger logger, String clientId) {
+        if (logger != null && logger.isDebugEnabled()) {
+            logger.debug(String.format(getMessage("log.sentKeepAlive"), clientId)); //$NON-NLS-1$
+        }
+    }
+
+    public static void failedToMaintainPool(Logger logger, IOException e) {
+        if (logger != null && logger.isDebugEnabled()) {
+            logger.debug(getMessage("log.failedToMaintainPool"), e); //$NON-NLS-1$
         }
     }
 
@@ -50,6 +50,14 @@ final class FTPMessages {
         return getMessage("autoDetectFileStrategyNotInitialized"); //$NON-NLS-1$
     }
 
+    public static String clientBorrowedHere(String clientId) {
+        return String.format(getMessage("clientBorrowedHere"), clientId); //$NON-NLS-1$
+    }
+
+    public static String connectCircuitOpen(int failureCount, long remainingBackoff) {
+        return String.format(getMessage("connectCircuitOpen"), failureCount, remainingBackoff); //$NON-NLS-1$
+    }
+
     public static String clientConnectionWaitTimeoutExpired() {
         return getMessage("clientConnectionWaitTimeoutExpired"); //$NON-NLS-1$
     }
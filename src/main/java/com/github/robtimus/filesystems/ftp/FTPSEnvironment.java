@@ -19,12 +19,15 @@ package com.github.robtimus.filesystems.ftp;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.net.URI;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.spi.FileSystemProvider;
 import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import javax.net.ServerSocketFactory;
@@ -34,11 +37,14 @@ import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManager;
 import org.apache.commons.net.ftp.FTPClient.HostnameResolver;
 import org.apache.commons.net.ftp.FTPClientConfig;
 import org.apache.commons.net.ftp.FTPSClient;
 import org.apache.commons.net.ftp.parser.FTPFileEntryParserFactory;
+import org.apache.commons.net.util.SSLContextUtils;
+import org.apache.commons.net.util.TrustManagerUtils;
 import com.github.robtimus.filesystems.FileSystemProviderSupport;
 
 /**
@@ -64,6 +70,13 @@ public class FTPSEnvironment extends FTPEnvironment {
     private static final String ENABLED_CIPHER_SUITES = "enabledCipherSuites"; //$NON-NLS-1$
     private static final String ENABLED_PROTOCOLS = "enabledProtocols"; //$NON-NLS-1$
     private static final String DATA_CHANNEL_PROTECTION_LEVEL = "dataChannelProtectionLevel"; //$NON-NLS-1$
+    private static final String SSL_SESSION_REUSE_ENABLED = "sslSessionReuseEnabled"; //$NON-NLS-1$
+    private static final String SSL_SESSION_CACHE_SIZE = "sslSessionCacheSize"; //$NON-NLS-1$
+
+    private static final String DEFAULT_PROTOCOL = "TLS"; //$NON-NLS-1$
+
+    // the SSL context that is shared by all clients created using this environment or its clones if SSL sessions are reused
+    private SharedSSLContext sharedSSLContext = new SharedSSLContext();
 
     /**
      * Creates a new FTPS environment.
@@ -95,6 +108,24 @@ public class FTPSEnvironment extends FTPEnvironment {
         return this;
     }
 
+    @Override
+    public FTPSEnvironment withAdditionalEndpoints(InetSocketAddress... endpoints) {
+        super.withAdditionalEndpoints(endpoints);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withEndpointRetryInterval(long interval) {
+        super.withEndpointRetryInterval(interval);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withEndpointRetryInterval(long duration, TimeUnit unit) {
+        super.withEndpointRetryInterval(duration, unit);
+        return this;
+    }
+
     @Override
     public FTPSEnvironment withCredentials(String username, char[] password) {
         super.withCredentials(username, password);
@@ -328,6 +359,108 @@ public class FTPSEnvironment extends FTPEnvironment {
         return this;
     }
 
+    @Override
+    public FTPSEnvironment withMinClientConnections(int count) {
+        super.withMinClientConnections(count);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withMaxClientConnections(int count) {
+        super.withMaxClientConnections(count);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withReservedMetadataClientConnections(int count) {
+        super.withReservedMetadataClientConnections(count);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withReservedTransferClientConnections(int count) {
+        super.withReservedTransferClientConnections(count);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withMaxOverflowClientConnections(int count) {
+        super.withMaxOverflowClientConnections(count);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withOverflowClientConnectionLingerTime(long lingerTime) {
+        super.withOverflowClientConnectionLingerTime(lingerTime);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withOverflowClientConnectionLingerTime(long duration, TimeUnit unit) {
+        super.withOverflowClientConnectionLingerTime(duration, unit);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withMaxConcurrentClientConnects(int count) {
+        super.withMaxConcurrentClientConnects(count);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withClientConnectionIdleTimeout(long timeout) {
+        super.withClientConnectionIdleTimeout(timeout);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withClientConnectionIdleTimeout(long duration, TimeUnit unit) {
+        super.withClientConnectionIdleTimeout(duration, unit);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withClientConnectionMaintenanceInterval(long interval) {
+        super.withClientConnectionMaintenanceInterval(interval);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withClientConnectionMaintenanceInterval(long duration, TimeUnit unit) {
+        super.withClientConnectionMaintenanceInterval(duration, unit);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withClientConnectionKeepAliveInterval(long interval) {
+        super.withClientConnectionKeepAliveInterval(interval);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withClientConnectionKeepAliveInterval(long duration, TimeUnit unit) {
+        super.withClientConnectionKeepAliveInterval(duration, unit);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withClientValidationPolicy(ClientValidationPolicy policy) {
+        super.withClientValidationPolicy(policy);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withClientValidationIdleTime(long time) {
+        super.withClientValidationIdleTime(time);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withClientValidationIdleTime(long duration, TimeUnit unit) {
+        super.withClientValidationIdleTime(duration, unit);
+        return this;
+    }
+
     @Override
     public FTPSEnvironment withClientConnectionWaitTimeout(long timeout) {
         super.withClientConnectionWaitTimeout(timeout);
@@ -340,6 +473,174 @@ public class FTPSEnvironment extends FTPEnvironment {
         return this;
     }
 
+    @Override
+    public FTPSEnvironment withClientLeakDetectionThreshold(long threshold) {
+        super.withClientLeakDetectionThreshold(threshold);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withClientLeakDetectionThreshold(long duration, TimeUnit unit) {
+        super.withClientLeakDetectionThreshold(duration, unit);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withAbandonedStreamReclaimEnabled(boolean enabled) {
+        super.withAbandonedStreamReclaimEnabled(enabled);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withTargetBorrowWaitTime(long waitTime) {
+        super.withTargetBorrowWaitTime(waitTime);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withTargetBorrowWaitTime(long duration, TimeUnit unit) {
+        super.withTargetBorrowWaitTime(duration, unit);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withConnectionLimitLearningEnabled(boolean enabled) {
+        super.withConnectionLimitLearningEnabled(enabled);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withConnectionLimitRecoveryInterval(long interval) {
+        super.withConnectionLimitRecoveryInterval(interval);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withConnectionLimitRecoveryInterval(long duration, TimeUnit unit) {
+        super.withConnectionLimitRecoveryInterval(duration, unit);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withConnectFailureThreshold(int threshold) {
+        super.withConnectFailureThreshold(threshold);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withConnectFailureBackoff(long backoff) {
+        super.withConnectFailureBackoff(backoff);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withConnectFailureBackoff(long duration, TimeUnit unit) {
+        super.withConnectFailureBackoff(duration, unit);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withMaxConnectFailureBackoff(long backoff) {
+        super.withMaxConnectFailureBackoff(backoff);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withMaxConnectFailureBackoff(long duration, TimeUnit unit) {
+        super.withMaxConnectFailureBackoff(duration, unit);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withClientPoolMXBeanEnabled(boolean enabled) {
+        super.withClientPoolMXBeanEnabled(enabled);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withSharedClientPoolEnabled(boolean enabled) {
+        super.withSharedClientPoolEnabled(enabled);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withHostConnectionBudget(int budget) {
+        super.withHostConnectionBudget(budget);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withConnectionBudgetWeight(int weight) {
+        super.withConnectionBudgetWeight(weight);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withFileSystemIdleTimeout(long timeout) {
+        super.withFileSystemIdleTimeout(timeout);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withFileSystemIdleTimeout(long duration, TimeUnit unit) {
+        super.withFileSystemIdleTimeout(duration, unit);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withLazyInitializationEnabled(boolean enabled) {
+        super.withLazyInitializationEnabled(enabled);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withCapabilityCacheFile(Path file) {
+        super.withCapabilityCacheFile(file);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withCapabilityCacheMaxAge(long maxAge) {
+        super.withCapabilityCacheMaxAge(maxAge);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withCapabilityCacheMaxAge(long duration, TimeUnit unit) {
+        super.withCapabilityCacheMaxAge(duration, unit);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withMetadataCacheTimeToLive(long timeToLive) {
+        super.withMetadataCacheTimeToLive(timeToLive);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withMetadataCacheTimeToLive(long duration, TimeUnit unit) {
+        super.withMetadataCacheTimeToLive(duration, unit);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withMetadataCacheMaxEntries(int maxEntries) {
+        super.withMetadataCacheMaxEntries(maxEntries);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withMissingFileCacheTimeToLive(long timeToLive) {
+        super.withMissingFileCacheTimeToLive(timeToLive);
+        return this;
+    }
+
+    @Override
+    public FTPSEnvironment withMissingFileCacheTimeToLive(long duration, TimeUnit unit) {
+        super.withMissingFileCacheTimeToLive(duration, unit);
+        return this;
+    }
+
     @Override
     public FTPSEnvironment withFileSystemExceptionFactory(FileSystemExceptionFactory factory) {
         super.withFileSystemExceptionFactory(factory);
@@ -535,6 +836,44 @@ public class FTPSEnvironment extends FTPEnvironment {
         return this;
     }
 
+    /**
+     * Stores whether or not SSL sessions should be reused.
+     * If enabled, all client connections of an FTPS file system use the same SSL context, and therefore the same SSL session cache.
+     * This allows new client connections to resume an existing SSL session instead of performing a full handshake.
+     * In addition, data connections resume the SSL session of their control connection, which some FTPS servers require.
+     * This is a best-effort attempt that depends on internals of the JSSE implementation; if these are not accessible, data connections
+     * perform a full handshake instead. On Java 16 and up, these internals are only accessible if packages {@code sun.security.ssl} and
+     * {@code sun.security.util} of module {@code java.base} are opened to this library, for instance using
+     * {@code --add-opens java.base/sun.security.ssl=ALL-UNNAMED --add-opens java.base/sun.security.util=ALL-UNNAMED}.
+     * <p>
+     * If this value is not set, it defaults to {@code false}.
+     *
+     * @param enabled {@code true} if SSL sessions should be reused, or {@code false} otherwise.
+     * @return This object.
+     * @see #withSSLSessionCacheSize(int)
+     * @since 2.2
+     */
+    public FTPSEnvironment withSSLSessionReuseEnabled(boolean enabled) {
+        put(SSL_SESSION_REUSE_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Stores the maximum number of SSL sessions to cache if {@link #withSSLSessionReuseEnabled(boolean) SSL sessions are reused}.
+     * <p>
+     * If this value is not set, the default of the SSL context is used.
+     * This value is ignored if an {@link #withSSLContext(SSLContext) SSLContext} is stored; its session cache is left unchanged.
+     *
+     * @param size The maximum number of SSL sessions to cache, or {@code 0} for no limit.
+     * @return This object.
+     * @see SSLSessionContext#setSessionCacheSize(int)
+     * @since 2.2
+     */
+    public FTPSEnvironment withSSLSessionCacheSize(int size) {
+        put(SSL_SESSION_CACHE_SIZE, size);
+        return this;
+    }
+
     @Override
     FTPSClient createClient(String hostname, int port) throws IOException {
         SecurityMode securityMode = FileSystemProviderSupport.getValue(this, SECURITY_MODE, SecurityMode.class, SecurityMode.EXPLICIT);
@@ -542,7 +881,9 @@ public class FTPSEnvironment extends FTPEnvironment {
         SSLContext context = FileSystemProviderSupport.getValue(this, SSL_CONTEXT, SSLContext.class, null);
 
         FTPSClient client;
-        if (context == null) {
+        if (isSSLSessionReuseEnabled()) {
+            client = new SSLSessionReusingFTPSClient(isImplicit, getSharedSSLContext());
+        } else if (context == null) {
             String protocol = FileSystemProviderSupport.getValue(this, PROTOCOL, String.class, null);
             if (protocol == null) {
                 client = new FTPSClient(isImplicit);
@@ -559,6 +900,40 @@ public class FTPSEnvironment extends FTPEnvironment {
         return client;
     }
 
+    boolean isSSLSessionReuseEnabled() {
+        return FileSystemProviderSupport.getBooleanValue(this, SSL_SESSION_REUSE_ENABLED, false);
+    }
+
+    synchronized SSLContext getSharedSSLContext() throws IOException {
+        List<Object> settings = Arrays.asList(get(SSL_CONTEXT), get(PROTOCOL), get(KEY_MANAGER), get(TRUST_MANAGER), get(SSL_SESSION_CACHE_SIZE));
+        SSLContext context = sharedSSLContext.get(this, settings);
+        if (context == null) {
+            // the SSL settings were changed after this environment was cloned, so the SSL context cannot be shared with the original
+            sharedSSLContext = new SharedSSLContext();
+            context = sharedSSLContext.get(this, settings);
+        }
+        return context;
+    }
+
+    private SSLContext createSharedSSLContext() throws IOException {
+        SSLContext context = FileSystemProviderSupport.getValue(this, SSL_CONTEXT, SSLContext.class, null);
+        if (context != null) {
+            // the SSL context is owned by the caller, so don't change its session cache
+            return context;
+        }
+        // create the SSL context the same way FTPSClient would
+        String protocol = FileSystemProviderSupport.getValue(this, PROTOCOL, String.class, DEFAULT_PROTOCOL);
+        KeyManager keyManager = FileSystemProviderSupport.getValue(this, KEY_MANAGER, KeyManager.class, null);
+        TrustManager trustManager = FileSystemProviderSupport.getValue(this, TRUST_MANAGER, TrustManager.class,
+                TrustManagerUtils.getValidateServerCertificateTrustManager());
+        context = SSLContextUtils.createSSLContext(protocol, keyManager, trustManager);
+        if (containsKey(SSL_SESSION_CACHE_SIZE)) {
+            int size = FileSystemProviderSupport.getIntValue(this, SSL_SESSION_CACHE_SIZE);
+            context.getClientSessionContext().setSessionCacheSize(Math.max(0, size));
+        }
+        return context;
+    }
+
     void initializePreConnect(FTPSClient client) throws IOException {
         super.initializePreConnect(client);
 
@@ -626,4 +1001,19 @@ public class FTPSEnvironment extends FTPEnvironment {
     public FTPSEnvironment clone() {
         return (FTPSEnvironment) super.clone();
     }
+
+    private static final class SharedSSLContext {
+
+        // the settings the SSL context was created from
+        private List<Object> settings;
+        private SSLContext context;
+
+        private synchronized SSLContext get(FTPSEnvironment env, List<Object> currentSettings) throws IOException {
+            if (context == null) {
+                context = env.createSharedSSLContext();
+                settings = currentSettings;
+            }
+            return settings.equals(currentSettings) ? context : null;
+        }
+    }
 }
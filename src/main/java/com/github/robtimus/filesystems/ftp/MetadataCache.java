@@ -0,0 +1,211 @@
+/*
+ * MetadataCache.java
+ * Copyright 2020 Rob Spoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.robtimus.filesystems.ftp;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.net.ftp.FTPFile;
+
+/**
+ * A cache of the results of an {@link FTPFileStrategy}, for one FTP file system.
+ * Results are kept until they are older than the time to live, or until the maximum number of entries is exceeded; in that case, the least
+ * recently used entry is removed. Entries are invalidated when the FTP file system itself modifies a path; modifications by other clients of
+ * the FTP server are only noticed after the time to live has passed.
+ * <p>
+ * Paths that do not exist can be cached as well, with a separate time to live. For these, a new {@link NoSuchFileException} is thrown each time.
+ * <p>
+ * Paths are absolute paths. Each path can have an entry for its FTP file, its link and its children.
+ *
+ * @author Rob Spoor
+ */
+final class MetadataCache {
+
+    private final long timeToLive;
+    private final long missingFileTimeToLive;
+
+    // all fields below are guarded by this
+    private final Map<Key, Entry> entries;
+    // incremented with each invalidation, so results that were retrieved before an invalidation are not stored afterwards
+    private long generation = 0;
+
+    /**
+     * Creates a new metadata cache.
+     *
+     * @param timeToLive The time to live of entries in milliseconds, or {@code 0} to not cache existing paths.
+     * @param missingFileTimeToLive The time to live of entries for paths that do not exist in milliseconds, or {@code 0} to not cache these.
+     * @param maxEntries The maximum number of entries.
+     */
+    MetadataCache(long timeToLive, long missingFileTimeToLive, final int maxEntries) {
+        this.timeToLive = TimeUnit.MILLISECONDS.toNanos(timeToLive);
+        this.missingFileTimeToLive = TimeUnit.MILLISECONDS.toNanos(missingFileTimeToLive);
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75F, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    FTPFile getFTPFile(String path, Loader<FTPFile> loader) throws IOException {
+        return get(new Key(Kind.FILE, path), loader);
+    }
+
+    FTPFile getLink(String path, Loader<FTPFile> loader) throws IOException {
+        return get(new Key(Kind.LINK, path), loader);
+    }
+
+    List<FTPFile> getChildren(String path, Loader<List<FTPFile>> loader) throws IOException {
+        return get(new Key(Kind.CHILDREN, path), () -> Collections.unmodifiableList(loader.load()));
+    }
+
+    private <T> T get(Key key, Loader<T> loader) throws IOException {
+        long loadGeneration;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expires - System.nanoTime() > 0) {
+                    @SuppressWarnings("unchecked")
+                    T value = (T) entry.value();
+                    return value;
+                }
+                entries.remove(key);
+            }
+            loadGeneration = generation;
+        }
+        // don't hold the lock while communicating with the FTP server
+        try {
+            T value = loader.load();
+            put(key, value, null, timeToLive, loadGeneration);
+            return value;
+        } catch (NoSuchFileException e) {
+            put(key, null, e, missingFileTimeToLive, loadGeneration);
+            throw e;
+        }
+    }
+
+    private synchronized void put(Key key, Object value, NoSuchFileException exception, long ttl, long loadGeneration) {
+        if (ttl > 0 && loadGeneration == generation) {
+            entries.put(key, new Entry(value, exception, System.nanoTime() + ttl));
+        }
+    }
+
+    /**
+     * Invalidates all entries that are affected by a modification of a path: the entries for the path itself, for its descendants, and for its
+     * parent, if any.
+     *
+     * @param path The modified path.
+     * @param parentPath The parent path of the modified path, or {@code null} if the modified path has no parent.
+     */
+    synchronized void invalidate(String path, String parentPath) {
+        generation++;
+        String prefix = path.endsWith("/") ? path : path + "/"; //$NON-NLS-1$ //$NON-NLS-2$
+        for (Iterator<Key> i = entries.keySet().iterator(); i.hasNext(); ) {
+            String entryPath = i.next().path;
+            if (entryPath.equals(path) || entryPath.startsWith(prefix) || entryPath.equals(parentPath)) {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Invalidates all entries.
+     */
+    synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    interface Loader<T> {
+
+        T load() throws IOException;
+    }
+
+    private enum Kind {
+        FILE,
+        LINK,
+        CHILDREN,
+    }
+
+    private static final class Key {
+
+        private final Kind kind;
+        private final String path;
+
+        private Key(Kind kind, String path) {
+            this.kind = kind;
+            this.path = path;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || o.getClass() != getClass()) {
+                return false;
+            }
+            Key other = (Key) o;
+            return kind == other.kind && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, path);
+        }
+    }
+
+    private static final class Entry {
+
+        private final Object value;
+        private final NoSuchFileException exception;
+        private final long expires;
+
+        private Entry(Object value, NoSuchFileException exception, long expires) {
+            this.value = value;
+            this.exception = exception;
+            this.expires = expires;
+        }
+
+        private Object value() throws NoSuchFileException {
+            if (exception == null) {
+                return value;
+            }
+            // throw a new exception each time; thrown exceptions can get suppressed exceptions added to them
+            if (exception instanceof FTPNoSuchFileException) {
+                FTPNoSuchFileException ftpException = (FTPNoSuchFileException) exception;
+                throw new FTPNoSuchFileException(ftpException.getFile(), ftpException.getOtherFile(), ftpException.getReplyCode(),
+                        ftpException.getReplyString());
+            }
+            throw new NoSuchFileException(exception.getFile(), exception.getOtherFile(), exception.getReason());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * SSLSessionReusingFTPSClient.java
+ * Copyright 2020 Rob Spoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.robtimus.filesystems.ftp;
+
+import static com.github.robtimus.filesystems.ftp.FTPLogger.createLogger;
+import static com.github.robtimus.filesystems.ftp.FTPLogger.sslSessionCacheNotAccessible;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.util.Locale;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import org.apache.commons.net.ftp.FTPSClient;
+import org.slf4j.Logger;
+
+/**
+ * An FTPS client that lets data connections resume the SSL session of the control connection.
+ * <p>
+ * The JSSE implementation only resumes SSL sessions for the same host and port, and data connections use a different port than the control
+ * connection. Before the handshake of a data connection is started, the SSL session of the control connection is therefore added to the
+ * session cache for the host and port of the data connection. The session cache is not part of the public API, so this is done using
+ * reflection. If that fails, data connections perform a full handshake.
+ *
+ * @author Rob Spoor
+ */
+final class SSLSessionReusingFTPSClient extends FTPSClient {
+
+    private static final Logger LOGGER = createLogger(SSLSessionReusingFTPSClient.class);
+
+    // once the session cache turns out not to be accessible, there is no need to try again
+    private static volatile boolean sessionCacheAccessible = true;
+
+    SSLSessionReusingFTPSClient(boolean isImplicit, SSLContext context) {
+        super(isImplicit, context);
+    }
+
+    @Override
+    protected void _prepareDataSocket_(Socket socket) throws IOException {
+        super._prepareDataSocket_(socket);
+
+        shareSession(_socket_, socket);
+    }
+
+    static void shareSession(Socket controlSocket, Socket dataSocket) {
+        if (sessionCacheAccessible && dataSocket instanceof SSLSocket && controlSocket instanceof SSLSocket) {
+            SSLSession session = ((SSLSocket) controlSocket).getSession();
+            if (session.isValid()) {
+                // the data socket is already connected, so its host is its address unless the JSSE implementation trusts the name service
+                cacheSession(session, dataSocket.getInetAddress().getHostAddress(), dataSocket.getPort());
+            }
+        }
+    }
+
+    private static void cacheSession(SSLSession session, String host, int port) {
+        SSLSessionContext context = session.getSessionContext();
+        if (context == null) {
+            return;
+        }
+        try {
+            Field cacheField = context.getClass().getDeclaredField("sessionHostPortCache"); //$NON-NLS-1$
+            cacheField.setAccessible(true);
+            Object cache = cacheField.get(context);
+
+            Method putMethod = cache.getClass().getDeclaredMethod("put", Object.class, Object.class); //$NON-NLS-1$
+            putMethod.setAccessible(true);
+            putMethod.invoke(cache, (host + ":" + port).toLowerCase(Locale.ENGLISH), session); //$NON-NLS-1$
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // RuntimeException includes InaccessibleObjectException, thrown if the java.base module does not open sun.security.ssl and
+            // sun.security.util
+            sessionCacheAccessible = false;
+            sslSessionCacheNotAccessible(LOGGER, e.toString());
+        }
+    }
+}
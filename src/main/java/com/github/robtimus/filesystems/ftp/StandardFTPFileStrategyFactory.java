@@ -39,6 +39,27 @@ public enum StandardFTPFileStrategyFactory implements FTPFileStrategyFactory {
      * An {@link FTPFileStrategy} factory that delegates to {@link FTPFileStrategy#autoDetect()}.
      */
     AUTO_DETECT(FTPFileStrategy::autoDetect),
+
+    /**
+     * An {@link FTPFileStrategy} factory that delegates to {@link FTPFileStrategy#mlsd()}.
+     *
+     * @since 2.2
+     */
+    MLSD(FTPFileStrategy::mlsd),
+
+    /**
+     * An {@link FTPFileStrategy} factory that delegates to {@link FTPFileStrategy#unixUsingStat()}.
+     *
+     * @since 2.2
+     */
+    UNIX_STAT(FTPFileStrategy::unixUsingStat),
+
+    /**
+     * An {@link FTPFileStrategy} factory that delegates to {@link FTPFileStrategy#nonUnixUsingStat()}.
+     *
+     * @since 2.2
+     */
+    NON_UNIX_STAT(FTPFileStrategy::nonUnixUsingStat),
     ;
 
     private final FTPFileStrategyFactory delegate;
@@ -0,0 +1,78 @@
+/*
+ * WaitTimeHistogram.java
+ * Copyright 2020 Rob Spoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.robtimus.filesystems.ftp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of wait times. Wait times are recorded in buckets that double in size, starting at one microsecond.
+ * Percentiles are therefore approximations; they are reported as the upper bound of the bucket they fall in.
+ *
+ * @author Rob Spoor
+ */
+final class WaitTimeHistogram {
+
+    // bucket i contains wait times up to 2^i microseconds; the last bucket contains all longer wait times
+    private static final int BUCKET_COUNT = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+        buckets.incrementAndGet(bucketIndex(micros));
+        count.incrementAndGet();
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    private static int bucketIndex(long micros) {
+        if (micros <= 1) {
+            return 0;
+        }
+        // the number of bits needed to represent micros - 1 is the exponent of the smallest power of 2 that is at least micros
+        int index = Long.SIZE - Long.numberOfLeadingZeros(micros - 1);
+        return Math.min(index, BUCKET_COUNT - 1);
+    }
+
+    long count() {
+        return count.get();
+    }
+
+    long maxNanos() {
+        return max.get();
+    }
+
+    long percentileNanos(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT - 1; i++) {
+            seen += buckets.get(i);
+            if (seen >= threshold) {
+                return Math.min(TimeUnit.MICROSECONDS.toNanos(1L << i), max.get());
+            }
+        }
+        return max.get();
+    }
+}
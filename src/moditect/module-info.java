@@ -1,5 +1,6 @@
 module com.github.robtimus.filesystems.ftp {
     requires com.github.robtimus.filesystems;
+    requires java.management;
     requires transitive org.apache.commons.net;
     requires static org.slf4j;
 
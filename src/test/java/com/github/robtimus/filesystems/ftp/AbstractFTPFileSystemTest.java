@@ -17,7 +17,9 @@
 
 package com.github.robtimus.filesystems.ftp;
 
+import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.NON_UNIX_STAT;
 import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.UNIX;
+import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.UNIX_STAT;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.mockito.Mockito.spy;
@@ -37,6 +39,7 @@ import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
+import org.mockftpserver.core.command.CommandHandler;
 import org.mockftpserver.fake.FakeFtpServer;
 import org.mockftpserver.fake.UserAccount;
 import org.mockftpserver.fake.filesystem.DirectoryEntry;
@@ -47,6 +50,9 @@ import org.mockftpserver.fake.filesystem.UnixFakeFileSystem;
 import com.github.robtimus.filesystems.ftp.server.ExtendedUnixFakeFileSystem;
 import com.github.robtimus.filesystems.ftp.server.ListHiddenFilesCommandHandler;
 import com.github.robtimus.filesystems.ftp.server.MDTMCommandHandler;
+import com.github.robtimus.filesystems.ftp.server.MLSDCommandHandler;
+import com.github.robtimus.filesystems.ftp.server.MLSTCommandHandler;
+import com.github.robtimus.filesystems.ftp.server.STATCommandHandler;
 import com.github.robtimus.filesystems.ftp.server.SymbolicLinkEntry;
 
 @SuppressWarnings("nls")
@@ -98,8 +104,12 @@ abstract class AbstractFTPFileSystemTest {
 
         unixFtpServer.setCommandHandler("LIST", new ListHiddenFilesCommandHandler(true));
         unixFtpServer.setCommandHandler("MDTM", new MDTMCommandHandler());
+        unixFtpServer.setCommandHandler("MLSD", new MLSDCommandHandler());
+        unixFtpServer.setCommandHandler("MLST", new MLSTCommandHandler());
         nonUnixFtpServer.setCommandHandler("LIST", new ListHiddenFilesCommandHandler(false));
         nonUnixFtpServer.setCommandHandler("MDTM", new MDTMCommandHandler());
+        unixFtpServer.setCommandHandler("STAT", new STATCommandHandler(true));
+        nonUnixFtpServer.setCommandHandler("STAT", new STATCommandHandler(false));
 
         unixFtpServer.start();
         nonUnixFtpServer.start();
@@ -188,7 +198,11 @@ abstract class AbstractFTPFileSystemTest {
     }
 
     protected final boolean usesUnixFTPFileStrategyFactory() {
-        return ftpFileStrategyFactory == UNIX;
+        return ftpFileStrategyFactory == UNIX || ftpFileStrategyFactory == UNIX_STAT;
+    }
+
+    protected final boolean usesStatFTPFileStrategyFactory() {
+        return ftpFileStrategyFactory == UNIX_STAT || ftpFileStrategyFactory == NON_UNIX_STAT;
     }
 
     protected final String getBaseUrl() {
@@ -201,6 +215,13 @@ abstract class AbstractFTPFileSystemTest {
         return URI.create("ftp://localhost:" + ftpServer.getServerControlPort());
     }
 
+    protected final CommandHandler setCommandHandler(String command, CommandHandler commandHandler) {
+        FakeFtpServer ftpServer = useUnixFtpServer ? unixFtpServer : nonUnixFtpServer;
+        CommandHandler oldCommandHandler = ftpServer.getCommandHandler(command);
+        ftpServer.setCommandHandler(command, commandHandler);
+        return oldCommandHandler;
+    }
+
     protected final FTPPath createPath(String path) {
         return new FTPPath(fileSystem, path);
     }
@@ -0,0 +1,114 @@
+/*
+ * CapabilityCacheTest.java
+ * Copyright 2020 Rob Spoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.robtimus.filesystems.ftp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import com.github.robtimus.filesystems.ftp.CapabilityCache.Profile;
+
+class CapabilityCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testForFile() {
+        Path file = tempDir.resolve("capabilities.properties");
+
+        assertSame(CapabilityCache.forFile(file), CapabilityCache.forFile(tempDir.resolve("dir/../capabilities.properties")));
+    }
+
+    @Test
+    void testPutAndGet() {
+        Path file = tempDir.resolve("dir/capabilities.properties");
+        CapabilityCache cache = CapabilityCache.forFile(file);
+
+        assertNull(cache.get("ftp://user@localhost:21", 0));
+
+        cache.put("ftp://user@localhost:21", new Profile("UNIX", "UNIX Type: L8", "/home/user"));
+        cache.put("ftp://user@localhost:21/pub", new Profile(null, null, "/pub"));
+
+        assertTrue(Files.isRegularFile(file));
+
+        Profile profile = cache.get("ftp://user@localhost:21", 0);
+        assertNotNull(profile);
+        assertEquals("UNIX", profile.strategy());
+        assertEquals("UNIX Type: L8", profile.systemType());
+        assertEquals("/home/user", profile.defaultDirectory());
+
+        profile = cache.get("ftp://user@localhost:21/pub", 0);
+        assertNotNull(profile);
+        assertNull(profile.strategy());
+        assertNull(profile.systemType());
+        assertEquals("/pub", profile.defaultDirectory());
+
+        assertNull(cache.get("ftp://other@localhost:21", 0));
+    }
+
+    @Test
+    void testMaxAge() throws InterruptedException {
+        CapabilityCache cache = CapabilityCache.forFile(tempDir.resolve("capabilities.properties"));
+
+        cache.put("ftp://user@localhost:21", new Profile("UNIX", "UNIX Type: L8", "/home/user"));
+
+        assertNotNull(cache.get("ftp://user@localhost:21", TimeUnit.MINUTES.toMillis(1)));
+
+        Thread.sleep(50);
+
+        assertNull(cache.get("ftp://user@localhost:21", 10));
+        // a max age of 0 means never expire
+        assertNotNull(cache.get("ftp://user@localhost:21", 0));
+    }
+
+    @Test
+    void testInvalidFile() throws IOException {
+        Path file = tempDir.resolve("capabilities.properties");
+        // an invalid unicode escape
+        Files.write(file, Collections.singleton("ftp\\://user@localhost\\:21.defaultDirectory=\\uXYZW"), StandardCharsets.ISO_8859_1);
+        CapabilityCache cache = CapabilityCache.forFile(file);
+
+        assertNull(cache.get("ftp://user@localhost:21", 0));
+
+        // the invalid file is replaced
+        cache.put("ftp://user@localhost:21", new Profile("UNIX", "UNIX Type: L8", "/home/user"));
+        assertNotNull(cache.get("ftp://user@localhost:21", 0));
+    }
+
+    @Test
+    void testStoredByOtherInstance() throws IOException {
+        Path file = tempDir.resolve("capabilities.properties");
+        Files.write(file, Collections.singleton("ftp\\://user@localhost\\:21.defaultDirectory=/home/user\n"
+                + "ftp\\://user@localhost\\:21.stored=" + System.currentTimeMillis()), StandardCharsets.ISO_8859_1);
+        CapabilityCache cache = CapabilityCache.forFile(file);
+
+        Profile profile = cache.get("ftp://user@localhost:21", 0);
+        assertNotNull(profile);
+        assertEquals("/home/user", profile.defaultDirectory());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * ConnectCircuitBreakerTest.java
+ * Copyright 2020 Rob Spoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.robtimus.filesystems.ftp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.net.ConnectException;
+import org.junit.jupiter.api.Test;
+
+class ConnectCircuitBreakerTest {
+
+    @Test
+    void testDisabled() throws ConnectException {
+        ConnectCircuitBreaker circuitBreaker = new ConnectCircuitBreaker(new FTPEnvironment());
+
+        for (int i = 0; i < 10; i++) {
+            circuitBreaker.acquire();
+            assertEquals(-1, circuitBreaker.failed());
+        }
+        assertFalse(circuitBreaker.isOpen());
+    }
+
+    @Test
+    void testOpensAfterThreshold() throws ConnectException {
+        ConnectCircuitBreaker circuitBreaker = createCircuitBreaker();
+
+        circuitBreaker.acquire();
+        assertEquals(-1, circuitBreaker.failed());
+        circuitBreaker.acquire();
+        assertEquals(-1, circuitBreaker.failed());
+        circuitBreaker.acquire();
+        assertEquals(100, circuitBreaker.failed());
+
+        assertTrue(circuitBreaker.isOpen());
+        assertThrows(ConnectException.class, circuitBreaker::acquire);
+    }
+
+    @Test
+    void testSuccessResetsFailureCount() throws ConnectException {
+        ConnectCircuitBreaker circuitBreaker = createCircuitBreaker();
+
+        circuitBreaker.acquire();
+        circuitBreaker.failed();
+        circuitBreaker.acquire();
+        circuitBreaker.failed();
+        circuitBreaker.acquire();
+        assertFalse(circuitBreaker.succeeded());
+
+        circuitBreaker.acquire();
+        assertEquals(-1, circuitBreaker.failed());
+        assertFalse(circuitBreaker.isOpen());
+    }
+
+    @Test
+    void testSingleProbeAfterBackoff() throws Exception {
+        ConnectCircuitBreaker circuitBreaker = createCircuitBreaker();
+        open(circuitBreaker);
+
+        Thread.sleep(200);
+
+        // only one attempt is let through
+        circuitBreaker.acquire();
+        assertThrows(ConnectException.class, circuitBreaker::acquire);
+
+        assertTrue(circuitBreaker.succeeded());
+        assertFalse(circuitBreaker.isOpen());
+        circuitBreaker.acquire();
+    }
+
+    @Test
+    void testExponentialBackoff() throws Exception {
+        ConnectCircuitBreaker circuitBreaker = createCircuitBreaker();
+        open(circuitBreaker);
+
+        Thread.sleep(150);
+        circuitBreaker.acquire();
+        assertEquals(200, circuitBreaker.failed());
+        assertThrows(ConnectException.class, circuitBreaker::acquire);
+
+        Thread.sleep(250);
+        circuitBreaker.acquire();
+        // capped at the maximum backoff
+        assertEquals(300, circuitBreaker.failed());
+
+        Thread.sleep(350);
+        circuitBreaker.acquire();
+        assertEquals(300, circuitBreaker.failed());
+    }
+
+    @Test
+    void testLateFailureDoesNotExtendBackoff() throws ConnectException {
+        ConnectCircuitBreaker circuitBreaker = createCircuitBreaker();
+        // an attempt that is started before the circuit opens
+        circuitBreaker.acquire();
+        open(circuitBreaker);
+
+        assertEquals(-1, circuitBreaker.failed());
+    }
+
+    private ConnectCircuitBreaker createCircuitBreaker() {
+        FTPEnvironment env = new FTPEnvironment()
+                .withConnectFailureThreshold(3)
+                .withConnectFailureBackoff(100)
+                .withMaxConnectFailureBackoff(300);
+        return new ConnectCircuitBreaker(env);
+    }
+
+    private void open(ConnectCircuitBreaker circuitBreaker) throws ConnectException {
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.acquire();
+            circuitBreaker.failed();
+        }
+        assertTrue(circuitBreaker.isOpen());
+    }
+}
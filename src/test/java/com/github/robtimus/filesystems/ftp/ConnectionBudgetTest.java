@@ -0,0 +1,133 @@
+/*
+ * ConnectionBudgetTest.java
+ * Copyright 2020 Rob Spoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.robtimus.filesystems.ftp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import com.github.robtimus.filesystems.ftp.ConnectionBudget.Member;
+
+class ConnectionBudgetTest {
+
+    @Test
+    void testTimeout() throws IOException {
+        ConnectionBudget budget = new ConnectionBudget(1);
+        Member member = budget.register(1, () -> false);
+
+        member.acquire(0);
+        assertThrows(IOException.class, () -> member.acquire(100));
+        assertEquals(1, budget.used());
+
+        member.release();
+        member.acquire(100);
+    }
+
+    @Test
+    void testTryAcquire() throws IOException {
+        ConnectionBudget budget = new ConnectionBudget(1);
+        Member member = budget.register(1, () -> false);
+
+        assertTrue(member.tryAcquire());
+        // doesn't wait
+        assertFalse(member.tryAcquire());
+        assertEquals(1, budget.used());
+
+        member.release();
+        assertTrue(member.tryAcquire());
+    }
+
+    @Test
+    void testLowestWeightedUsageIsServedFirst() throws Exception {
+        ConnectionBudget budget = new ConnectionBudget(3);
+        Member heavy = budget.register(1, () -> false);
+        Member light = budget.register(2, () -> false);
+
+        heavy.acquire(0);
+        heavy.acquire(0);
+        light.acquire(0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> heavyFuture = executor.submit(() -> acquire(heavy));
+            Future<?> lightFuture = executor.submit(() -> acquire(light));
+            Thread.sleep(100);
+            assertFalse(heavyFuture.isDone());
+            assertFalse(lightFuture.isDone());
+
+            // the light member uses 1 of 2, the heavy member 1 of 1 after this release
+            heavy.release();
+            lightFuture.get(5, TimeUnit.SECONDS);
+            Thread.sleep(100);
+            assertFalse(heavyFuture.isDone());
+
+            light.release();
+            heavyFuture.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testIdleClientOfMemberAboveFairShareIsEvicted() throws IOException {
+        ConnectionBudget budget = new ConnectionBudget(2);
+        AtomicInteger evictions = new AtomicInteger();
+        Member[] greedy = new Member[1];
+        greedy[0] = budget.register(1, () -> {
+            evictions.incrementAndGet();
+            greedy[0].release();
+            return true;
+        });
+        Member other = budget.register(1, () -> false);
+
+        greedy[0].acquire(0);
+        greedy[0].acquire(0);
+
+        other.acquire(100);
+        assertEquals(1, evictions.get());
+        assertEquals(2, budget.used());
+
+        // the greedy member is at its fair share, so it no longer needs to give up clients
+        assertThrows(IOException.class, () -> other.acquire(100));
+        assertEquals(1, evictions.get());
+    }
+
+    @Test
+    void testUnregister() throws IOException {
+        ConnectionBudget budget = new ConnectionBudget(2);
+        Member member = budget.register(1, () -> false);
+
+        member.acquire(0);
+        member.unregister();
+        // permits that were acquired before unregistering can still be released
+        member.release();
+        assertEquals(0, budget.used());
+    }
+
+    private Void acquire(Member member) throws IOException {
+        member.acquire(0);
+        return null;
+    }
+}
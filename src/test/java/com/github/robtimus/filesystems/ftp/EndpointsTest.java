@@ -0,0 +1,129 @@
+/*
+ * EndpointsTest.java
+ * Copyright 2020 Rob Spoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.robtimus.filesystems.ftp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import com.github.robtimus.filesystems.ftp.Endpoints.Endpoint;
+
+@SuppressWarnings("nls")
+class EndpointsTest {
+
+    @Test
+    void testSingleEndpoint() {
+        Endpoints endpoints = new Endpoints("host1", -1, new FTPEnvironment());
+
+        List<Endpoint> candidates = endpoints.candidates();
+        assertEquals("[host1]", candidates.toString());
+
+        // there is nothing to fail over to
+        assertFalse(endpoints.failed(candidates.get(0)));
+        assertFalse(endpoints.isDrained(candidates.get(0)));
+    }
+
+    @Test
+    void testConnectionsAreSpread() {
+        Endpoints endpoints = createEndpoints();
+
+        assertEquals("host1", endpoints.candidates().get(0).hostname);
+        assertEquals("host2", endpoints.candidates().get(0).hostname);
+        assertEquals("host3", endpoints.candidates().get(0).hostname);
+        assertEquals("host1", endpoints.candidates().get(0).hostname);
+    }
+
+    @Test
+    void testLowestLatencyIsPreferred() {
+        Endpoints endpoints = createEndpoints();
+
+        connect(endpoints, TimeUnit.MILLISECONDS.toNanos(30));
+        connect(endpoints, TimeUnit.MILLISECONDS.toNanos(10));
+        connect(endpoints, TimeUnit.MILLISECONDS.toNanos(15));
+
+        assertEquals("[host2:21, host3:2121, host1]", endpoints.candidates().toString());
+        // host2 now has a connection, so its score is 2 * 10 > 15
+        assertEquals("[host3:2121, host2:21, host1]", endpoints.candidates().toString());
+    }
+
+    @Test
+    void testFailedEndpointIsDrained() throws InterruptedException {
+        Endpoints endpoints = createEndpoints(new FTPEnvironment().withEndpointRetryInterval(100));
+
+        List<Endpoint> candidates = endpoints.candidates();
+        Endpoint endpoint = candidates.get(0);
+        endpoints.disconnected(endpoint);
+        assertFalse(endpoints.failed(endpoint));
+        assertFalse(endpoints.isDrained(endpoint));
+        assertTrue(endpoints.failed(endpoint));
+        assertTrue(endpoints.isDrained(endpoint));
+
+        // the drained endpoint is only a last resort
+        assertEquals("[host2:21, host3:2121, host1]", endpoints.candidates().toString());
+
+        Thread.sleep(200);
+
+        // the drained endpoint can be probed again
+        candidates = endpoints.candidates();
+        assertEquals("host1", candidates.get(0).hostname);
+        endpoints.connected(candidates.get(0), TimeUnit.MILLISECONDS.toNanos(10));
+        assertFalse(endpoints.isDrained(endpoint));
+    }
+
+    @Test
+    void testSingleFailureDoesNotDrainEndpoint() {
+        Endpoints endpoints = createEndpoints();
+
+        Endpoint endpoint = endpoints.candidates().get(0);
+        assertFalse(endpoints.failed(endpoint));
+        // a successful command resets the consecutive failures
+        endpoints.commandCompleted(endpoint, TimeUnit.MILLISECONDS.toNanos(10));
+        assertFalse(endpoints.failed(endpoint));
+        assertFalse(endpoints.isDrained(endpoint));
+    }
+
+    @Test
+    void testFailureThresholdUsesConnectFailureThreshold() {
+        Endpoints endpoints = createEndpoints(new FTPEnvironment().withConnectFailureThreshold(3));
+
+        Endpoint endpoint = endpoints.candidates().get(0);
+        assertFalse(endpoints.failed(endpoint));
+        assertFalse(endpoints.failed(endpoint));
+        assertFalse(endpoints.isDrained(endpoint));
+        assertTrue(endpoints.failed(endpoint));
+        assertTrue(endpoints.isDrained(endpoint));
+    }
+
+    private Endpoints createEndpoints() {
+        return createEndpoints(new FTPEnvironment());
+    }
+
+    private Endpoints createEndpoints(FTPEnvironment env) {
+        env.withAdditionalEndpoints(InetSocketAddress.createUnresolved("host2", 21), InetSocketAddress.createUnresolved("host3", 2121));
+        return new Endpoints("host1", -1, env);
+    }
+
+    private void connect(Endpoints endpoints, long connectTime) {
+        Endpoint endpoint = endpoints.candidates().get(0);
+        endpoints.connected(endpoint, connectTime);
+        endpoints.disconnected(endpoint);
+    }
+}
@@ -19,17 +19,42 @@ package com.github.robtimus.filesystems.ftp;
 
 import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.NON_UNIX;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
 import java.net.URI;
+import java.nio.file.ClosedFileSystemException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
 import org.junit.jupiter.api.Test;
+import org.mockftpserver.core.command.CommandHandler;
+import org.mockftpserver.core.command.CommandNames;
+import org.mockftpserver.core.command.StaticReplyCommandHandler;
 import com.github.robtimus.filesystems.ftp.FTPClientPool.Client;
 
 /**
@@ -71,6 +96,1000 @@ class FTPClientPoolTest extends AbstractFTPFileSystemTest {
         }
     }
 
+    @Test
+    void testLazyCreation() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withMinClientConnections(1)
+                .withMaxClientConnections(3);
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        List<Client> clients = new ArrayList<>();
+        try {
+            assertEquals(1, pool.poolSize());
+            assertEquals(1, pool.idleClientCount());
+
+            claimClients(pool, 3, clients);
+            assertEquals(3, pool.poolSize());
+            assertEquals(0, pool.idleClientCount());
+
+            for (Client client : clients) {
+                client.close();
+            }
+            clients.clear();
+            assertEquals(3, pool.poolSize());
+            assertEquals(3, pool.idleClientCount());
+        } finally {
+            pool.close();
+            for (Client client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    void testShrinkAfterIdleTimeout() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withMinClientConnections(1)
+                .withMaxClientConnections(3)
+                .withClientConnectionIdleTimeout(100, TimeUnit.MILLISECONDS);
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        List<Client> clients = new ArrayList<>();
+        try {
+            claimClients(pool, 3, clients);
+            assertEquals(3, pool.poolSize());
+
+            for (Client client : clients) {
+                client.close();
+            }
+            clients.clear();
+            assertEquals(3, pool.idleClientCount());
+
+            Thread.sleep(200);
+
+            // returning a client evicts all clients that have been idle for too long, but not below the minimum
+            claimClients(pool, 1, clients);
+            clients.get(0).close();
+            clients.clear();
+            assertEquals(1, pool.poolSize());
+            assertEquals(1, pool.idleClientCount());
+        } finally {
+            pool.close();
+            for (Client client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    void testConcurrentWarmUp() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withClientConnectionCount(5)
+                .withMaxConcurrentClientConnects(3);
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        try {
+            assertEquals(5, pool.poolSize());
+            assertEquals(5, pool.idleClientCount());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testConcurrentWarmUpFailure() throws Exception {
+        URI brokenUri;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            brokenUri = URI.create("ftp://localhost:" + serverSocket.getLocalPort());
+        }
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withClientConnectionCount(5)
+                .withMaxConcurrentClientConnects(3);
+
+        assertThrows(IOException.class, () -> new FTPClientPool(brokenUri.getHost(), brokenUri.getPort(), env));
+    }
+
+    @Test
+    void testEndpointFailover() throws Exception {
+        URI uri = getURI();
+        int brokenPort;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            brokenPort = serverSocket.getLocalPort();
+        }
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withClientConnectionCount(2)
+                .withAdditionalEndpoints(InetSocketAddress.createUnresolved(uri.getHost(), uri.getPort()));
+
+        // the endpoint of the pool itself is broken, so all clients should connect to the additional endpoint
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), brokenPort, env);
+        try {
+            List<Client> clients = new ArrayList<>();
+            claimClients(pool, 2, clients);
+            for (Client client : clients) {
+                assertEquals(uri.getPort(), client.ftpClient().getRemotePort());
+                client.close();
+            }
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testConnectCircuitBreaker() throws Exception {
+        URI uri = getURI();
+        int brokenPort;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            brokenPort = serverSocket.getLocalPort();
+        }
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withMinClientConnections(0)
+                .withMaxClientConnections(1)
+                .withConnectFailureThreshold(2)
+                .withConnectFailureBackoff(200, TimeUnit.MILLISECONDS);
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), brokenPort, env);
+        try {
+            assertThrows(IOException.class, pool::get);
+            assertFalse(pool.isConnectCircuitOpen());
+            assertThrows(IOException.class, pool::get);
+            assertTrue(pool.isConnectCircuitOpen());
+
+            IOException exception = assertThrows(IOException.class, pool::get);
+            assertThat(exception, instanceOf(ConnectException.class));
+            assertEquals(0, exception.getSuppressed().length);
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testConnectionLimitLearning() throws Exception {
+        URI uri = getURI();
+        // the server accepts only two connections
+        FTPEnvironment env = new ConnectionLimitingEnvironment(2);
+        env.putAll(createEnv(NON_UNIX)
+                .withMinClientConnections(1)
+                .withMaxClientConnections(4)
+                .withConnectionLimitLearningEnabled(true)
+                .withConnectionLimitRecoveryInterval(500, TimeUnit.MILLISECONDS));
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        List<Client> clients = new ArrayList<>();
+        try {
+            claimClients(pool, 2, clients);
+            assertEquals(4, pool.getPoolSizeLimit());
+
+            // the third client is rejected, so the borrow waits for one of the others
+            Future<Client> future = executor.submit(pool::get);
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                while (pool.getPoolSizeLimit() == 4) {
+                    Thread.sleep(10);
+                }
+            });
+            assertEquals(2, pool.getPoolSizeLimit());
+            assertFalse(future.isDone());
+
+            clients.get(0).close();
+            assertSame(clients.get(0), future.get(5, TimeUnit.SECONDS));
+            clients.set(0, future.get());
+
+            // without rejections, the limit is raised again, but only once the pool is used
+            Thread.sleep(600);
+            assertEquals(2, pool.getPoolSizeLimit());
+            clients.get(1).close();
+            clients.set(1, pool.get());
+            assertEquals(3, pool.getPoolSizeLimit());
+        } finally {
+            executor.shutdownNow();
+            for (Client client : clients) {
+                client.close();
+            }
+            pool.close();
+        }
+    }
+
+    @Test
+    void testConnectionLimitLearningUsesPoolSize() throws Exception {
+        URI uri = getURI();
+        // the server accepts only three connections
+        FTPEnvironment env = new ConnectionLimitingEnvironment(3);
+        env.putAll(createEnv(NON_UNIX)
+                .withMinClientConnections(1)
+                .withMaxClientConnections(8)
+                .withClientConnectionWaitTimeout(100)
+                .withConnectionLimitLearningEnabled(true));
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        List<Client> clients = new ArrayList<>();
+        try {
+            claimClients(pool, 3, clients);
+            assertEquals(8, pool.getPoolSizeLimit());
+
+            // the fourth client is rejected; the limit is lowered to the number of accepted clients, not half of the old limit
+            assertThrows(IOException.class, pool::get);
+            assertEquals(3, pool.getPoolSizeLimit());
+        } finally {
+            for (Client client : clients) {
+                client.close();
+            }
+            pool.close();
+        }
+    }
+
+    @Test
+    void testConnectionLimitLearningDuringWarmUp() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = new ConnectionLimitingEnvironment(2);
+        env.putAll(createEnv(NON_UNIX)
+                .withClientConnectionCount(4)
+                .withMaxConcurrentClientConnects(1)
+                .withConnectionLimitLearningEnabled(true));
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        try {
+            assertEquals(2, pool.poolSize());
+            assertEquals(2, pool.getPoolSizeLimit());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testConnectionBudget() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withMinClientConnections(0)
+                .withMaxClientConnections(2)
+                .withClientConnectionWaitTimeout(1, TimeUnit.SECONDS);
+        ConnectionBudget budget = new ConnectionBudget(2);
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env, budget);
+        FTPClientPool otherPool = new FTPClientPool(uri.getHost(), uri.getPort(), env, budget);
+        try {
+            List<Client> clients = new ArrayList<>();
+            claimClients(pool, 2, clients);
+            assertEquals(2, budget.used());
+
+            // the other pool cannot take clients that are in use
+            assertThrows(IOException.class, () -> claimClient(otherPool));
+            assertEquals(2, pool.poolSize());
+
+            for (Client client : clients) {
+                client.close();
+            }
+            // the first pool uses more than its share, so it has to give up one of its idle clients
+            try (Client client = otherPool.get()) {
+                assertEquals(1, pool.poolSize());
+                assertEquals(1, otherPool.poolSize());
+                assertEquals(2, budget.used());
+            }
+        } finally {
+            pool.close();
+            otherPool.close();
+        }
+        assertEquals(0, budget.used());
+    }
+
+    @Test
+    void testBackgroundMaintenance() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withMinClientConnections(1)
+                .withMaxClientConnections(3)
+                .withClientConnectionIdleTimeout(100, TimeUnit.MILLISECONDS)
+                .withClientConnectionMaintenanceInterval(50, TimeUnit.MILLISECONDS);
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        List<Client> clients = new ArrayList<>();
+        try {
+            claimClients(pool, 3, clients);
+            for (Client client : clients) {
+                client.close();
+            }
+            clients.clear();
+            assertEquals(3, pool.idleClientCount());
+
+            // no client is returned, so only the background maintenance can evict the idle clients
+            Thread.sleep(500);
+
+            assertEquals(1, pool.poolSize());
+            assertEquals(1, pool.idleClientCount());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testIdleTimeoutWithoutMaintenanceInterval() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withMinClientConnections(1)
+                .withMaxClientConnections(3)
+                .withClientConnectionIdleTimeout(100, TimeUnit.MILLISECONDS);
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        List<Client> clients = new ArrayList<>();
+        try {
+            claimClients(pool, 3, clients);
+            for (Client client : clients) {
+                client.close();
+            }
+            clients.clear();
+            assertEquals(3, pool.idleClientCount());
+
+            // the pool can shrink, so the idle clients are evicted in the background even without a maintenance interval
+            Thread.sleep(500);
+
+            assertEquals(1, pool.poolSize());
+            assertEquals(1, pool.idleClientCount());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testFileSystemIdleTimeout() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withMinClientConnections(2)
+                .withMaxClientConnections(3)
+                .withFileSystemIdleTimeout(200, TimeUnit.MILLISECONDS)
+                .withClientConnectionMaintenanceInterval(50, TimeUnit.MILLISECONDS);
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        try {
+            try (Client client = pool.get()) {
+                // the pool is in use, so its clients are not closed
+                Thread.sleep(500);
+
+                assertEquals(2, pool.poolSize());
+                assertEquals(1, pool.idleClientCount());
+            }
+
+            Thread.sleep(500);
+
+            // the pool has not been used, so all of its clients are closed, including the minimum number
+            assertEquals(0, pool.poolSize());
+            assertEquals(0, pool.idleClientCount());
+            assertEquals(2, pool.getClosedCount());
+
+            // new clients are created on the next use
+            try (Client client = pool.get()) {
+                assertEquals(1, pool.poolSize());
+                assertEquals(0, pool.idleClientCount());
+            }
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testReconfigure() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withMinClientConnections(1)
+                .withMaxClientConnections(2)
+                .withClientConnectionWaitTimeout(100, TimeUnit.MILLISECONDS);
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        try {
+            List<Client> clients = new ArrayList<>();
+            claimClients(pool, 2, clients);
+            assertThrows(IOException.class, () -> claimClient(pool));
+
+            // raising the maximum does not affect the clients in use
+            pool.reconfigure(new FTPEnvironment().withMaxClientConnections(3));
+            assertEquals(3, pool.getMaxPoolSize());
+            assertEquals(1, pool.getMinPoolSize());
+            claimClients(pool, 1, clients);
+            assertEquals(3, pool.getInUseCount());
+            assertThrows(IOException.class, () -> claimClient(pool));
+
+            // lowering the maximum closes the clients in use when they are returned
+            pool.reconfigure(new FTPEnvironment().withMaxClientConnections(1));
+            assertEquals(3, pool.poolSize());
+            assertEquals(3, pool.getInUseCount());
+            for (Client client : clients) {
+                client.close();
+            }
+            assertEquals(1, pool.poolSize());
+            assertEquals(1, pool.idleClientCount());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testReconfigureIdleClients() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withClientConnectionCount(3);
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        try {
+            assertEquals(3, pool.idleClientCount());
+
+            // lowering the maximum closes idle clients immediately
+            pool.reconfigure(new FTPEnvironment().withMaxClientConnections(1));
+            assertEquals(1, pool.poolSize());
+            assertEquals(1, pool.idleClientCount());
+            assertEquals(2, pool.getClosedCount());
+        } finally {
+            pool.close();
+        }
+        assertThrows(ClosedFileSystemException.class, () -> pool.reconfigure(new FTPEnvironment()));
+    }
+
+    @Test
+    void testAdaptivePoolSizeLimit() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withMinClientConnections(1)
+                .withMaxClientConnections(3)
+                .withTargetBorrowWaitTime(100, TimeUnit.MILLISECONDS)
+                .withClientConnectionIdleTimeout(200, TimeUnit.MILLISECONDS)
+                .withClientConnectionMaintenanceInterval(50, TimeUnit.MILLISECONDS);
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        try {
+            assertEquals(1, pool.getPoolSizeLimit());
+
+            List<Client> clients = new ArrayList<>();
+            claimClients(pool, 1, clients);
+            long startTime = System.nanoTime();
+            // the pool can only grow after the borrow has waited for the target wait time
+            claimClients(pool, 1, clients);
+            assertThat(100L, lessThanOrEqualTo(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)));
+            assertEquals(2, pool.getPoolSizeLimit());
+            assertEquals(2, pool.poolSize());
+
+            for (Client client : clients) {
+                client.close();
+            }
+            // an idle client is available, so the pool does not grow
+            try (Client client = pool.get()) {
+                assertEquals(2, pool.getPoolSizeLimit());
+            }
+
+            Thread.sleep(500);
+
+            assertEquals(1, pool.poolSize());
+            assertEquals(1, pool.getPoolSizeLimit());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testKeepAlive() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withClientConnectionCount(3);
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        try {
+            pool.keepAlive();
+
+            assertEquals(3, pool.poolSize());
+            assertEquals(3, pool.idleClientCount());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testReservedMetadataClients() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withClientConnectionCount(3)
+                .withReservedMetadataClientConnections(1)
+                .withClientConnectionWaitTimeout(200, TimeUnit.MILLISECONDS);
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        List<Client> clients = new ArrayList<>();
+        try {
+            claimTransferClients(pool, 2, clients);
+            assertEquals(2, pool.getTransferInUseCount());
+
+            IOException exception = assertThrows(IOException.class, () -> claimTransferClient(pool));
+            assertEquals(FTPMessages.clientConnectionWaitTimeoutExpired(), exception.getMessage());
+
+            claimClients(pool, 1, clients);
+            assertEquals(1, pool.getMetadataInUseCount());
+        } finally {
+            pool.close();
+            for (Client client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    void testReservedTransferClients() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withClientConnectionCount(3)
+                .withReservedTransferClientConnections(1)
+                .withClientConnectionWaitTimeout(200, TimeUnit.MILLISECONDS);
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        List<Client> clients = new ArrayList<>();
+        try {
+            claimClients(pool, 2, clients);
+            assertEquals(2, pool.getMetadataInUseCount());
+
+            IOException exception = assertThrows(IOException.class, () -> claimClient(pool));
+            assertEquals(FTPMessages.clientConnectionWaitTimeoutExpired(), exception.getMessage());
+
+            claimTransferClients(pool, 1, clients);
+            assertEquals(1, pool.getTransferInUseCount());
+
+            for (Client client : clients) {
+                client.close();
+            }
+            clients.clear();
+            assertEquals(0, pool.getInUseCount());
+        } finally {
+            pool.close();
+            for (Client client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    void testReservedMetadataClientsWithAdaptivePoolSizeLimit() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withMinClientConnections(2)
+                .withMaxClientConnections(4)
+                .withTargetBorrowWaitTime(10, TimeUnit.SECONDS)
+                .withReservedMetadataClientConnections(1)
+                .withClientConnectionWaitTimeout(200, TimeUnit.MILLISECONDS);
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        List<Client> clients = new ArrayList<>();
+        try {
+            assertEquals(2, pool.getPoolSizeLimit());
+
+            // the reservation applies to the current pool size limit, not the maximum pool size
+            claimTransferClients(pool, 1, clients);
+            IOException exception = assertThrows(IOException.class, () -> claimTransferClient(pool));
+            assertEquals(FTPMessages.clientConnectionWaitTimeoutExpired(), exception.getMessage());
+
+            claimClients(pool, 1, clients);
+            assertEquals(1, pool.getMetadataInUseCount());
+            assertEquals(2, pool.poolSize());
+        } finally {
+            pool.close();
+            for (Client client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    void testTransferOptionsAffinity() throws Exception {
+        addFile("/foo");
+
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withClientConnectionCount(2);
+
+        OpenOptions asciiOptions = OpenOptions.forNewInputStream(FileType.ascii());
+        OpenOptions binaryOptions = OpenOptions.forNewInputStream(FileType.binary());
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        try (FTPFileSystem fs = (FTPFileSystem) new FTPFileSystemProvider().newFileSystem(uri, env)) {
+            FTPPath path = createPath(fs, "/foo");
+
+            Client asciiClient = pool.getForTransfer(asciiOptions);
+            Client binaryClient = pool.getForTransfer(binaryOptions);
+            asciiClient.newInputStream(path, asciiOptions).close();
+            asciiClient.close();
+            // the binary client is now the most recently used client
+            binaryClient.close();
+
+            try (Client client = pool.getForTransfer(asciiOptions)) {
+                assertSame(asciiClient, client);
+            }
+            // the ASCII client is now the most recently used client
+            try (Client client = pool.get()) {
+                assertSame(asciiClient, client);
+            }
+            try (Client client = pool.getForTransfer(binaryOptions)) {
+                assertSame(binaryClient, client);
+            }
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testBrokenClientIsReplaced() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withClientConnectionCount(1)
+                .withClientValidationPolicy(ClientValidationPolicy.NEVER);
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        try {
+            try (Client client = pool.get()) {
+                // simulate a lost connection
+                client.ftpClient().disconnect();
+                assertThrows(IOException.class, client::pwd);
+            }
+            assertEquals(0, pool.poolSize());
+
+            try (Client client = pool.get()) {
+                assertEquals("/home/test", client.pwd());
+            }
+            assertEquals(1, pool.poolSize());
+            assertEquals(1, pool.idleClientCount());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testClientFailingValidationIsDisconnectedOnce() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withClientConnectionCount(1)
+                .withClientValidationPolicy(ClientValidationPolicy.ALWAYS);
+        ConnectionBudget budget = new ConnectionBudget(2);
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env, budget);
+        CommandHandler noopCommandHandler = setCommandHandler(CommandNames.NOOP,
+                new StaticReplyCommandHandler(FTPReply.SERVICE_NOT_AVAILABLE, "closing"));
+        try {
+            assertEquals(1, budget.used());
+
+            // the keep alive fails, so the client is replaced
+            try (Client client = pool.get()) {
+                setCommandHandler(CommandNames.NOOP, noopCommandHandler);
+                assertEquals("/home/test", client.pwd());
+            }
+            assertEquals(1, pool.getBrokenClientCount());
+            assertEquals(1, pool.getClosedCount());
+            assertEquals(1, budget.used());
+            assertEquals(1, budget.available());
+        } finally {
+            setCommandHandler(CommandNames.NOOP, noopCommandHandler);
+            pool.close();
+        }
+        assertEquals(0, budget.used());
+    }
+
+    @Test
+    void testMXBean() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withClientConnectionCount(2)
+                .withClientPoolMXBeanEnabled(true);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pattern = new ObjectName("com.github.robtimus.filesystems.ftp:type=FTPClientPool,*");
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        try {
+            Set<ObjectName> names = server.queryNames(pattern, null);
+            assertEquals(1, names.size());
+            ObjectName name = names.iterator().next();
+
+            try (Client client = pool.get()) {
+                assertEquals(1, server.getAttribute(name, "InUseCount"));
+                assertEquals(1, server.getAttribute(name, "IdleCount"));
+            }
+
+            assertEquals(2, server.getAttribute(name, "MinPoolSize"));
+            assertEquals(2, server.getAttribute(name, "MaxPoolSize"));
+            assertEquals(0, server.getAttribute(name, "InUseCount"));
+            assertEquals(2, server.getAttribute(name, "IdleCount"));
+            assertEquals(1L, server.getAttribute(name, "BorrowCount"));
+            assertEquals(2L, server.getAttribute(name, "CreatedCount"));
+            assertEquals(0L, server.getAttribute(name, "ClosedCount"));
+            assertEquals(0L, server.getAttribute(name, "WaitTimeoutCount"));
+            assertEquals(0L, server.getAttribute(name, "BrokenClientCount"));
+            assertThat((Double) server.getAttribute(name, "BorrowWaitTimeP50"),
+                    lessThanOrEqualTo((Double) server.getAttribute(name, "BorrowWaitTimeMax")));
+        } finally {
+            pool.close();
+        }
+        assertEquals(Collections.emptySet(), server.queryNames(pattern, null));
+        assertEquals(2L, pool.getClosedCount());
+    }
+
+    @Test
+    void testOverflowClients() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withClientConnectionCount(1)
+                .withMaxOverflowClientConnections(1)
+                .withOverflowClientConnectionLingerTime(200);
+
+        OpenOptions options = OpenOptions.forNewInputStream();
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        try (Client pooledClient = pool.get()) {
+            Client overflowClient = pool.getOrCreate(options);
+            overflowClient.close();
+            assertTrue(overflowClient.ftpClient().isConnected());
+
+            try (Client client = pool.getOrCreate(options)) {
+                assertSame(overflowClient, client);
+
+                // only one overflow client can be kept
+                Client otherClient = pool.getOrCreate(options);
+                assertNotSame(overflowClient, otherClient);
+                otherClient.close();
+                assertFalse(otherClient.ftpClient().isConnected());
+            }
+            assertTrue(overflowClient.ftpClient().isConnected());
+
+            // the overflow client is evicted once it has been idle for longer than the linger time
+            Thread.sleep(300);
+            try (Client client = pool.getOrCreate(options)) {
+                assertNotSame(overflowClient, client);
+                assertFalse(overflowClient.ftpClient().isConnected());
+            }
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testOverflowClientLingerTimeWithoutPoolActivity() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withClientConnectionCount(1)
+                .withMaxOverflowClientConnections(1)
+                .withOverflowClientConnectionLingerTime(100);
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        try {
+            Client overflowClient;
+            try (Client pooledClient = pool.get()) {
+                overflowClient = pool.getOrCreate(OpenOptions.forNewInputStream());
+                overflowClient.close();
+                assertTrue(overflowClient.ftpClient().isConnected());
+            }
+
+            // the pool is no longer used, so only the background maintenance can evict the overflow client
+            Thread.sleep(500);
+
+            assertFalse(overflowClient.ftpClient().isConnected());
+            assertEquals(1, pool.poolSize());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testOverflowClientsDisabled() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withClientConnectionCount(1);
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        try (Client pooledClient = pool.get()) {
+            Client overflowClient = pool.getOrCreate(OpenOptions.forNewInputStream());
+            overflowClient.close();
+            assertFalse(overflowClient.ftpClient().isConnected());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testLeakDetection() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withClientConnectionCount(2)
+                .withClientLeakDetectionThreshold(100, TimeUnit.MILLISECONDS);
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        try {
+            Client client = pool.get();
+            pool.get().close();
+            assertEquals(0, pool.getLeakedClientCount());
+
+            Thread.sleep(200);
+            assertEquals(1, pool.getLeakedClientCount());
+
+            client.close();
+            assertEquals(0, pool.getLeakedClientCount());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testReclaimAbandonedStream() throws Exception {
+        addFile("/foo");
+
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withClientConnectionCount(1)
+                .withClientConnectionMaintenanceInterval(50, TimeUnit.MILLISECONDS)
+                .withAbandonedStreamReclaimEnabled(true);
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        try (FTPFileSystem fs = (FTPFileSystem) new FTPFileSystemProvider().newFileSystem(uri, env)) {
+            Client client = openAbandonedStream(pool, createPath(fs, "/foo"));
+            assertEquals(1, pool.getInUseCount());
+
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+                while (pool.getReclaimedClientCount() == 0) {
+                    System.gc();
+                    Thread.sleep(50);
+                }
+            });
+            assertEquals(0, pool.getInUseCount());
+            assertFalse(client.ftpClient().isConnected());
+
+            try (Client newClient = pool.get()) {
+                assertNotSame(client, newClient);
+            }
+        } finally {
+            pool.close();
+        }
+    }
+
+    private Client openAbandonedStream(FTPClientPool pool, FTPPath path) throws IOException {
+        OpenOptions options = OpenOptions.forNewInputStream();
+        Client client = pool.getForTransfer(options);
+        client.newInputStream(path, options);
+        client.close();
+        return client;
+    }
+
+    @Test
+    void testSharedPool() throws Exception {
+        addDirectory("/home/test/foo");
+
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withClientConnectionCount(1)
+                .withClientConnectionWaitTimeout(100)
+                .withSharedClientPoolEnabled(true);
+        FTPEnvironment fooEnv = env.clone()
+                .withDefaultDirectory("foo");
+
+        FTPClientPool.Handle handle = FTPClientPool.open(uri.getHost(), uri.getPort(), env, null);
+        FTPClientPool.Handle fooHandle = FTPClientPool.open(uri.getHost(), uri.getPort(), fooEnv, null);
+        try {
+            Client client = handle.get();
+            try {
+                assertEquals("/home/test", client.pwd());
+                // the only client is in use
+                assertThrows(IOException.class, fooHandle::get);
+            } finally {
+                client.close();
+            }
+
+            try (Client fooClient = fooHandle.get()) {
+                assertSame(client, fooClient);
+                assertEquals("/home/test/foo", fooClient.pwd());
+            }
+            try (Client otherClient = handle.get()) {
+                assertSame(client, otherClient);
+                assertEquals("/home/test", otherClient.pwd());
+            }
+
+            handle.close();
+            assertThrows(ClosedFileSystemException.class, handle::get);
+            try (Client fooClient = fooHandle.get()) {
+                assertSame(client, fooClient);
+                assertEquals("/home/test/foo", fooClient.pwd());
+            }
+        } finally {
+            handle.close();
+            fooHandle.close();
+        }
+    }
+
+    @Test
+    void testSharedPoolWithIncompatibleEnvironments() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withClientConnectionCount(1)
+                .withClientConnectionWaitTimeout(100)
+                .withSharedClientPoolEnabled(true);
+        FTPEnvironment otherEnv = env.clone()
+                .withClientConnectionWaitTimeout(200);
+
+        FTPClientPool.Handle handle = FTPClientPool.open(uri.getHost(), uri.getPort(), env, null);
+        FTPClientPool.Handle otherHandle = FTPClientPool.open(uri.getHost(), uri.getPort(), otherEnv, null);
+        try (Client client = handle.get();
+                Client otherClient = otherHandle.get()) {
+
+            assertNotSame(client, otherClient);
+        } finally {
+            handle.close();
+            otherHandle.close();
+        }
+    }
+
+    @Test
+    void testSharedPoolWithSeparatelyCreatedEnvironments() throws Exception {
+        URI uri = getURI();
+        // each environment gets its own password array
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withClientConnectionCount(1)
+                .withClientConnectionWaitTimeout(100)
+                .withSharedClientPoolEnabled(true);
+        FTPEnvironment otherEnv = createEnv(NON_UNIX)
+                .withClientConnectionCount(1)
+                .withClientConnectionWaitTimeout(100)
+                .withSharedClientPoolEnabled(true);
+
+        FTPClientPool.Handle handle = FTPClientPool.open(uri.getHost(), uri.getPort(), env, null);
+        FTPClientPool.Handle otherHandle = FTPClientPool.open(uri.getHost(), uri.getPort(), otherEnv, null);
+        try {
+            Client client = handle.get();
+            client.close();
+            try (Client otherClient = otherHandle.get()) {
+                assertSame(client, otherClient);
+            }
+        } finally {
+            handle.close();
+            otherHandle.close();
+        }
+    }
+
+    @Test
+    void testSharedPoolBetweenFileSystems() throws Exception {
+        addDirectory("/home/test/foo");
+
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX)
+                .withSharedClientPoolEnabled(true);
+        FTPEnvironment fooEnv = env.clone()
+                .withDefaultDirectory("foo");
+
+        try (FileSystem fs = new FTPFileSystemProvider().newFileSystem(uri, env);
+                FileSystem fooFs = new FTPFileSystemProvider().newFileSystem(uri, fooEnv)) {
+
+            assertEquals("/home/test", fs.getPath("").toAbsolutePath().toString());
+            assertEquals("/home/test/foo", fooFs.getPath("").toAbsolutePath().toString());
+            assertTrue(Files.isDirectory(fs.getPath("foo")));
+            assertFalse(Files.exists(fooFs.getPath("foo")));
+        }
+    }
+
+    @Test
+    void testGetAfterClose() throws Exception {
+        URI uri = getURI();
+        FTPEnvironment env = createEnv(NON_UNIX);
+
+        FTPClientPool pool = new FTPClientPool(uri.getHost(), uri.getPort(), env);
+        pool.close();
+        assertThrows(ClosedFileSystemException.class, () -> claimClient(pool));
+    }
+
+    private static final class ConnectionLimitingEnvironment extends FTPEnvironment {
+
+        private final int connectionLimit;
+        private final AtomicInteger connectCount = new AtomicInteger();
+
+        private ConnectionLimitingEnvironment(int connectionLimit) {
+            this.connectionLimit = connectionLimit;
+        }
+
+        @Override
+        FTPClient createClient(String hostname, int port) throws IOException {
+            if (connectCount.incrementAndGet() > connectionLimit) {
+                throw new FTPFileSystemException(421, "421 Too many connections");
+            }
+            return super.createClient(hostname, port);
+        }
+    }
+
     @SuppressWarnings("resource")
     private void claimClients(FTPClientPool pool, int clientCount, List<Client> clients) throws IOException {
         for (int i = 0; i < clientCount; i++) {
@@ -82,4 +1101,16 @@ class FTPClientPoolTest extends AbstractFTPFileSystemTest {
     private void claimClient(FTPClientPool pool) throws IOException {
         pool.get();
     }
+
+    @SuppressWarnings("resource")
+    private void claimTransferClients(FTPClientPool pool, int clientCount, List<Client> clients) throws IOException {
+        for (int i = 0; i < clientCount; i++) {
+            clients.add(pool.getForTransfer(OpenOptions.forNewInputStream()));
+        }
+    }
+
+    @SuppressWarnings("resource")
+    private void claimTransferClient(FTPClientPool pool) throws IOException {
+        pool.getForTransfer(OpenOptions.forNewInputStream());
+    }
 }
@@ -21,7 +21,10 @@ import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory
 import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.NON_UNIX;
 import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.UNIX;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.params.provider.Arguments.arguments;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
@@ -40,6 +43,7 @@ import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -61,6 +65,7 @@ import org.junit.jupiter.api.TestInstance.Lifecycle;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.mockito.ArgumentCaptor;
 
 @SuppressWarnings("nls")
 @TestInstance(Lifecycle.PER_CLASS)
@@ -94,6 +99,8 @@ class FTPEnvironmentTest {
                 arguments("withServerSocketFactory", "serverSocketFactory", ServerSocketFactory.getDefault()),
                 arguments("withConnectTimeout", "connectTimeout", 1000),
                 arguments("withProxy", "proxy", new Proxy(Proxy.Type.HTTP, new InetSocketAddress("localhost", 21))),
+                arguments("withAdditionalEndpoints", "additionalEndpoints", new InetSocketAddress[] { InetSocketAddress.createUnresolved("localhost", 21), }),
+                arguments("withEndpointRetryInterval", "endpointRetryInterval", 1000L),
                 arguments("withCharset", "charset", StandardCharsets.UTF_8),
                 arguments("withControlEncoding", "controlEncoding", "UTF-8"),
                 arguments("withStrictlyMultilineParsing", "strictMultilineParsing", true),
@@ -117,7 +124,38 @@ class FTPEnvironmentTest {
                 arguments("withAutodetectEncoding", "autodetectEncoding", true),
                 arguments("withListHiddenFiles", "listHiddenFiles", false),
                 arguments("withClientConnectionCount", "clientConnectionCount", 5),
+                arguments("withMinClientConnections", "minClientConnections", 1),
+                arguments("withMaxClientConnections", "maxClientConnections", 10),
+                arguments("withReservedMetadataClientConnections", "reservedMetadataClientConnections", 1),
+                arguments("withReservedTransferClientConnections", "reservedTransferClientConnections", 1),
+                arguments("withMaxOverflowClientConnections", "maxOverflowClientConnections", 1),
+                arguments("withOverflowClientConnectionLingerTime", "overflowClientConnectionLingerTime", 1000L),
+                arguments("withMaxConcurrentClientConnects", "maxConcurrentClientConnects", 2),
+                arguments("withClientConnectionIdleTimeout", "clientConnectionIdleTimeout", 1000L),
+                arguments("withClientConnectionMaintenanceInterval", "clientConnectionMaintenanceInterval", 1000L),
+                arguments("withClientConnectionKeepAliveInterval", "clientConnectionKeepAliveInterval", 1000L),
+                arguments("withClientValidationPolicy", "clientValidationPolicy", ClientValidationPolicy.NEVER),
+                arguments("withClientValidationIdleTime", "clientValidationIdleTime", 1000L),
                 arguments("withClientConnectionWaitTimeout", "clientConnectionWaitTimeout", 1000L),
+                arguments("withClientLeakDetectionThreshold", "clientLeakDetectionThreshold", 1000L),
+                arguments("withAbandonedStreamReclaimEnabled", "abandonedStreamReclaimEnabled", true),
+                arguments("withTargetBorrowWaitTime", "targetBorrowWaitTime", 1000L),
+                arguments("withConnectionLimitLearningEnabled", "connectionLimitLearningEnabled", true),
+                arguments("withConnectionLimitRecoveryInterval", "connectionLimitRecoveryInterval", 1000L),
+                arguments("withConnectFailureThreshold", "connectFailureThreshold", 3),
+                arguments("withConnectFailureBackoff", "connectFailureBackoff", 1000L),
+                arguments("withMaxConnectFailureBackoff", "maxConnectFailureBackoff", 1000L),
+                arguments("withClientPoolMXBeanEnabled", "clientPoolMXBeanEnabled", true),
+                arguments("withSharedClientPoolEnabled", "sharedClientPoolEnabled", true),
+                arguments("withHostConnectionBudget", "hostConnectionBudget", 10),
+                arguments("withConnectionBudgetWeight", "connectionBudgetWeight", 2),
+                arguments("withFileSystemIdleTimeout", "fileSystemIdleTimeout", 1000L),
+                arguments("withLazyInitializationEnabled", "lazyInitializationEnabled", true),
+                arguments("withCapabilityCacheFile", "capabilityCacheFile", Paths.get("capabilities.properties")),
+                arguments("withCapabilityCacheMaxAge", "capabilityCacheMaxAge", 1000L),
+                arguments("withMetadataCacheTimeToLive", "metadataCacheTimeToLive", 1000L),
+                arguments("withMetadataCacheMaxEntries", "metadataCacheMaxEntries", 100),
+                arguments("withMissingFileCacheTimeToLive", "missingFileCacheTimeToLive", 1000L),
                 arguments("withFileSystemExceptionFactory", "fileSystemExceptionFactory", DefaultFileSystemExceptionFactory.INSTANCE),
                 arguments("withFTPFileStrategyFactory", "ftpFileStrategyFactory", UNIX),
         };
@@ -242,6 +280,201 @@ class FTPEnvironmentTest {
         assertSame(FTPFileStrategy.autoDetect().getClass(), env.getFTPFileStrategy().getClass());
     }
 
+    @Test
+    void testWithClientConnectionIdleTimeoutWithUnit() {
+        FTPEnvironment env = createFTPEnvironment();
+
+        assertEquals(Collections.emptyMap(), env);
+
+        env.withClientConnectionIdleTimeout(1, TimeUnit.MINUTES);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("clientConnectionIdleTimeout", 60_000L);
+        assertEquals(expected, env);
+    }
+
+    @Test
+    void testWithEndpointRetryIntervalWithUnit() {
+        FTPEnvironment env = createFTPEnvironment();
+
+        assertEquals(Collections.emptyMap(), env);
+
+        env.withEndpointRetryInterval(1, TimeUnit.MINUTES);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("endpointRetryInterval", 60_000L);
+        assertEquals(expected, env);
+    }
+
+    @Test
+    void testWithOverflowClientConnectionLingerTimeWithUnit() {
+        FTPEnvironment env = createFTPEnvironment();
+
+        assertEquals(Collections.emptyMap(), env);
+
+        env.withOverflowClientConnectionLingerTime(1, TimeUnit.MINUTES);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("overflowClientConnectionLingerTime", 60_000L);
+        assertEquals(expected, env);
+    }
+
+    @Test
+    void testWithClientLeakDetectionThresholdWithUnit() {
+        FTPEnvironment env = createFTPEnvironment();
+
+        assertEquals(Collections.emptyMap(), env);
+
+        env.withClientLeakDetectionThreshold(1, TimeUnit.MINUTES);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("clientLeakDetectionThreshold", 60_000L);
+        assertEquals(expected, env);
+    }
+
+    @Test
+    void testWithTargetBorrowWaitTimeWithUnit() {
+        FTPEnvironment env = createFTPEnvironment();
+
+        assertEquals(Collections.emptyMap(), env);
+
+        env.withTargetBorrowWaitTime(1, TimeUnit.MINUTES);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("targetBorrowWaitTime", 60_000L);
+        assertEquals(expected, env);
+    }
+
+    @Test
+    void testWithConnectionLimitRecoveryIntervalWithUnit() {
+        FTPEnvironment env = createFTPEnvironment();
+
+        assertEquals(Collections.emptyMap(), env);
+
+        env.withConnectionLimitRecoveryInterval(1, TimeUnit.MINUTES);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("connectionLimitRecoveryInterval", 60_000L);
+        assertEquals(expected, env);
+    }
+
+    @Test
+    void testWithConnectFailureBackoffWithUnit() {
+        FTPEnvironment env = createFTPEnvironment();
+
+        assertEquals(Collections.emptyMap(), env);
+
+        env.withConnectFailureBackoff(1, TimeUnit.MINUTES);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("connectFailureBackoff", 60_000L);
+        assertEquals(expected, env);
+    }
+
+    @Test
+    void testWithMaxConnectFailureBackoffWithUnit() {
+        FTPEnvironment env = createFTPEnvironment();
+
+        assertEquals(Collections.emptyMap(), env);
+
+        env.withMaxConnectFailureBackoff(1, TimeUnit.MINUTES);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("maxConnectFailureBackoff", 60_000L);
+        assertEquals(expected, env);
+    }
+
+    @Test
+    void testWithFileSystemIdleTimeoutWithUnit() {
+        FTPEnvironment env = createFTPEnvironment();
+
+        assertEquals(Collections.emptyMap(), env);
+
+        env.withFileSystemIdleTimeout(1, TimeUnit.MINUTES);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("fileSystemIdleTimeout", 60_000L);
+        assertEquals(expected, env);
+    }
+
+    @Test
+    void testWithCapabilityCacheMaxAgeWithUnit() {
+        FTPEnvironment env = createFTPEnvironment();
+
+        assertEquals(Collections.emptyMap(), env);
+
+        env.withCapabilityCacheMaxAge(1, TimeUnit.MINUTES);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("capabilityCacheMaxAge", 60_000L);
+        assertEquals(expected, env);
+    }
+
+    @Test
+    void testWithMetadataCacheTimeToLiveWithUnit() {
+        FTPEnvironment env = createFTPEnvironment();
+
+        assertEquals(Collections.emptyMap(), env);
+
+        env.withMetadataCacheTimeToLive(1, TimeUnit.MINUTES);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("metadataCacheTimeToLive", 60_000L);
+        assertEquals(expected, env);
+    }
+
+    @Test
+    void testWithMissingFileCacheTimeToLiveWithUnit() {
+        FTPEnvironment env = createFTPEnvironment();
+
+        assertEquals(Collections.emptyMap(), env);
+
+        env.withMissingFileCacheTimeToLive(1, TimeUnit.MINUTES);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("missingFileCacheTimeToLive", 60_000L);
+        assertEquals(expected, env);
+    }
+
+    @Test
+    void testWithClientConnectionMaintenanceIntervalWithUnit() {
+        FTPEnvironment env = createFTPEnvironment();
+
+        assertEquals(Collections.emptyMap(), env);
+
+        env.withClientConnectionMaintenanceInterval(1, TimeUnit.MINUTES);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("clientConnectionMaintenanceInterval", 60_000L);
+        assertEquals(expected, env);
+    }
+
+    @Test
+    void testWithClientConnectionKeepAliveIntervalWithUnit() {
+        FTPEnvironment env = createFTPEnvironment();
+
+        assertEquals(Collections.emptyMap(), env);
+
+        env.withClientConnectionKeepAliveInterval(1, TimeUnit.MINUTES);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("clientConnectionKeepAliveInterval", 60_000L);
+        assertEquals(expected, env);
+    }
+
+    @Test
+    void testWithClientValidationIdleTimeWithUnit() {
+        FTPEnvironment env = createFTPEnvironment();
+
+        assertEquals(Collections.emptyMap(), env);
+
+        env.withClientValidationIdleTime(1, TimeUnit.MINUTES);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("clientValidationIdleTime", 60_000L);
+        assertEquals(expected, env);
+    }
+
     @Test
     void testWithClientConnectionWaitTimeoutWithUnit() {
         FTPEnvironment env = createFTPEnvironment();
@@ -947,6 +1180,37 @@ class FTPEnvironmentTest {
                 // a new config is set
                 verify(client).configure(any());
             }
+
+            @Test
+            void testUnparseableEntries() throws IOException {
+                FTPClient client = mock(FTPClient.class);
+
+                FTPEnvironment env = new FTPEnvironment().withUnparseableEntries();
+                env.initializePreConnect(client);
+
+                ArgumentCaptor<FTPClientConfig> captor = ArgumentCaptor.forClass(FTPClientConfig.class);
+                verify(client).configure(captor.capture());
+                assertTrue(captor.getValue().getUnparseableEntries());
+                // the FTP client still asks the FTP server for its system type
+                assertEquals("", captor.getValue().getServerSystemKey());
+            }
+
+            @Test
+            void testUnparseableEntriesWithClientConfig() throws IOException {
+                FTPClient client = mock(FTPClient.class);
+
+                FTPClientConfig config = new FTPClientConfig(FTPClientConfig.SYST_NT);
+
+                FTPEnvironment env = new FTPEnvironment().withClientConfig(config).withUnparseableEntries();
+                env.initializePreConnect(client);
+
+                ArgumentCaptor<FTPClientConfig> captor = ArgumentCaptor.forClass(FTPClientConfig.class);
+                verify(client).configure(captor.capture());
+                assertTrue(captor.getValue().getUnparseableEntries());
+                assertEquals(FTPClientConfig.SYST_NT, captor.getValue().getServerSystemKey());
+                // the config is copied
+                assertFalse(config.getUnparseableEntries());
+            }
         }
 
         @Nested
@@ -1646,4 +1910,50 @@ class FTPEnvironmentTest {
             }
         }
     }
+
+    @Nested
+    class CreateFileEntryParserTest {
+
+        @Test
+        void testWithoutClientConfig() throws IOException {
+            FTPClient client = mock(FTPClient.class);
+            doReturn("UNIX Type: L8").when(client).getSystemType();
+            FTPFileEntryParserFactory parserFactory = mock(FTPFileEntryParserFactory.class);
+
+            FTPEnvironment env = new FTPEnvironment().withParserFactory(parserFactory);
+            env.createFileEntryParser(client);
+
+            verify(parserFactory).createFileEntryParser("UNIX Type: L8");
+            verify(parserFactory, never()).createFileEntryParser(any(FTPClientConfig.class));
+        }
+
+        @Test
+        void testWithClientConfig() throws IOException {
+            FTPClient client = mock(FTPClient.class);
+            FTPFileEntryParserFactory parserFactory = mock(FTPFileEntryParserFactory.class);
+
+            FTPClientConfig config = new FTPClientConfig(FTPClientConfig.SYST_UNIX);
+            config.setServerTimeZoneId("Europe/Amsterdam");
+
+            FTPEnvironment env = new FTPEnvironment().withParserFactory(parserFactory).withClientConfig(config);
+            env.createFileEntryParser(client);
+
+            ArgumentCaptor<FTPClientConfig> captor = ArgumentCaptor.forClass(FTPClientConfig.class);
+            verify(parserFactory).createFileEntryParser(captor.capture());
+            assertEquals(FTPClientConfig.SYST_UNIX, captor.getValue().getServerSystemKey());
+            assertEquals("Europe/Amsterdam", captor.getValue().getServerTimeZoneId());
+            // the system type is known, so the FTP server isn't asked for it
+            verify(client, never()).getSystemType();
+        }
+
+        @Test
+        void testWithServerSystemType() throws IOException {
+            FTPClient client = mock(FTPClient.class);
+
+            FTPEnvironment env = new FTPEnvironment().withServerSystemType(FTPClientConfig.SYST_NT);
+            assertNotNull(env.createFileEntryParser(client));
+
+            verify(client, never()).getSystemType();
+        }
+    }
 }
@@ -18,8 +18,11 @@
 package com.github.robtimus.filesystems.ftp;
 
 import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.AUTO_DETECT;
+import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.MLSD;
 import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.NON_UNIX;
+import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.NON_UNIX_STAT;
 import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.UNIX;
+import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.UNIX_STAT;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.equalTo;
@@ -83,6 +86,33 @@ class FTPFileSystemDirectoryStreamTest {
         }
     }
 
+    @Nested
+    @DisplayName("Use UNIX FTP server: true; FTPFile strategy factory: UNIX_STAT")
+    class UnixServerUsingUnixStatStrategy extends DirectoryStreamTest {
+
+        UnixServerUsingUnixStatStrategy() {
+            super(true, UNIX_STAT);
+        }
+    }
+
+    @Nested
+    @DisplayName("Use UNIX FTP server: false; FTPFile strategy factory: NON_UNIX_STAT")
+    class NonUnixServerUsingNonUnixStatStrategy extends DirectoryStreamTest {
+
+        NonUnixServerUsingNonUnixStatStrategy() {
+            super(false, NON_UNIX_STAT);
+        }
+    }
+
+    @Nested
+    @DisplayName("Use UNIX FTP server: true; FTPFile strategy factory: MLSD")
+    class UnixServerUsingMLSDStrategy extends DirectoryStreamTest {
+
+        UnixServerUsingMLSDStrategy() {
+            super(true, MLSD);
+        }
+    }
+
     abstract static class DirectoryStreamTest extends AbstractFTPFileSystemTest {
 
         private DirectoryStreamTest(boolean useUnixFtpServer, StandardFTPFileStrategyFactory ftpFileStrategyFactory) {
@@ -149,10 +149,10 @@ class FTPFileSystemLoggingTest extends AbstractFTPFileSystemTest {
         String hostname = uri.getHost();
         int port = uri.getPort();
         if (port == -1) {
-            assertThat(debugMessages, hasItem("Creating FTPClientPool to " + hostname + " with poolSize 1 and poolWaitTimeout 0"));
+            assertThat(debugMessages, hasItem("Creating FTPClientPool to " + hostname + " with minPoolSize 1, maxPoolSize 1 and poolWaitTimeout 0"));
             assertThat(debugMessages, hasItem("Created FTPClientPool to " + hostname + " with poolSize 1"));
         } else {
-            assertThat(debugMessages, hasItem("Creating FTPClientPool to " + hostname + ":" + port + " with poolSize 1 and poolWaitTimeout 0"));
+            assertThat(debugMessages, hasItem("Creating FTPClientPool to " + hostname + ":" + port + " with minPoolSize 1, maxPoolSize 1 and poolWaitTimeout 0"));
             assertThat(debugMessages, hasItem("Created FTPClientPool to " + hostname + ":" + port + " with poolSize 1"));
         }
         assertThat(debugMessages, hasItem("Failed to create FTPClientPool, disconnecting all created clients"));
@@ -161,7 +161,7 @@ class FTPFileSystemLoggingTest extends AbstractFTPFileSystemTest {
         assertThat(debugMessages, hasItem(matchesRegex("Reference count for client 'client-\\d+' increased to 1")));
         assertThat(debugMessages, hasItem(matchesRegex("Reference count for client 'client-\\d+' decreased to 0")));
         assertThat(debugMessages, hasItem(matchesRegex("Returned client 'client-\\d+' to pool, current pool size: 1")));
-        assertThat(debugMessages, hasItem("Drained pool for keep alive"));
+        assertThat(debugMessages, hasItem(matchesRegex("Sent keep alive to idle client 'client-\\d+'")));
         assertThat(debugMessages, hasItem("Drained pool for close"));
         assertThat(debugMessages, hasItem(matchesRegex("Disconnected client 'client-\\d+'")));
 
@@ -27,14 +27,20 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOError;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.ServerSocket;
 import java.net.URI;
+import java.nio.file.ClosedFileSystemException;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystemNotFoundException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.ProviderMismatchException;
@@ -42,10 +48,15 @@ import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.PosixFileAttributeView;
 import java.nio.file.spi.FileSystemProvider;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockftpserver.fake.filesystem.FileEntry;
 import com.github.robtimus.filesystems.Messages;
 import com.github.robtimus.filesystems.URISupport;
@@ -123,6 +134,246 @@ class FTPFileSystemProviderTest extends AbstractFTPFileSystemTest {
         assertEquals(uri.toString(), exception.getMessage());
     }
 
+    // lazy initialization
+
+    @Test
+    void testLazyInitialization() throws IOException {
+        addDirectory("/home/test/foo");
+
+        FTPFileSystemProvider provider = new FTPFileSystemProvider();
+        FTPEnvironment env = createEnv(StandardFTPFileStrategyFactory.AUTO_DETECT)
+                .withLazyInitializationEnabled(true);
+        try (FTPFileSystem fs = newFileSystem(provider, env)) {
+            // the only client connection is in use while the file system is initialized
+            assertTrue(Files.isDirectory(fs.getPath("foo")));
+            assertEquals(fs.getPath("/home/test/foo"), fs.getPath("foo").toAbsolutePath());
+        }
+    }
+
+    @Test
+    void testLazyInitializationWithoutFileOperation() throws IOException {
+        FTPFileSystemProvider provider = new FTPFileSystemProvider();
+        FTPEnvironment env = createEnv(UNIX)
+                .withLazyInitializationEnabled(true);
+        try (FTPFileSystem fs = newFileSystem(provider, env)) {
+            assertEquals(fs.getPath("/home/test/foo"), fs.getPath("foo").toAbsolutePath());
+        }
+    }
+
+    @Test
+    void testLazyInitializationWithUnreachableServer() throws IOException {
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        URI uri = URI.create("ftp://localhost:" + port);
+
+        FTPFileSystemProvider provider = new FTPFileSystemProvider();
+        FTPEnvironment env = createEnv(UNIX)
+                .withLazyInitializationEnabled(true);
+        // creating the file system does not connect to the FTP server
+        try (FileSystem fs = provider.newFileSystem(uri, env)) {
+            Path path = fs.getPath("foo");
+            // the failure is reported when the file system is first used
+            assertThrows(IOException.class, () -> Files.readAttributes(path, BasicFileAttributes.class));
+            assertThrows(IOError.class, path::toAbsolutePath);
+        }
+    }
+
+    // capability cache
+
+    @Test
+    void testCapabilityCache(@TempDir Path tempDir) throws IOException {
+        Path cacheFile = tempDir.resolve("capabilities.properties");
+        FTPEnvironment env = createEnv(StandardFTPFileStrategyFactory.AUTO_DETECT)
+                .withCapabilityCacheFile(cacheFile);
+
+        FTPFileSystemProvider provider = new FTPFileSystemProvider();
+        try (FTPFileSystem fs = newFileSystem(provider, env)) {
+            assertEquals(fs.getPath("/home/test/foo"), fs.getPath("foo").toAbsolutePath());
+        }
+
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(cacheFile)) {
+            properties.load(input);
+        }
+        // the key contains the user name but not the password
+        String key = properties.stringPropertyNames().stream()
+                .filter(name -> name.endsWith(".defaultDirectory"))
+                .map(name -> name.substring(0, name.length() - ".defaultDirectory".length()))
+                .findFirst()
+                .orElseThrow(AssertionError::new);
+        assertEquals(URI.create(getBaseUrl()), URI.create(key));
+        assertEquals("/home/test", properties.getProperty(key + ".defaultDirectory"));
+        // the FTP server supports MLST, but AUTO_DETECT does not use MLSD
+        assertEquals("UNIX", properties.getProperty(key + ".strategy"));
+        assertNotNull(properties.getProperty(key + ".systemType"));
+
+        // change the stored default directory, to verify that the stored capabilities are used
+        properties.setProperty(key + ".defaultDirectory", "/cached");
+        try (OutputStream output = Files.newOutputStream(cacheFile)) {
+            properties.store(output, null);
+        }
+
+        try (FTPFileSystem fs = newFileSystem(provider, env)) {
+            assertEquals(fs.getPath("/cached/foo"), fs.getPath("foo").toAbsolutePath());
+            assertTrue(Files.isDirectory(fs.getPath("/home/test")));
+        }
+
+        // expired capabilities are detected again
+        env.withCapabilityCacheMaxAge(1, TimeUnit.MILLISECONDS);
+        try (FTPFileSystem fs = newFileSystem(provider, env)) {
+            assertEquals(fs.getPath("/home/test/foo"), fs.getPath("foo").toAbsolutePath());
+        }
+    }
+
+    @Test
+    void testCapabilityCacheRevalidation(@TempDir Path tempDir) throws IOException {
+        addFile("/home/test/foo");
+
+        Path cacheFile = tempDir.resolve("capabilities.properties");
+        FTPEnvironment env = createEnv(StandardFTPFileStrategyFactory.AUTO_DETECT)
+                .withCapabilityCacheFile(cacheFile);
+
+        FTPFileSystemProvider provider = new FTPFileSystemProvider();
+        try (FTPFileSystem fs = newFileSystem(provider, env)) {
+            assertTrue(Files.exists(fs.getPath("foo")));
+        }
+
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(cacheFile)) {
+            properties.load(input);
+        }
+        String key = getBaseUrl();
+        String strategy = properties.getProperty(key + ".strategy");
+
+        // store outdated capabilities
+        properties.setProperty(key + ".defaultDirectory", "/cached");
+        properties.setProperty(key + ".strategy", "NON_UNIX");
+        try (OutputStream output = Files.newOutputStream(cacheFile)) {
+            properties.store(output, null);
+        }
+
+        try (FTPFileSystem fs = newFileSystem(provider, env)) {
+            assertEquals(fs.getPath("/cached/foo"), fs.getPath("foo").toAbsolutePath());
+            // /cached/foo does not exist, so the stored capabilities are verified and replaced
+            assertTrue(Files.exists(fs.getPath("foo")));
+            assertEquals(fs.getPath("/home/test/foo"), fs.getPath("foo").toAbsolutePath());
+        }
+
+        properties.clear();
+        try (InputStream input = Files.newInputStream(cacheFile)) {
+            properties.load(input);
+        }
+        assertEquals("/home/test", properties.getProperty(key + ".defaultDirectory"));
+        assertEquals(strategy, properties.getProperty(key + ".strategy"));
+    }
+
+    @Test
+    void testCopyWithFullConnectionBudget() throws IOException {
+        addFile("/home/test/foo");
+
+        FTPFileSystemProvider provider = new FTPFileSystemProvider();
+        FTPEnvironment env = createEnv(UNIX)
+                .withHostConnectionBudget(1);
+        try (FTPFileSystem fs = newFileSystem(provider, env)) {
+            // the only permit of the budget is used by the client that copies the file; the second client must not wait for it
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> Files.copy(fs.getPath("foo"), fs.getPath("bar")));
+            assertTrue(Files.isRegularFile(fs.getPath("bar")));
+            assertEquals(1, provider.getConnectionBudget(getURI().getHost(), getURI().getPort(), env).used());
+        }
+    }
+
+    @Test
+    void testMetadataCache() throws IOException {
+        addDirectory("/home/test/foo");
+        addFile("/home/test/foo/bar");
+
+        FTPFileSystemProvider provider = new FTPFileSystemProvider();
+        FTPEnvironment env = createEnv(UNIX)
+                .withMetadataCacheTimeToLive(1, TimeUnit.MINUTES);
+        try (FTPFileSystem fs = newFileSystem(provider, env)) {
+            Path foo = fs.getPath("foo");
+            Path bar = foo.resolve("bar");
+            assertTrue(Files.exists(bar));
+            assertEquals(1, countChildren(foo));
+
+            // changes that are not made through the file system are not noticed
+            delete("/home/test/foo/bar");
+            assertTrue(Files.exists(bar));
+            assertEquals(1, countChildren(foo));
+
+            // changes that are made through the file system invalidate the parent
+            Files.createDirectory(foo.resolve("baz"));
+            assertTrue(Files.isDirectory(foo.resolve("baz")));
+            assertEquals(1, countChildren(foo));
+
+            Files.write(bar, new byte[] { 1, 2, 3 });
+            assertEquals(3, Files.size(bar));
+            assertEquals(2, countChildren(foo));
+
+            Files.copy(bar, foo.resolve("qux"));
+            assertEquals(3, Files.size(foo.resolve("qux")));
+            assertEquals(3, countChildren(foo));
+
+            Files.move(foo.resolve("qux"), foo.resolve("quux"));
+            assertFalse(Files.exists(foo.resolve("qux")));
+            assertTrue(Files.exists(foo.resolve("quux")));
+
+            Files.delete(bar);
+            assertFalse(Files.exists(bar));
+            assertEquals(2, countChildren(foo));
+
+            // changes to a directory invalidate its descendants
+            Files.move(foo, fs.getPath("foo2"));
+            assertFalse(Files.exists(foo.resolve("quux")));
+            assertTrue(Files.exists(fs.getPath("foo2/quux")));
+        }
+    }
+
+    @Test
+    void testMissingFileCache() throws IOException {
+        addDirectory("/home/test/inbox");
+        addFile("/home/test/bar");
+
+        FTPFileSystemProvider provider = new FTPFileSystemProvider();
+        FTPEnvironment env = createEnv(UNIX)
+                .withMissingFileCacheTimeToLive(1, TimeUnit.MINUTES);
+        try (FTPFileSystem fs = newFileSystem(provider, env)) {
+            Path inbox = fs.getPath("inbox");
+            Path foo = inbox.resolve("foo");
+            assertFalse(Files.exists(foo));
+
+            // files that are not created through the file system are not noticed
+            addFile("/home/test/inbox/foo");
+            assertFalse(Files.exists(foo));
+            assertThrows(NoSuchFileException.class, () -> Files.size(foo));
+
+            // existing files are not cached
+            assertTrue(Files.exists(fs.getPath("bar")));
+            delete("/home/test/bar");
+            assertFalse(Files.exists(fs.getPath("bar")));
+
+            // files that are created through the file system are noticed
+            Path baz = inbox.resolve("baz");
+            assertFalse(Files.exists(baz));
+            Files.write(baz, new byte[] { 1, 2, 3 });
+            assertTrue(Files.exists(baz));
+
+            Path qux = inbox.resolve("qux");
+            assertFalse(Files.exists(qux));
+            Files.move(baz, qux);
+            assertTrue(Files.exists(qux));
+            assertFalse(Files.exists(baz));
+        }
+    }
+
+    private long countChildren(Path dir) throws IOException {
+        try (Stream<Path> stream = Files.list(dir)) {
+            return stream.count();
+        }
+    }
+
     // FTPFileSystemProvider.getPath
 
     @Test
@@ -240,6 +491,41 @@ class FTPFileSystemProviderTest extends AbstractFTPFileSystemTest {
         }
     }
 
+    // FTPFileSystemProvider.reconfigure
+
+    @Test
+    void testReconfigureWithFTPFileSystem() throws IOException {
+        FTPFileSystemProvider provider = new FTPFileSystemProvider();
+        try (FTPFileSystem fs = newFileSystem(provider, createEnv(UNIX))) {
+            FTPEnvironment env = new FTPEnvironment()
+                    .withMaxClientConnections(2)
+                    .withClientConnectionWaitTimeout(1, TimeUnit.SECONDS);
+            assertDoesNotThrow(() -> FTPFileSystemProvider.reconfigure(fs, env));
+
+            // the file system remains usable
+            assertTrue(Files.isDirectory(fs.getPath("/")));
+        }
+    }
+
+    @Test
+    void testReconfigureWithClosedFTPFileSystem() throws IOException {
+        FTPFileSystemProvider provider = new FTPFileSystemProvider();
+        @SuppressWarnings("resource")
+        FTPFileSystem fs = newFileSystem(provider, createEnv(UNIX));
+        fs.close();
+
+        FTPEnvironment env = new FTPEnvironment().withMaxClientConnections(2);
+        assertThrows(ClosedFileSystemException.class, () -> FTPFileSystemProvider.reconfigure(fs, env));
+    }
+
+    @Test
+    void testReconfigureWithNonFTPFileSystem() {
+        @SuppressWarnings("resource")
+        FileSystem defaultFileSystem = FileSystems.getDefault();
+        FTPEnvironment env = new FTPEnvironment();
+        assertThrows(ProviderMismatchException.class, () -> FTPFileSystemProvider.reconfigure(defaultFileSystem, env));
+    }
+
     // FTPFileSystemProvider.keepAlive
 
     @Test
@@ -18,8 +18,11 @@
 package com.github.robtimus.filesystems.ftp;
 
 import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.AUTO_DETECT;
+import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.MLSD;
 import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.NON_UNIX;
+import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.NON_UNIX_STAT;
 import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.UNIX;
+import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.UNIX_STAT;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
@@ -40,6 +43,7 @@ import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import java.io.IOException;
@@ -69,13 +73,20 @@ import java.nio.file.attribute.PosixFileAttributes;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.parser.DefaultFTPFileEntryParserFactory;
+import org.apache.commons.net.ftp.parser.FTPFileEntryParserFactory;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -84,6 +95,8 @@ import org.junit.jupiter.api.TestInstance.Lifecycle;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.mockftpserver.core.command.CommandHandler;
+import org.mockftpserver.core.command.UnsupportedCommandHandler;
 import org.mockftpserver.fake.filesystem.DirectoryEntry;
 import org.mockftpserver.fake.filesystem.FileEntry;
 import org.mockftpserver.fake.filesystem.FileSystemEntry;
@@ -132,6 +145,280 @@ class FTPFileSystemTest {
         }
     }
 
+    @Nested
+    @DisplayName("Use UNIX FTP server: true; FTPFile strategy factory: UNIX_STAT")
+    class UnixServerUsingUnixStatStrategy extends FileSystemTest {
+
+        UnixServerUsingUnixStatStrategy() {
+            super(true, UNIX_STAT);
+        }
+
+        @Test
+        void testGetFTPFileWithoutDataConnection() throws IOException {
+            addFile("/foo/bar");
+
+            // STAT does not need LIST
+            CommandHandler listCommandHandler = setCommandHandler("LIST", new UnsupportedCommandHandler());
+            try {
+                PosixFileAttributes attributes = fileSystem.readAttributes(createPath("/foo/bar"));
+                assertTrue(attributes.isRegularFile());
+                attributes = fileSystem.readAttributes(createPath("/foo"));
+                assertTrue(attributes.isDirectory());
+
+                try (DirectoryStream<Path> stream = fileSystem.newDirectoryStream(createPath("/foo"), entry -> true)) {
+                    assertEquals(createPath("/foo/bar"), stream.iterator().next());
+                }
+                assertThrows(NoSuchFileException.class, () -> fileSystem.readAttributes(createPath("/foo/baz")));
+            } finally {
+                setCommandHandler("LIST", listCommandHandler);
+            }
+        }
+
+        @Test
+        void testGetFTPFileWithoutStat() throws IOException {
+            addFile("/foo/bar");
+
+            // without STAT, LIST is used
+            CommandHandler statCommandHandler = setCommandHandler("STAT", new UnsupportedCommandHandler());
+            try {
+                PosixFileAttributes attributes = fileSystem.readAttributes(createPath("/foo/bar"));
+                assertTrue(attributes.isRegularFile());
+                attributes = fileSystem.readAttributes(createPath("/foo"));
+                assertTrue(attributes.isDirectory());
+
+                try (DirectoryStream<Path> stream = fileSystem.newDirectoryStream(createPath("/foo"), entry -> true)) {
+                    assertEquals(createPath("/foo/bar"), stream.iterator().next());
+                }
+                assertThrows(NoSuchFileException.class, () -> fileSystem.readAttributes(createPath("/foo/baz")));
+            } finally {
+                setCommandHandler("STAT", statCommandHandler);
+            }
+        }
+
+        @Test
+        void testGetFTPFileWithTruncatedStat() throws IOException {
+            addFile("/foo/bar");
+            addFile("/foo/baz");
+
+            // the last entry of the reply is truncated, so LIST is used
+            CommandHandler statCommandHandler = setCommandHandler("STAT", (command, session) -> session.sendReply(213, "Status of /foo:\r\n"
+                    + "-rw-r--r--   1 none     none            0 Jan 01  2020 bar\r\n"
+                    + "-rw-r--r--   1 none\r\n"
+                    + "End of status"));
+            try {
+                PosixFileAttributes attributes = fileSystem.readAttributes(createPath("/foo/baz"));
+                assertTrue(attributes.isRegularFile());
+
+                Set<Path> children = new HashSet<>();
+                try (DirectoryStream<Path> stream = fileSystem.newDirectoryStream(createPath("/foo"), entry -> true)) {
+                    stream.forEach(children::add);
+                }
+                assertEquals(new HashSet<>(Arrays.asList(createPath("/foo/bar"), createPath("/foo/baz"))), children);
+            } finally {
+                setCommandHandler("STAT", statCommandHandler);
+            }
+        }
+
+        @Test
+        void testGetChildrenWithLargeStat() throws IOException {
+            for (int i = 0; i < 1000; i++) {
+                addFile("/foo/file" + i);
+            }
+
+            AtomicInteger listCount = new AtomicInteger();
+            AtomicReference<CommandHandler> listCommandHandler = new AtomicReference<>();
+            listCommandHandler.set(setCommandHandler("LIST", (command, session) -> {
+                listCount.incrementAndGet();
+                listCommandHandler.get().handleCommand(command, session);
+            }));
+            try {
+                // including the . entry, the reply has more than 1000 entries, so LIST is used
+                try (DirectoryStream<Path> stream = fileSystem.newDirectoryStream(createPath("/foo"), entry -> true)) {
+                    assertEquals(1000, StreamSupport.stream(stream.spliterator(), false).count());
+                }
+                assertEquals(1, listCount.get());
+
+                // smaller listings still use STAT
+                delete("/foo/file0");
+                delete("/foo/file1");
+                try (DirectoryStream<Path> stream = fileSystem.newDirectoryStream(createPath("/foo"), entry -> true)) {
+                    assertEquals(998, StreamSupport.stream(stream.spliterator(), false).count());
+                }
+                assertEquals(1, listCount.get());
+            } finally {
+                setCommandHandler("LIST", listCommandHandler.get());
+            }
+        }
+
+        @Test
+        void testStatParserCreatedOnce() throws IOException {
+            addFile("/foo/bar");
+
+            FTPFileEntryParserFactory parserFactory = spy(new DefaultFTPFileEntryParserFactory());
+            FTPEnvironment env = createEnv(UNIX_STAT)
+                    .withParserFactory(parserFactory);
+            try (FTPFileSystem fs = (FTPFileSystem) FileSystems.newFileSystem(getURI(), env)) {
+                for (int i = 0; i < 3; i++) {
+                    PosixFileAttributes attributes = fs.readAttributes(createPath(fs, "/foo/bar"));
+                    assertTrue(attributes.isRegularFile());
+                }
+            }
+            // the configured parser factory is used, but only once
+            verify(parserFactory).createFileEntryParser(anyString());
+        }
+    }
+
+    @Nested
+    @DisplayName("Use UNIX FTP server: false; FTPFile strategy factory: NON_UNIX_STAT")
+    class NonUnixServerUsingNonUnixStatStrategy extends FileSystemTest {
+
+        NonUnixServerUsingNonUnixStatStrategy() {
+            super(false, NON_UNIX_STAT);
+        }
+
+        @Test
+        void testGetFTPFileWithoutDataConnection() throws IOException {
+            addFile("/foo/bar");
+
+            // STAT does not need LIST
+            CommandHandler listCommandHandler = setCommandHandler("LIST", new UnsupportedCommandHandler());
+            try {
+                PosixFileAttributes attributes = fileSystem.readAttributes(createPath("/foo/bar"));
+                assertTrue(attributes.isRegularFile());
+                attributes = fileSystem.readAttributes(createPath("/foo"));
+                assertTrue(attributes.isDirectory());
+
+                try (DirectoryStream<Path> stream = fileSystem.newDirectoryStream(createPath("/foo"), entry -> true)) {
+                    assertEquals(createPath("/foo/bar"), stream.iterator().next());
+                }
+                assertThrows(NoSuchFileException.class, () -> fileSystem.readAttributes(createPath("/foo/baz")));
+            } finally {
+                setCommandHandler("LIST", listCommandHandler);
+            }
+        }
+
+        @Test
+        void testGetFTPFileWithoutStat() throws IOException {
+            addFile("/foo/bar");
+
+            // without STAT, LIST is used
+            CommandHandler statCommandHandler = setCommandHandler("STAT", new UnsupportedCommandHandler());
+            try {
+                PosixFileAttributes attributes = fileSystem.readAttributes(createPath("/foo/bar"));
+                assertTrue(attributes.isRegularFile());
+                attributes = fileSystem.readAttributes(createPath("/foo"));
+                assertTrue(attributes.isDirectory());
+
+                try (DirectoryStream<Path> stream = fileSystem.newDirectoryStream(createPath("/foo"), entry -> true)) {
+                    assertEquals(createPath("/foo/bar"), stream.iterator().next());
+                }
+                assertThrows(NoSuchFileException.class, () -> fileSystem.readAttributes(createPath("/foo/baz")));
+            } finally {
+                setCommandHandler("STAT", statCommandHandler);
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("Use UNIX FTP server: true; FTPFile strategy factory: MLSD")
+    class UnixServerUsingMLSDStrategy extends FileSystemTest {
+
+        UnixServerUsingMLSDStrategy() {
+            super(true, MLSD);
+        }
+
+        @Test
+        void testReadAttributesExactLastModifiedTime() throws IOException {
+            FileEntry foo = addFile("/foo");
+            foo.setLastModified(new Date(1_600_000_000_123L));
+
+            // MDTM has a precision of seconds; MLSD has a precision of milliseconds
+            PosixFileAttributes attributes = fileSystem.readAttributes(createPath("/foo"));
+            assertEquals(1_600_000_000_123L, attributes.lastModifiedTime().toMillis());
+        }
+
+        @Test
+        void testGetFTPFileWithoutDataConnection() throws IOException {
+            addFile("/foo/bar");
+
+            // MLST does not need MLSD
+            CommandHandler mlsdCommandHandler = setCommandHandler("MLSD", new UnsupportedCommandHandler());
+            try {
+                PosixFileAttributes attributes = fileSystem.readAttributes(createPath("/foo/bar"));
+                assertTrue(attributes.isRegularFile());
+                attributes = fileSystem.readAttributes(createPath("/foo"));
+                assertTrue(attributes.isDirectory());
+                attributes = fileSystem.readAttributes(createPath("/"));
+                assertTrue(attributes.isDirectory());
+
+                assertThrows(NoSuchFileException.class, () -> fileSystem.readAttributes(createPath("/foo/baz")));
+            } finally {
+                setCommandHandler("MLSD", mlsdCommandHandler);
+            }
+        }
+
+        @Test
+        void testGetFTPFileWithoutMLST() throws IOException {
+            FileEntry bar = addFile("/foo/bar");
+            addSymLink("/foo/baz", bar);
+
+            // without MLST, the parent is listed using MLSD
+            AtomicInteger mlstCount = new AtomicInteger();
+            CommandHandler mlstCommandHandler = setCommandHandler("MLST", (command, session) -> {
+                mlstCount.incrementAndGet();
+                session.sendReply(502, "Command not implemented");
+            });
+            // use a separate file system, because the refusal of MLST is remembered
+            try (FTPFileSystem fs = (FTPFileSystem) FileSystems.newFileSystem(getURI(), createEnv(MLSD))) {
+                PosixFileAttributes attributes = fs.readAttributes(createPath(fs, "/foo/bar"));
+                assertTrue(attributes.isRegularFile());
+                attributes = fs.readAttributes(createPath(fs, "/foo/baz"), LinkOption.NOFOLLOW_LINKS);
+                assertTrue(attributes.isSymbolicLink());
+                attributes = fs.readAttributes(createPath(fs, "/foo"));
+                assertTrue(attributes.isDirectory());
+                attributes = fs.readAttributes(createPath(fs, "/"));
+                assertTrue(attributes.isDirectory());
+
+                assertThrows(NoSuchFileException.class, () -> fs.readAttributes(createPath(fs, "/foo/qux")));
+
+                // MLST is only sent until the FTP server refuses it
+                assertEquals(1, mlstCount.get());
+            } finally {
+                setCommandHandler("MLST", mlstCommandHandler);
+            }
+        }
+
+        @Test
+        void testNewDirectoryStreamLinkToFile() {
+            FileEntry foo = addFile("/foo");
+            addSymLink("/bar", foo);
+
+            // MLSD follows the link, so the link is followed to find out that it points to a file
+            FileSystemException exception = assertThrows(NotDirectoryException.class,
+                    () -> fileSystem.newDirectoryStream(createPath("/bar"), entry -> true));
+            assertEquals("/bar", exception.getFile());
+
+            exception = assertThrows(NotDirectoryException.class, () -> fileSystem.newDirectoryStream(createPath("/foo"), entry -> true));
+            assertEquals("/foo", exception.getFile());
+        }
+
+        @Test
+        void testAutoDetect() throws IOException {
+            addFile("/foo");
+
+            // the FTP server supports MLST, but AUTO_DETECT should still use LIST
+            CommandHandler mlsdCommandHandler = setCommandHandler("MLSD", new UnsupportedCommandHandler());
+            CommandHandler mlstCommandHandler = setCommandHandler("MLST", new UnsupportedCommandHandler());
+            try (FTPFileSystem fs = (FTPFileSystem) FileSystems.newFileSystem(getURI(), createEnv(AUTO_DETECT))) {
+                PosixFileAttributes attributes = fs.readAttributes(createPath(fs, "/foo"));
+                assertTrue(attributes.isRegularFile());
+            } finally {
+                setCommandHandler("MLSD", mlsdCommandHandler);
+                setCommandHandler("MLST", mlstCommandHandler);
+            }
+        }
+    }
+
     @Nested
     @DisplayName("List hidden files")
     @TestInstance(Lifecycle.PER_CLASS)
@@ -2313,7 +2600,9 @@ class FTPFileSystemTest {
             assertEquals("/foo", exception.getFile());
 
             VerificationMode verificationMode = useUnixFtpServer() && usesUnixFTPFileStrategyFactory() ? times(1) : never();
-            verify(getExceptionFactory(), verificationMode).createGetFileException(eq("/foo"), eq(226), anyString());
+            // STAT replies with 550, LIST with 226
+            int replyCode = usesStatFTPFileStrategyFactory() ? 550 : 226;
+            verify(getExceptionFactory(), verificationMode).createGetFileException(eq("/foo"), eq(replyCode), anyString());
         }
 
         @Test
@@ -59,6 +59,7 @@ class FTPLoggerTest {
         map.put(String.class, "foobar");
 
         map.put(IOException.class, new IOException("dummy"));
+        map.put(Exception.class, new Exception("dummy"));
 
         INSTANCES = Collections.unmodifiableMap(map);
     }
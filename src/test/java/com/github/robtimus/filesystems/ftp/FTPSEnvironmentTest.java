@@ -19,6 +19,8 @@ package com.github.robtimus.filesystems.ftp;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.params.provider.Arguments.arguments;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
@@ -77,6 +79,8 @@ class FTPSEnvironmentTest extends FTPEnvironmentTest {
                 arguments("withUseClientMode", "useClientMode", true),
                 arguments("withEnabledCipherSuites", "enabledCipherSuites", new String[] { "suite1", "suite2", }),
                 arguments("withEnabledProtocols", "enabledProtocols", new String[] { "protocol1", "protocol2", }),
+                arguments("withSSLSessionReuseEnabled", "sslSessionReuseEnabled", true),
+                arguments("withSSLSessionCacheSize", "sslSessionCacheSize", 100),
         };
         return Stream.concat(super.findSetters(), Arrays.stream(arguments));
     }
@@ -498,6 +502,58 @@ class FTPSEnvironmentTest extends FTPEnvironmentTest {
         }
     }
 
+    @Nested
+    class SharedSSLContextTest {
+
+        @Test
+        void testSharedSSLContextCreated() throws IOException {
+            FTPSEnvironment env = new FTPSEnvironment()
+                    .withSSLSessionReuseEnabled(true)
+                    .withSSLSessionCacheSize(10);
+
+            SSLContext context = env.getSharedSSLContext();
+            assertSame(context, env.getSharedSSLContext());
+            assertEquals(10, context.getClientSessionContext().getSessionCacheSize());
+
+            // clones share the SSL context, so their clients can resume each other's SSL sessions
+            assertSame(context, env.clone().getSharedSSLContext());
+            assertSame(context, ((FTPSEnvironment) env.withServerSystemType("UNIX")).getSharedSSLContext());
+        }
+
+        @Test
+        void testSharedSSLContextCreatedForChangedClone() throws IOException {
+            FTPSEnvironment env = new FTPSEnvironment()
+                    .withSSLSessionReuseEnabled(true);
+            FTPSEnvironment clone = env.clone()
+                    .withSSLSessionCacheSize(10);
+
+            SSLContext context = env.getSharedSSLContext();
+            SSLContext cloneContext = clone.getSharedSSLContext();
+            assertNotSame(context, cloneContext);
+            assertEquals(10, cloneContext.getClientSessionContext().getSessionCacheSize());
+            assertSame(context, env.getSharedSSLContext());
+            assertSame(cloneContext, clone.getSharedSSLContext());
+        }
+
+        @Test
+        void testSharedSSLContextSet() throws Exception {
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, null, null);
+
+            int cacheSize = sslContext.getClientSessionContext().getSessionCacheSize();
+
+            FTPSEnvironment env = new FTPSEnvironment()
+                    .withSSLContext(sslContext)
+                    .withSSLSessionReuseEnabled(true)
+                    .withSSLSessionCacheSize(cacheSize + 1);
+
+            assertSame(sslContext, env.getSharedSSLContext());
+            // the SSL context is owned by the caller, so it's not changed
+            assertEquals(cacheSize, sslContext.getClientSessionContext().getSessionCacheSize());
+            assertSame(sslContext, env.clone().getSharedSSLContext());
+        }
+    }
+
     @Nested
     class ConnectTest {
         // added to skip inherited connect tests
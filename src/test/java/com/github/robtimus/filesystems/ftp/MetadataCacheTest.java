@@ -0,0 +1,184 @@
+/*
+ * MetadataCacheTest.java
+ * Copyright 2020 Rob Spoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.robtimus.filesystems.ftp;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.net.ftp.FTPFile;
+import org.junit.jupiter.api.Test;
+
+class MetadataCacheTest {
+
+    @Test
+    void testGetFTPFile() throws IOException {
+        MetadataCache cache = new MetadataCache(TimeUnit.MINUTES.toMillis(1), 0, 10);
+        AtomicInteger loadCount = new AtomicInteger();
+        FTPFile ftpFile = new FTPFile();
+
+        assertSame(ftpFile, cache.getFTPFile("/foo", () -> load(ftpFile, loadCount)));
+        assertSame(ftpFile, cache.getFTPFile("/foo", () -> load(ftpFile, loadCount)));
+        assertEquals(1, loadCount.get());
+
+        // links and children are cached separately
+        assertNull(cache.getLink("/foo", () -> load(null, loadCount)));
+        assertNull(cache.getLink("/foo", () -> load(null, loadCount)));
+        assertEquals(2, loadCount.get());
+
+        List<FTPFile> children = cache.getChildren("/foo", () -> load(Collections.singletonList(ftpFile), loadCount));
+        assertEquals(Collections.singletonList(ftpFile), children);
+        assertSame(children, cache.getChildren("/foo", () -> load(Collections.emptyList(), loadCount)));
+        assertEquals(3, loadCount.get());
+        assertThrows(UnsupportedOperationException.class, () -> children.add(ftpFile));
+    }
+
+    @Test
+    void testGetFTPFileWithException() throws IOException {
+        MetadataCache cache = new MetadataCache(TimeUnit.MINUTES.toMillis(1), 0, 10);
+
+        assertThrows(NoSuchFileException.class, () -> cache.getFTPFile("/foo", () -> {
+            throw new NoSuchFileException("/foo");
+        }));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testGetFTPFileWithMissingFile() throws IOException {
+        MetadataCache cache = new MetadataCache(0, TimeUnit.MINUTES.toMillis(1), 10);
+        AtomicInteger loadCount = new AtomicInteger();
+
+        NoSuchFileException exception = assertThrows(NoSuchFileException.class, () -> cache.getFTPFile("/foo", () -> {
+            loadCount.incrementAndGet();
+            throw new FTPNoSuchFileException("foo", 550, "not found");
+        }));
+        NoSuchFileException cachedException = assertThrows(NoSuchFileException.class, () -> cache.getFTPFile("/foo", () -> {
+            loadCount.incrementAndGet();
+            return new FTPFile();
+        }));
+        assertEquals(1, loadCount.get());
+        assertNotSame(exception, cachedException);
+        assertThat(cachedException, instanceOf(FTPNoSuchFileException.class));
+        assertEquals("foo", cachedException.getFile());
+        assertEquals(550, ((FTPNoSuchFileException) cachedException).getReplyCode());
+        assertEquals("not found", cachedException.getReason());
+
+        // existing files are not cached
+        cache.invalidate("/foo", "/");
+        cache.getFTPFile("/foo", () -> load(new FTPFile(), loadCount));
+        cache.getFTPFile("/foo", () -> load(new FTPFile(), loadCount));
+        assertEquals(3, loadCount.get());
+    }
+
+    @Test
+    void testTimeToLive() throws IOException, InterruptedException {
+        MetadataCache cache = new MetadataCache(10, 0, 10);
+        AtomicInteger loadCount = new AtomicInteger();
+        FTPFile ftpFile = new FTPFile();
+
+        cache.getFTPFile("/foo", () -> load(ftpFile, loadCount));
+
+        Thread.sleep(50);
+
+        cache.getFTPFile("/foo", () -> load(ftpFile, loadCount));
+        assertEquals(2, loadCount.get());
+    }
+
+    @Test
+    void testMaxEntries() throws IOException {
+        MetadataCache cache = new MetadataCache(TimeUnit.MINUTES.toMillis(1), 0, 2);
+        AtomicInteger loadCount = new AtomicInteger();
+        FTPFile ftpFile = new FTPFile();
+
+        cache.getFTPFile("/foo", () -> load(ftpFile, loadCount));
+        cache.getFTPFile("/bar", () -> load(ftpFile, loadCount));
+        // use /foo, so /bar is the least recently used entry
+        cache.getFTPFile("/foo", () -> load(ftpFile, loadCount));
+        cache.getFTPFile("/baz", () -> load(ftpFile, loadCount));
+        assertEquals(3, loadCount.get());
+        assertEquals(2, cache.size());
+
+        cache.getFTPFile("/foo", () -> load(ftpFile, loadCount));
+        assertEquals(3, loadCount.get());
+
+        cache.getFTPFile("/bar", () -> load(ftpFile, loadCount));
+        assertEquals(4, loadCount.get());
+    }
+
+    @Test
+    void testInvalidate() throws IOException {
+        MetadataCache cache = new MetadataCache(TimeUnit.MINUTES.toMillis(1), 0, 10);
+        FTPFile ftpFile = new FTPFile();
+
+        cache.getFTPFile("/", () -> ftpFile);
+        cache.getChildren("/", Collections::emptyList);
+        cache.getFTPFile("/foo", () -> ftpFile);
+        cache.getChildren("/foo", Collections::emptyList);
+        cache.getFTPFile("/foo/bar", () -> ftpFile);
+        cache.getLink("/foo/bar/baz", () -> ftpFile);
+        cache.getFTPFile("/foo2", () -> ftpFile);
+        assertEquals(7, cache.size());
+
+        cache.invalidate("/foo/bar", "/foo");
+        // only /, its children and /foo2 remain
+        assertEquals(3, cache.size());
+
+        cache.invalidate("/foo2", "/");
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testInvalidateWhileLoading() throws IOException {
+        MetadataCache cache = new MetadataCache(TimeUnit.MINUTES.toMillis(1), 0, 10);
+        FTPFile ftpFile = new FTPFile();
+
+        cache.getFTPFile("/foo", () -> {
+            // the loaded FTP file may be outdated, so it should not be stored
+            cache.invalidate("/foo", "/");
+            return ftpFile;
+        });
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testInvalidateAll() throws IOException {
+        MetadataCache cache = new MetadataCache(TimeUnit.MINUTES.toMillis(1), 0, 10);
+        FTPFile ftpFile = new FTPFile();
+
+        cache.getFTPFile("/foo", () -> ftpFile);
+        cache.getFTPFile("/bar", () -> ftpFile);
+        assertEquals(2, cache.size());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+
+    private <T> T load(T value, AtomicInteger loadCount) {
+        loadCount.incrementAndGet();
+        return value;
+    }
+}
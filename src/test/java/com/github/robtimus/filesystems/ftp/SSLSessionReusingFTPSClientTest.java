@@ -0,0 +1,134 @@
+/*
+ * SSLSessionReusingFTPSClientTest.java
+ * Copyright 2020 Rob Spoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.robtimus.filesystems.ftp;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import org.apache.commons.net.util.SSLContextUtils;
+import org.apache.commons.net.util.TrustManagerUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("nls")
+class SSLSessionReusingFTPSClientTest {
+
+    // session IDs are only used to resume sessions up to TLS 1.2
+    private static final String PROTOCOL = "TLSv1.2";
+
+    private ExecutorService executor;
+    private SSLServerSocket controlServerSocket;
+    private SSLServerSocket dataServerSocket;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream input = SSLSessionReusingFTPSClientTest.class.getResourceAsStream("/ftps-server.p12")) {
+            keyStore.load(input, "password".toCharArray());
+        }
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, "password".toCharArray());
+        SSLContext serverContext = SSLContext.getInstance(PROTOCOL);
+        serverContext.init(keyManagerFactory.getKeyManagers(), null, null);
+
+        executor = Executors.newCachedThreadPool();
+        // both server sockets share the server session cache, like the control and data connections of an FTPS server
+        controlServerSocket = startServerSocket(serverContext);
+        dataServerSocket = startServerSocket(serverContext);
+    }
+
+    private SSLServerSocket startServerSocket(SSLContext serverContext) throws IOException {
+        SSLServerSocket serverSocket = (SSLServerSocket) serverContext.getServerSocketFactory().createServerSocket(0, 10,
+                InetAddress.getLoopbackAddress());
+        executor.execute(() -> accept(serverSocket));
+        return serverSocket;
+    }
+
+    private void accept(SSLServerSocket serverSocket) {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                executor.execute(() -> handle(socket));
+            } catch (@SuppressWarnings("unused") IOException e) {
+                // the server socket is closed
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (Socket s = socket) {
+            ((SSLSocket) s).startHandshake();
+            // keep the connection open until the client closes it
+            while (s.getInputStream().read() != -1) {
+                // ignore any input
+            }
+        } catch (@SuppressWarnings("unused") IOException e) {
+            // the client disconnected
+        }
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        controlServerSocket.close();
+        dataServerSocket.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testDataConnectionResumesControlSession() throws IOException {
+        SSLContext clientContext = SSLContextUtils.createSSLContext(PROTOCOL, null, TrustManagerUtils.getAcceptAllTrustManager());
+
+        try (SSLSocket controlSocket = (SSLSocket) clientContext.getSocketFactory().createSocket(InetAddress.getLoopbackAddress(),
+                controlServerSocket.getLocalPort())) {
+
+            controlSocket.startHandshake();
+            byte[] controlSessionId = controlSocket.getSession().getId();
+
+            // without sharing the session, the data connection performs a full handshake
+            try (SSLSocket dataSocket = openDataSocket(clientContext)) {
+                dataSocket.startHandshake();
+                assertFalse(Arrays.equals(controlSessionId, dataSocket.getSession().getId()));
+            }
+
+            try (SSLSocket dataSocket = openDataSocket(clientContext)) {
+                SSLSessionReusingFTPSClient.shareSession(controlSocket, dataSocket);
+                dataSocket.startHandshake();
+                assertArrayEquals(controlSessionId, dataSocket.getSession().getId());
+            }
+        }
+    }
+
+    private SSLSocket openDataSocket(SSLContext clientContext) throws IOException {
+        // open the data socket the same way FTPSClient does: connect a plain socket, then layer SSL over it
+        @SuppressWarnings("resource")
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), dataServerSocket.getLocalPort());
+        return (SSLSocket) clientContext.getSocketFactory().createSocket(socket, socket.getInetAddress().getHostAddress(), socket.getPort(), true);
+    }
+}
@@ -18,8 +18,12 @@
 package com.github.robtimus.filesystems.ftp;
 
 import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.AUTO_DETECT;
+import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.MLSD;
 import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.NON_UNIX;
+import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.NON_UNIX_STAT;
 import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.UNIX;
+import static com.github.robtimus.filesystems.ftp.StandardFTPFileStrategyFactory.UNIX_STAT;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import org.junit.jupiter.api.Test;
@@ -43,4 +47,34 @@ class StandardFTPFileStrategyFactoryTest {
         assertNotSame(autoDetect, created);
         assertSame(autoDetect.getClass(), created.getClass());
     }
+
+    @Test
+    void testMLSD() {
+        // each file system remembers whether its FTP server refused the MLST command
+        FTPFileStrategy mlsd = FTPFileStrategy.mlsd();
+        FTPFileStrategy created = MLSD.createFTPFileStrategy();
+        assertNotSame(mlsd, created);
+        assertSame(mlsd.getClass(), created.getClass());
+        assertEquals(mlsd.toString(), created.toString());
+    }
+
+    @Test
+    void testUnixStat() {
+        // each file system gets its own parser for STAT replies
+        FTPFileStrategy unixUsingStat = FTPFileStrategy.unixUsingStat();
+        FTPFileStrategy created = UNIX_STAT.createFTPFileStrategy();
+        assertNotSame(unixUsingStat, created);
+        assertSame(unixUsingStat.getClass(), created.getClass());
+        assertEquals(unixUsingStat.toString(), created.toString());
+    }
+
+    @Test
+    void testNonUnixStat() {
+        // each file system gets its own parser for STAT replies
+        FTPFileStrategy nonUnixUsingStat = FTPFileStrategy.nonUnixUsingStat();
+        FTPFileStrategy created = NON_UNIX_STAT.createFTPFileStrategy();
+        assertNotSame(nonUnixUsingStat, created);
+        assertSame(nonUnixUsingStat.getClass(), created.getClass());
+        assertEquals(nonUnixUsingStat.toString(), created.toString());
+    }
 }
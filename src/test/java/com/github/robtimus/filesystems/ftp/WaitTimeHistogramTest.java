@@ -0,0 +1,53 @@
+/*
+ * WaitTimeHistogramTest.java
+ * Copyright 2020 Rob Spoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.robtimus.filesystems.ftp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class WaitTimeHistogramTest {
+
+    @Test
+    void testEmpty() {
+        WaitTimeHistogram histogram = new WaitTimeHistogram();
+
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.maxNanos());
+        assertEquals(0, histogram.percentileNanos(50));
+        assertEquals(0, histogram.percentileNanos(99));
+    }
+
+    @Test
+    void testPercentiles() {
+        WaitTimeHistogram histogram = new WaitTimeHistogram();
+        for (int i = 0; i < 98; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(3));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(10));
+
+        assertEquals(100, histogram.count());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), histogram.maxNanos());
+        // 3 microseconds falls in the bucket up to 4 microseconds
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(4), histogram.percentileNanos(50));
+        // 1000 microseconds falls in the bucket up to 1024 microseconds
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(1024), histogram.percentileNanos(99));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), histogram.percentileNanos(100));
+    }
+}
@@ -58,6 +58,19 @@ public class ListHiddenFilesCommandHandler extends ListCommandHandler {
     }
 
     private void handle(String path, Session session) {
+        String result = getListing(path, session);
+
+        sendReply(session, ReplyCodes.TRANSFER_DATA_INITIAL_OK);
+
+        session.openDataConnection();
+        LOG.info("Sending [" + result + "]");
+        session.sendData(result.getBytes(), result.length());
+        session.closeDataConnection();
+
+        sendReply(session, ReplyCodes.TRANSFER_DATA_FINAL_OK);
+    }
+
+    String getListing(String path, Session session) {
         // code mostly copied from ListCommandHandler.handle, but with added . entry
 
         verifyLoggedIn(session);
@@ -84,15 +97,7 @@ public class ListHiddenFilesCommandHandler extends ListCommandHandler {
         }
         String result = StringUtil.join(lines, endOfLine());
         result += result.length() > 0 ? endOfLine() : "";
-
-        sendReply(session, ReplyCodes.TRANSFER_DATA_INITIAL_OK);
-
-        session.openDataConnection();
-        LOG.info("Sending [" + result + "]");
-        session.sendData(result.getBytes(), result.length());
-        session.closeDataConnection();
-
-        sendReply(session, ReplyCodes.TRANSFER_DATA_FINAL_OK);
+        return result;
     }
 
     private FileSystemEntry addDot(FileSystemEntry entry) {
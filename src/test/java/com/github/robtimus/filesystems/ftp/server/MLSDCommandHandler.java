@@ -0,0 +1,125 @@
+/*
+ * MLSDCommandHandler.java
+ * Copyright 2016 Rob Spoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.robtimus.filesystems.ftp.server;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import org.mockftpserver.core.command.Command;
+import org.mockftpserver.core.command.ReplyCodes;
+import org.mockftpserver.core.session.Session;
+import org.mockftpserver.core.util.StringUtil;
+import org.mockftpserver.fake.command.AbstractFakeCommandHandler;
+import org.mockftpserver.fake.filesystem.FileSystemEntry;
+import org.mockftpserver.fake.filesystem.Permissions;
+
+/**
+ * A command handler for the MLSD command. Like Unix-based FTP servers such as ProFTPD, symbolic links are reported using type
+ * {@code OS.unix=slink}, followed by their targets.
+ *
+ * @author Rob Spoor
+ */
+@SuppressWarnings("nls")
+public class MLSDCommandHandler extends AbstractFakeCommandHandler {
+
+    @Override
+    protected void handle(Command command, Session session) {
+        verifyLoggedIn(session);
+
+        String path = getRealPath(session, command.getParameter(0));
+
+        this.replyCodeForFileSystemException = ReplyCodes.READ_FILE_ERROR;
+        verifyFileSystemCondition(getFileSystem().exists(path), path, "filesystem.doesNotExist");
+        verifyFileSystemCondition(getFileSystem().isDirectory(path), path, "filesystem.isNotADirectory");
+        verifyReadPermission(session, path);
+
+        this.replyCodeForFileSystemException = ReplyCodes.SYSTEM_ERROR;
+        List<String> lines = new ArrayList<>();
+        lines.add(format(getFileSystem().getEntry(path), "cdir", "."));
+        for (Object o : getFileSystem().listFiles(path)) {
+            FileSystemEntry entry = (FileSystemEntry) o;
+            lines.add(format(entry, null, entry.getName()));
+        }
+        String result = StringUtil.join(lines, endOfLine()) + endOfLine();
+
+        sendReply(session, ReplyCodes.TRANSFER_DATA_INITIAL_OK);
+
+        session.openDataConnection();
+        LOG.info("Sending [" + result + "]");
+        session.sendData(result.getBytes(), result.length());
+        session.closeDataConnection();
+
+        sendReply(session, ReplyCodes.TRANSFER_DATA_FINAL_OK);
+    }
+
+    private static FileSystemEntry resolve(FileSystemEntry entry) {
+        return entry instanceof SymbolicLinkEntry ? ((SymbolicLinkEntry) entry).resolve() : entry;
+    }
+
+    /**
+     * Formats a file system entry as an MLSD or MLST entry.
+     *
+     * @param fileSystemEntry The entry to format.
+     * @param type The type to use, or {@code null} to determine it from the entry.
+     * @param name The name to use.
+     * @return The formatted entry.
+     */
+    static String format(FileSystemEntry fileSystemEntry, String type, String name) {
+        // links are reported as themselves, except when they are listed as current directory
+        FileSystemEntry entry = type == null ? fileSystemEntry : resolve(fileSystemEntry);
+        final SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMddHHmmss.SSS");
+        sdf.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("type=");
+        if (type != null) {
+            sb.append(type);
+        } else if (entry instanceof SymbolicLinkEntry) {
+            sb.append("OS.unix=slink:").append(((SymbolicLinkEntry) entry).getTarget().getPath());
+        } else {
+            sb.append(entry.isDirectory() ? "dir" : "file");
+        }
+        sb.append(';');
+        sb.append(entry.isDirectory() && !(entry instanceof SymbolicLinkEntry) ? "sizd=" : "size=").append(entry.getSize()).append(';');
+        if (entry.getLastModified() != null) {
+            sb.append("modify=").append(sdf.format(entry.getLastModified())).append(';');
+        }
+        Permissions permissions = entry.getPermissions() != null ? entry.getPermissions() : Permissions.DEFAULT;
+        sb.append("unix.mode=0").append(getMode(permissions.asRwxString())).append(';');
+        if (entry.getOwner() != null) {
+            sb.append("unix.owner=").append(entry.getOwner()).append(';');
+        }
+        if (entry.getGroup() != null) {
+            sb.append("unix.group=").append(entry.getGroup()).append(';');
+        }
+        return sb.append(' ').append(name).toString();
+    }
+
+    private static String getMode(String rwxString) {
+        StringBuilder mode = new StringBuilder();
+        for (int i = 0; i < rwxString.length(); i += 3) {
+            int digit = 0;
+            digit |= rwxString.charAt(i) == 'r' ? 4 : 0;
+            digit |= rwxString.charAt(i + 1) == 'w' ? 2 : 0;
+            digit |= rwxString.charAt(i + 2) == 'x' ? 1 : 0;
+            mode.append(digit);
+        }
+        return mode.toString();
+    }
+}
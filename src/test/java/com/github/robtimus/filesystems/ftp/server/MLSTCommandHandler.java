@@ -0,0 +1,49 @@
+/*
+ * MLSTCommandHandler.java
+ * Copyright 2020 Rob Spoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.robtimus.filesystems.ftp.server;
+
+import org.mockftpserver.core.command.Command;
+import org.mockftpserver.core.command.ReplyCodes;
+import org.mockftpserver.core.session.Session;
+import org.mockftpserver.fake.command.AbstractFakeCommandHandler;
+
+/**
+ * A command handler for the MLST command. Like the {@link MLSDCommandHandler MLSD command handler}, symbolic links are reported using type
+ * {@code OS.unix=slink}, followed by their targets.
+ *
+ * @author Rob Spoor
+ */
+@SuppressWarnings("nls")
+public class MLSTCommandHandler extends AbstractFakeCommandHandler {
+
+    // ReplyCodes has no generic constant for "requested file action okay, completed"
+    private static final int MLST_OK = 250;
+
+    @Override
+    protected void handle(Command command, Session session) {
+        verifyLoggedIn(session);
+
+        String path = getRealPath(session, command.getParameter(0));
+
+        this.replyCodeForFileSystemException = ReplyCodes.READ_FILE_ERROR;
+        verifyFileSystemCondition(getFileSystem().exists(path), path, "filesystem.doesNotExist");
+
+        String entry = MLSDCommandHandler.format(getFileSystem().getEntry(path), null, path);
+        session.sendReply(MLST_OK, "Listing " + path + "\r\n " + entry + "\r\nEnd");
+    }
+}
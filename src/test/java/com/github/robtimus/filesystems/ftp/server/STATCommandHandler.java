@@ -0,0 +1,58 @@
+/*
+ * STATCommandHandler.java
+ * Copyright 2020 Rob Spoor
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.robtimus.filesystems.ftp.server;
+
+import org.mockftpserver.core.command.Command;
+import org.mockftpserver.core.command.ReplyCodes;
+import org.mockftpserver.core.session.Session;
+
+/**
+ * A command handler for STAT with a path, that returns the same listing as LIST over the control connection.
+ * For paths that do not exist, it replies with 550.
+ *
+ * @author Rob Spoor
+ */
+@SuppressWarnings("nls")
+public class STATCommandHandler extends ListHiddenFilesCommandHandler {
+
+    /**
+     * Creates a new STAT command handler.
+     *
+     * @param includeDotEntry {@code true} to include a dot entry, or {@code false} otherwise.
+     */
+    public STATCommandHandler(boolean includeDotEntry) {
+        super(includeDotEntry);
+    }
+
+    @Override
+    protected void handle(Command command, Session session) {
+        String path = command.getParameter(0);
+        if (path.startsWith("-a ")) {
+            path = path.substring(3);
+        }
+
+        // like most FTP servers, reply with 550 for paths that do not exist
+        verifyLoggedIn(session);
+        this.replyCodeForFileSystemException = ReplyCodes.READ_FILE_ERROR;
+        verifyFileSystemCondition(getFileSystem().exists(getRealPath(session, path)), path, "filesystem.doesNotExist");
+
+        String result = getListing(path, session);
+
+        session.sendReply(ReplyCodes.STAT_FILE_OK, "Status of " + path + ":" + endOfLine() + result + "End of status");
+    }
+}